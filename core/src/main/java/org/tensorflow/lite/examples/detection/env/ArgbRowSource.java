@@ -0,0 +1,34 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * An image that produces its ARGB_8888 pixels one row at a time, e.g. by sampling a camera frame
+ * on demand instead of materializing it in a Bitmap first.
+ *
+ * <p>{@link #readRow} may be called concurrently for different rows.
+ */
+public interface ArgbRowSource {
+  int getWidth();
+
+  int getHeight();
+
+  /**
+   * Writes the {@code getWidth()} pixels of row {@code y} to {@code out}, starting at {@code
+   * offset}.
+   */
+  void readRow(int y, int[] out, int offset);
+}
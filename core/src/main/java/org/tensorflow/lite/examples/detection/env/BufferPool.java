@@ -0,0 +1,218 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed-size buffers handed out as reference-counted {@link Lease}s.
+ *
+ * <p>Buffers are keyed by {@code (width, height, config)}, where the meaning of the config is up to
+ * the {@link Allocator}, e.g. a {@code Bitmap.Config}. A lease starts with one reference; every
+ * stage that keeps the buffer past the current call takes another with {@link Lease#retain} and
+ * drops it with {@link Lease#release}. When the last reference is released the buffer goes back to
+ * the pool, so a frame can be shared between threads without copying it and without anyone
+ * tracking who is the last reader.
+ *
+ * <p>Leases are pooled along with their buffers: once released, a lease must not be used again.
+ */
+public class BufferPool<T> {
+  /** Creates and disposes of the pooled buffers. */
+  public interface Allocator<T> {
+    T allocate(int width, int height, Object config);
+
+    /** Called for buffers that do not fit in the pool any more. */
+    void discard(T buffer);
+  }
+
+  private final Allocator<T> allocator;
+  private final int maxIdlePerKey;
+
+  // Guarded by this.
+  private final Map<Key, Shelf<T>> shelves = new HashMap<>();
+  private final Key probe = new Key();
+  private long allocations;
+  private long reuses;
+
+  /**
+   * @param allocator Creates the buffers.
+   * @param maxIdlePerKey How many released buffers of one shape are kept for reuse; any more are
+   *     discarded.
+   */
+  public BufferPool(final Allocator<T> allocator, final int maxIdlePerKey) {
+    if (maxIdlePerKey < 0) {
+      throw new IllegalArgumentException("maxIdlePerKey must not be negative: " + maxIdlePerKey);
+    }
+    this.allocator = allocator;
+    this.maxIdlePerKey = maxIdlePerKey;
+  }
+
+  /** Returns a buffer of the given shape holding one reference. Its content is undefined. */
+  public Lease<T> acquire(final int width, final int height, final Object config) {
+    final Shelf<T> shelf;
+    synchronized (this) {
+      probe.set(width, height, config);
+      Shelf<T> found = shelves.get(probe);
+      if (found == null) {
+        found = new Shelf<>(new Key().set(width, height, config), maxIdlePerKey);
+        shelves.put(found.key, found);
+      }
+      final Lease<T> lease = found.idle.pollLast();
+      if (lease != null) {
+        ++reuses;
+        lease.refCount.set(1);
+        return lease;
+      }
+      ++allocations;
+      shelf = found;
+    }
+    final Lease<T> lease = new Lease<>(this, shelf, allocator.allocate(width, height, config));
+    lease.refCount.set(1);
+    return lease;
+  }
+
+  /** Discards every idle buffer. Leased buffers are still returned when released. */
+  public synchronized void clear() {
+    for (final Shelf<T> shelf : shelves.values()) {
+      for (final Lease<T> lease : shelf.idle) {
+        allocator.discard(lease.buffer);
+      }
+      shelf.idle.clear();
+    }
+  }
+
+  /** Number of buffers allocated because no released one of the right shape was idle. */
+  public synchronized long getAllocationCount() {
+    return allocations;
+  }
+
+  /** Number of requests served with a previously released buffer. */
+  public synchronized long getReuseCount() {
+    return reuses;
+  }
+
+  private void recycle(final Lease<T> lease) {
+    synchronized (this) {
+      if (lease.shelf.idle.size() < maxIdlePerKey) {
+        lease.shelf.idle.addLast(lease);
+        return;
+      }
+    }
+    allocator.discard(lease.buffer);
+  }
+
+  /** One reference-counted use of a pooled buffer. */
+  public static final class Lease<T> {
+    private final BufferPool<T> pool;
+    private final Shelf<T> shelf;
+    private final T buffer;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    private Lease(final BufferPool<T> pool, final Shelf<T> shelf, final T buffer) {
+      this.pool = pool;
+      this.shelf = shelf;
+      this.buffer = buffer;
+    }
+
+    /** Returns the buffer. Only valid while the caller holds a reference. */
+    public T get() {
+      if (refCount.get() <= 0) {
+        throw new IllegalStateException("Lease already released");
+      }
+      return buffer;
+    }
+
+    public int getWidth() {
+      return shelf.key.width;
+    }
+
+    public int getHeight() {
+      return shelf.key.height;
+    }
+
+    /** Adds a reference, for a consumer that keeps the buffer past the current call. */
+    public Lease<T> retain() {
+      while (true) {
+        final int count = refCount.get();
+        if (count <= 0) {
+          throw new IllegalStateException("Lease already released");
+        }
+        if (refCount.compareAndSet(count, count + 1)) {
+          return this;
+        }
+      }
+    }
+
+    /** Drops a reference. The buffer goes back to the pool with the last one. */
+    public void release() {
+      while (true) {
+        final int count = refCount.get();
+        if (count <= 0) {
+          throw new IllegalStateException("Lease already released");
+        }
+        if (refCount.compareAndSet(count, count - 1)) {
+          if (count == 1) {
+            pool.recycle(this);
+          }
+          return;
+        }
+      }
+    }
+  }
+
+  // The idle buffers of one shape.
+  private static final class Shelf<T> {
+    final Key key;
+    final ArrayDeque<Lease<T>> idle;
+
+    Shelf(final Key key, final int capacity) {
+      this.key = key;
+      this.idle = new ArrayDeque<>(Math.max(capacity, 1));
+    }
+  }
+
+  private static final class Key {
+    int width;
+    int height;
+    Object config;
+
+    Key set(final int width, final int height, final Object config) {
+      this.width = width;
+      this.height = height;
+      this.config = config;
+      return this;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return width == other.width
+          && height == other.height
+          && (config == null ? other.config == null : config.equals(other.config));
+    }
+
+    @Override
+    public int hashCode() {
+      return (width * 31 + height) * 31 + (config == null ? 0 : config.hashCode());
+    }
+  }
+}
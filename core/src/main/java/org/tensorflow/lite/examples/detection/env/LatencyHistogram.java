@@ -0,0 +1,164 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size latency histogram in the style of HdrHistogram: nanosecond values are counted in
+ * log-linear buckets, so every recorded value is kept to within about 1.6% whatever its magnitude,
+ * from a few nanoseconds up to a minute.
+ *
+ * <p>{@link #record} is lock-free and allocation-free, so it can be called from any number of
+ * threads on every frame. Queries read the buckets without stopping writers and may miss values
+ * recorded concurrently.
+ */
+public class LatencyHistogram {
+  // Each power of two is split into this many linear sub-buckets.
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Values from 2^36 ns (about 69 s) upwards all land in the last bucket. The bucket mapping is
+  // package-private so tests can check its edges.
+  private static final int MAX_MAGNITUDE = 36 - SUB_BUCKET_BITS - 1;
+  static final long MAX_TRACKABLE = (1L << 36) - 1;
+  private static final int BUCKET_COUNT = (MAX_MAGNITUDE + 2) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /** Records one latency. Negative values count as zero. */
+  public void record(final long nanos) {
+    final long value = Math.max(0L, nanos);
+    counts.incrementAndGet(bucketOf(Math.min(value, MAX_TRACKABLE)));
+    totalCount.incrementAndGet();
+    totalNanos.addAndGet(value);
+    updateMax(value);
+  }
+
+  /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime} reading. */
+  public void recordSince(final long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  public double getMeanNanos() {
+    final long count = totalCount.get();
+    return count == 0 ? 0.0 : (double) totalNanos.get() / count;
+  }
+
+  /**
+   * Returns the smallest value that at least {@code percentile} percent of the recorded values are
+   * less than or equal to, to within the bucket precision. Returns 0 if nothing was recorded.
+   *
+   * @param percentile In [0, 100].
+   */
+  public long getPercentileNanos(final double percentile) {
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      total += counts.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+    final double clamped = Math.min(100.0, Math.max(0.0, percentile));
+    final long rank = Math.max(1L, (long) Math.ceil(clamped / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueOf(i), maxNanos.get());
+      }
+    }
+    return maxNanos.get();
+  }
+
+  /** Adds every value recorded in {@code other} to this histogram. */
+  public void add(final LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      final long count = other.counts.get(i);
+      if (count != 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+    totalCount.addAndGet(other.totalCount.get());
+    totalNanos.addAndGet(other.totalNanos.get());
+    updateMax(other.maxNanos.get());
+  }
+
+  /** Forgets every recorded value. */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    totalNanos.set(0);
+    maxNanos.set(0);
+  }
+
+  /** Returns e.g. {@code "n=120 mean=4.10ms p50=3.98ms p90=5.01ms p99=7.30ms max=9.12ms"}. */
+  public String getSummary() {
+    return String.format(
+        Locale.US,
+        "n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+        getCount(),
+        getMeanNanos() / 1e6,
+        getPercentileNanos(50) / 1e6,
+        getPercentileNanos(90) / 1e6,
+        getPercentileNanos(99) / 1e6,
+        getMaxNanos() / 1e6);
+  }
+
+  @Override
+  public String toString() {
+    return getSummary();
+  }
+
+  private void updateMax(final long value) {
+    long max = maxNanos.get();
+    while (value > max && !maxNanos.compareAndSet(max, value)) {
+      max = maxNanos.get();
+    }
+  }
+
+  static int bucketOf(final long value) {
+    if (value < 2 * SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    final int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    final int subBucket = (int) (value >>> magnitude);
+    return (magnitude + 1) * SUB_BUCKET_COUNT + subBucket - SUB_BUCKET_COUNT;
+  }
+
+  static long highestValueOf(final int bucket) {
+    if (bucket < 2 * SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    final int magnitude = bucket / SUB_BUCKET_COUNT - 1;
+    final long subBucket = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << magnitude) - 1;
+  }
+}
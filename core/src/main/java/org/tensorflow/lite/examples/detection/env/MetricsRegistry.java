@@ -0,0 +1,86 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named latency histograms and counters, dumped together as text.
+ *
+ * <p>Lookups create the metric on first use and take a lock, so callers look a metric up once and
+ * keep the returned object; recording into it is lock-free. Metrics are listed in the order they
+ * were first looked up.
+ */
+public class MetricsRegistry {
+  // Guarded by this.
+  private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+  private final Map<String, AtomicLong> counters = new LinkedHashMap<>();
+
+  /** Returns the histogram called {@code name}, creating it if needed. */
+  public synchronized LatencyHistogram histogram(final String name) {
+    LatencyHistogram histogram = histograms.get(name);
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+      histograms.put(name, histogram);
+    }
+    return histogram;
+  }
+
+  /** Returns the counter called {@code name}, creating it at zero if needed. */
+  public synchronized AtomicLong counter(final String name) {
+    AtomicLong counter = counters.get(name);
+    if (counter == null) {
+      counter = new AtomicLong();
+      counters.put(name, counter);
+    }
+    return counter;
+  }
+
+  /** Zeroes every metric. Metrics handed out before stay registered and valid. */
+  public synchronized void reset() {
+    for (final LatencyHistogram histogram : histograms.values()) {
+      histogram.reset();
+    }
+    for (final AtomicLong counter : counters.values()) {
+      counter.set(0);
+    }
+  }
+
+  /** Returns one {@code name: value} line per metric, histograms first. */
+  public synchronized String dump() {
+    final StringBuilder sb = new StringBuilder();
+    for (final Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append('\n');
+      }
+      sb.append(entry.getKey()).append(": ").append(entry.getValue().getSummary());
+    }
+    for (final Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append('\n');
+      }
+      sb.append(entry.getKey()).append(": ").append(entry.getValue().get());
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return dump();
+  }
+}
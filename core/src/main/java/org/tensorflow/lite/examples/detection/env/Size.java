@@ -15,8 +15,6 @@ limitations under the License.
 
 package org.tensorflow.lite.examples.detection.env;
 
-import android.graphics.Bitmap;
-import android.text.TextUtils;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -36,11 +34,6 @@ public class Size implements Comparable<Size>, Serializable {
     this.height = height;
   }
 
-  public Size(final Bitmap bmp) {
-    this.width = bmp.getWidth();
-    this.height = bmp.getHeight();
-  }
-
   /**
    * Rotate a size by the given number of degrees.
    *
@@ -57,7 +50,7 @@ public class Size implements Comparable<Size>, Serializable {
   }
 
   public static Size parseFromString(String sizeString) {
-    if (TextUtils.isEmpty(sizeString)) {
+    if (sizeString == null || sizeString.isEmpty()) {
       return null;
     }
 
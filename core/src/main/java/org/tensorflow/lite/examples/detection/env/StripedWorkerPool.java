@@ -0,0 +1,204 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * A small fixed pool of threads that splits a range of rows into contiguous stripes and processes
+ * them in parallel. The calling thread always takes the first stripe, so a pool with a parallelism
+ * of 1 runs everything inline without starting any thread.
+ *
+ * <p>Dispatching a job allocates nothing: the task and range are handed to the already running
+ * workers through shared fields, so it is safe to call {@link #run} once per camera frame.
+ */
+public class StripedWorkerPool {
+  /** Work on one stripe of rows. */
+  public interface StripeTask {
+    /**
+     * Processes rows {@code [start, end)}.
+     *
+     * @param stripe Index of the stripe in {@code [0, getParallelism())}, stable for a given
+     *     thread, so it can be used to pick per-thread scratch buffers.
+     * @param start First row of the stripe, inclusive.
+     * @param end Last row of the stripe, exclusive.
+     */
+    void run(int stripe, int start, int end);
+  }
+
+  private final Thread[] workers;
+  private final Object lock = new Object();
+
+  // Current job, guarded by lock.
+  private StripeTask task;
+  private int total;
+  private int stripeRows;
+  private long generation;
+  private int pending;
+  private Throwable failure;
+  private boolean shutdown;
+
+  public StripedWorkerPool(final int parallelism) {
+    this(parallelism, "stripe-worker");
+  }
+
+  public StripedWorkerPool(final int parallelism, final String name) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    workers = new Thread[parallelism - 1];
+    for (int i = 0; i < workers.length; ++i) {
+      final int stripe = i + 1;
+      workers[i] = new Thread(() -> workerLoop(stripe), name + "-" + stripe);
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  /** Returns the number of stripes a job is split into, including the calling thread's. */
+  public int getParallelism() {
+    return workers.length + 1;
+  }
+
+  /**
+   * Splits {@code [0, total)} into at most {@link #getParallelism()} stripes and blocks until all
+   * of them have been processed.
+   *
+   * @param total Number of rows to process.
+   * @param alignment Every stripe except the last starts and ends on a multiple of this many rows.
+   * @param task Work to run on each stripe.
+   */
+  public synchronized void run(final int total, final int alignment, final StripeTask task) {
+    if (alignment < 1) {
+      throw new IllegalArgumentException("alignment must be positive: " + alignment);
+    }
+    final int parallelism = getParallelism();
+    int rows = (total + parallelism - 1) / parallelism;
+    rows = (rows + alignment - 1) / alignment * alignment;
+
+    if (parallelism == 1 || rows >= total) {
+      task.run(0, 0, total);
+      return;
+    }
+
+    synchronized (lock) {
+      if (shutdown) {
+        throw new IllegalStateException("Pool has been shut down");
+      }
+      this.task = task;
+      this.total = total;
+      this.stripeRows = rows;
+      this.failure = null;
+      this.pending = workers.length;
+      ++generation;
+      lock.notifyAll();
+    }
+
+    Throwable callerFailure = null;
+    try {
+      task.run(0, 0, Math.min(total, rows));
+    } catch (final Throwable t) {
+      callerFailure = t;
+    }
+
+    final Throwable workerFailure;
+    synchronized (lock) {
+      boolean interrupted = false;
+      while (pending > 0) {
+        try {
+          lock.wait();
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      this.task = null;
+      workerFailure = failure;
+      failure = null;
+    }
+
+    rethrow(callerFailure != null ? callerFailure : workerFailure);
+  }
+
+  /**
+   * Stops the worker threads once they have finished the job in progress, if any. Jobs submitted
+   * afterwards fail with IllegalStateException.
+   */
+  public void shutdown() {
+    synchronized (lock) {
+      shutdown = true;
+      lock.notifyAll();
+    }
+  }
+
+  private void workerLoop(final int stripe) {
+    long seen = 0;
+    while (true) {
+      final StripeTask current;
+      final int start;
+      final int end;
+      synchronized (lock) {
+        while (generation == seen && !shutdown) {
+          try {
+            lock.wait();
+          } catch (final InterruptedException e) {
+            // Only shutdown() stops a worker.
+          }
+        }
+        if (generation == seen) {
+          return;
+        }
+        // A job published before shutdown() is still run, or run() would wait for it forever.
+        seen = generation;
+        current = task;
+        start = Math.min(total, stripe * stripeRows);
+        end = Math.min(total, start + stripeRows);
+      }
+
+      Throwable thrown = null;
+      try {
+        if (start < end) {
+          current.run(stripe, start, end);
+        }
+      } catch (final Throwable t) {
+        // Rethrown to the thread that called run().
+        thrown = t;
+      }
+
+      synchronized (lock) {
+        if (thrown != null && failure == null) {
+          failure = thrown;
+        }
+        if (--pending == 0) {
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  private static void rethrow(final Throwable t) {
+    if (t == null) {
+      return;
+    }
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    throw new RuntimeException(t);
+  }
+}
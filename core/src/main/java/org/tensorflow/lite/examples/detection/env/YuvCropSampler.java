@@ -0,0 +1,239 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Samples the rotated / scaled model crop straight out of a YUV 4:2:0 camera frame.
+ *
+ * <p>This fuses what the demo used to do with four full-frame copies (YUV to an int[] frame, to a
+ * Bitmap, drawn through {@code frameToCropTransform} into the crop Bitmap, read back with
+ * getPixels) into one pass that only touches the source pixels each crop pixel maps to.
+ *
+ * <p>Colors come from {@link YuvToArgbConverter}, so they match the full-frame conversion exactly.
+ *
+ * <p>The geometry is given as the affine crop-to-frame matrix, in the {@code
+ * android.graphics.Matrix#getValues} layout, so the class itself has no Android dependency. Luma
+ * is sampled nearest or bilinear; chroma is always taken from the nearest 2x2 block, which is what
+ * the full-frame conversion does too.
+ *
+ * <p>The luma plane is referenced, not copied, and must stay untouched while rows are read. The
+ * chroma planes are copied into packed arrays by {@link #copyChroma} because camera buffers are
+ * recycled as soon as the frame is released.
+ */
+public class YuvCropSampler implements ArgbRowSource {
+  /** How a crop pixel is sampled from the luma plane. */
+  public enum Sampling {
+    NEAREST,
+    BILINEAR
+  }
+
+  // Bilinear weights are 8-bit fixed point.
+  private static final int WEIGHT_BITS = 8;
+  private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+  private final int frameWidth;
+  private final int frameHeight;
+  private final int cropWidth;
+  private final int cropHeight;
+  private final Sampling sampling;
+
+  // Affine crop-to-frame transform: (x, y) -> (m00 * x + m01 * y + m02, m10 * x + m11 * y + m12).
+  private final float m00, m01, m02, m10, m11, m12;
+
+  private byte[] yData;
+  private int yRowStride;
+
+  private final int chromaWidth;
+  private final int chromaHeight;
+  private final byte[] uData;
+  private final byte[] vData;
+
+  /**
+   * @param frameWidth Width of the camera frame.
+   * @param frameHeight Height of the camera frame.
+   * @param cropWidth Width of the model crop.
+   * @param cropHeight Height of the model crop.
+   * @param cropToFrame The 9 values of the crop-to-frame matrix, as returned by {@code
+   *     Matrix.getValues}. Only the affine part is used.
+   * @param sampling How luma is sampled.
+   */
+  public YuvCropSampler(
+      final int frameWidth,
+      final int frameHeight,
+      final int cropWidth,
+      final int cropHeight,
+      final float[] cropToFrame,
+      final Sampling sampling) {
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.cropWidth = cropWidth;
+    this.cropHeight = cropHeight;
+    this.sampling = sampling;
+
+    m00 = cropToFrame[0];
+    m01 = cropToFrame[1];
+    m02 = cropToFrame[2];
+    m10 = cropToFrame[3];
+    m11 = cropToFrame[4];
+    m12 = cropToFrame[5];
+
+    chromaWidth = (frameWidth + 1) / 2;
+    chromaHeight = (frameHeight + 1) / 2;
+    uData = new byte[chromaWidth * chromaHeight];
+    vData = new byte[chromaWidth * chromaHeight];
+  }
+
+  @Override
+  public int getWidth() {
+    return cropWidth;
+  }
+
+  @Override
+  public int getHeight() {
+    return cropHeight;
+  }
+
+  /** Uses {@code yData} as the luma plane of the current frame. The array is not copied. */
+  public void setLuminance(final byte[] yData, final int yRowStride) {
+    this.yData = yData;
+    this.yRowStride = yRowStride;
+  }
+
+  /**
+   * Copies the chroma planes of the current frame. Works for planar and semi-planar layouts,
+   * e.g. for NV21 pass the frame twice with {@code vOffset = width * height}, {@code uOffset =
+   * vOffset + 1} and a pixel stride of 2.
+   */
+  public void copyChroma(
+      final byte[] u,
+      final int uOffset,
+      final byte[] v,
+      final int vOffset,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    int out = 0;
+    for (int j = 0; j < chromaHeight; ++j) {
+      int uIn = uOffset + j * uvRowStride;
+      int vIn = vOffset + j * uvRowStride;
+      for (int i = 0; i < chromaWidth; ++i) {
+        uData[out] = u[uIn];
+        vData[out] = v[vIn];
+        ++out;
+        uIn += uvPixelStride;
+        vIn += uvPixelStride;
+      }
+    }
+  }
+
+  /**
+   * Copies the chroma planes of the current frame straight from the camera's plane buffers, e.g.
+   * those of a YUV_420_888 image, without going through an intermediate array.
+   */
+  public void copyChroma(
+      final ByteBuffer u, final ByteBuffer v, final int uvRowStride, final int uvPixelStride) {
+    int out = 0;
+    for (int j = 0; j < chromaHeight; ++j) {
+      int uIn = j * uvRowStride;
+      int vIn = j * uvRowStride;
+      for (int i = 0; i < chromaWidth; ++i) {
+        uData[out] = u.get(uIn);
+        vData[out] = v.get(vIn);
+        ++out;
+        uIn += uvPixelStride;
+        vIn += uvPixelStride;
+      }
+    }
+  }
+
+  @Override
+  public void readRow(final int y, final int[] out, final int offset) {
+    // Map pixel centers, like Canvas.drawBitmap does.
+    final float cy = y + 0.5f;
+    float sx = m00 * 0.5f + m01 * cy + m02;
+    float sy = m10 * 0.5f + m11 * cy + m12;
+    if (sampling == Sampling.BILINEAR) {
+      for (int x = 0; x < cropWidth; ++x) {
+        out[offset + x] = sampleBilinear(sx, sy);
+        sx += m00;
+        sy += m10;
+      }
+    } else {
+      for (int x = 0; x < cropWidth; ++x) {
+        out[offset + x] = sampleNearest(sx, sy);
+        sx += m00;
+        sy += m10;
+      }
+    }
+  }
+
+  /**
+   * Converts the whole current frame to ARGB_8888, for the few consumers that still need it in
+   * frame coordinates.
+   */
+  public void convertFrame(final int[] out) {
+    int op = 0;
+    for (int j = 0; j < frameHeight; ++j) {
+      final int pY = j * yRowStride;
+      final int pUV = (j >> 1) * chromaWidth;
+      for (int i = 0; i < frameWidth; ++i) {
+        final int uv = pUV + (i >> 1);
+        out[op++] =
+            YuvToArgbConverter.toArgb(0xff & yData[pY + i], 0xff & uData[uv], 0xff & vData[uv]);
+      }
+    }
+  }
+
+  private int sampleNearest(final float sx, final float sy) {
+    final int x = clamp((int) Math.floor(sx), frameWidth - 1);
+    final int y = clamp((int) Math.floor(sy), frameHeight - 1);
+    final int uv = (y >> 1) * chromaWidth + (x >> 1);
+    final int luma = 0xff & yData[y * yRowStride + x];
+    return YuvToArgbConverter.toArgb(luma, 0xff & uData[uv], 0xff & vData[uv]);
+  }
+
+  private int sampleBilinear(final float sx, final float sy) {
+    final float fx = sx - 0.5f;
+    final float fy = sy - 0.5f;
+    final float floorX = (float) Math.floor(fx);
+    final float floorY = (float) Math.floor(fy);
+    final int wx = (int) ((fx - floorX) * WEIGHT_ONE);
+    final int wy = (int) ((fy - floorY) * WEIGHT_ONE);
+    final int x0 = clamp((int) floorX, frameWidth - 1);
+    final int y0 = clamp((int) floorY, frameHeight - 1);
+    final int x1 = clamp((int) floorX + 1, frameWidth - 1);
+    final int y1 = clamp((int) floorY + 1, frameHeight - 1);
+
+    final int row0 = y0 * yRowStride;
+    final int row1 = y1 * yRowStride;
+    final int top = (0xff & yData[row0 + x0]) * (WEIGHT_ONE - wx) + (0xff & yData[row0 + x1]) * wx;
+    final int bottom =
+        (0xff & yData[row1 + x0]) * (WEIGHT_ONE - wx) + (0xff & yData[row1 + x1]) * wx;
+    final int luma =
+        (top * (WEIGHT_ONE - wy) + bottom * wy + (1 << (2 * WEIGHT_BITS - 1))) >> (2 * WEIGHT_BITS);
+
+    // Chroma from the block the sample point falls in.
+    final int x = clamp((int) Math.floor(sx), frameWidth - 1);
+    final int y = clamp((int) Math.floor(sy), frameHeight - 1);
+    final int uv = (y >> 1) * chromaWidth + (x >> 1);
+    return YuvToArgbConverter.toArgb(luma, 0xff & uData[uv], 0xff & vData[uv]);
+  }
+
+  private static int clamp(final int value, final int max) {
+    return value < 0 ? 0 : (value > max ? max : value);
+  }
+}
@@ -0,0 +1,205 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The camera frame being processed, as the camera delivered it: the three plane buffers of a
+ * YUV_420_888 image with their strides, or a legacy NV21 array.
+ *
+ * <p>Nothing is copied when a frame is set. Consumers that can read the planes in place do so,
+ * e.g. {@link #copyChroma} and {@code MotionGrid}; the array getters copy a plane on first use and
+ * reuse the copy for the rest of the frame, keeping the arrays across frames. The buffers are
+ * only valid until the image is closed, so anything that must outlive the frame copies what it
+ * needs with {@link #copyLuminance} or {@link #copyChroma} before {@link #release}.
+ *
+ * <p>Not thread-safe: a frame is filled and read on the camera thread.
+ */
+public class YuvFrame {
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  // YUV_420_888 planes, null for an NV21 frame or once released.
+  private ByteBuffer yBuffer;
+  private ByteBuffer uBuffer;
+  private ByteBuffer vBuffer;
+  // The whole frame for NV21, null otherwise.
+  private byte[] nv21;
+  // Array copies of the planes, made on demand.
+  private byte[] yCopy;
+  private byte[] uCopy;
+  private byte[] vCopy;
+  private boolean luminanceCopied;
+  private boolean chromaCopied;
+
+  /** Uses the planes of a YUV_420_888 image as the current frame. */
+  public void setPlanes(
+      final ByteBuffer y,
+      final ByteBuffer u,
+      final ByteBuffer v,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    yBuffer = y;
+    uBuffer = u;
+    vBuffer = v;
+    nv21 = null;
+    setGeometry(width, height, yRowStride, uvRowStride, uvPixelStride);
+  }
+
+  /** Uses an NV21 array, the Y plane followed by interleaved V/U samples, as the current frame. */
+  public void setNv21(final byte[] data, final int width, final int height) {
+    yBuffer = null;
+    uBuffer = null;
+    vBuffer = null;
+    nv21 = data;
+    setGeometry(width, height, width, width, 2);
+  }
+
+  /** Drops the references to the current frame's buffers, e.g. before its image is closed. */
+  public void release() {
+    yBuffer = null;
+    uBuffer = null;
+    vBuffer = null;
+    nv21 = null;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getYRowStride() {
+    return yRowStride;
+  }
+
+  public int getUvRowStride() {
+    return uvRowStride;
+  }
+
+  public int getUvPixelStride() {
+    return uvPixelStride;
+  }
+
+  /** Returns whether {@link #getLuminance} can answer without copying. */
+  public boolean hasLuminanceArray() {
+    return nv21 != null || luminanceCopied;
+  }
+
+  /** Returns the Y plane in place, or null for an NV21 frame, which has no buffers. */
+  public ByteBuffer getLuminanceBuffer() {
+    return yBuffer;
+  }
+
+  /** Returns the size of the Y plane in bytes, including the row padding. */
+  public int getLuminanceLength() {
+    return nv21 != null ? width * height : yBuffer.limit();
+  }
+
+  /**
+   * Returns the Y plane as an array, {@link #getYRowStride} bytes per row. For an NV21 frame this
+   * is the frame itself; otherwise the plane is copied on the first call for this frame.
+   */
+  public byte[] getLuminance() {
+    if (nv21 != null) {
+      return nv21;
+    }
+    if (!luminanceCopied) {
+      yCopy = copy(yBuffer, yCopy);
+      luminanceCopied = true;
+    }
+    return yCopy;
+  }
+
+  /** Copies the Y plane into {@code out}, which must hold {@link #getLuminanceLength} bytes. */
+  public void copyLuminance(final byte[] out) {
+    if (nv21 != null || luminanceCopied) {
+      System.arraycopy(getLuminance(), 0, out, 0, getLuminanceLength());
+    } else {
+      yBuffer.rewind();
+      yBuffer.get(out, 0, yBuffer.limit());
+    }
+  }
+
+  /** Returns the U plane of a YUV_420_888 frame as an array, copied on first use. */
+  public byte[] getU() {
+    copyChromaPlanes();
+    return uCopy;
+  }
+
+  /** Returns the V plane of a YUV_420_888 frame as an array, copied on first use. */
+  public byte[] getV() {
+    copyChromaPlanes();
+    return vCopy;
+  }
+
+  /** Copies the chroma of the current frame into {@code sampler}, straight from the planes. */
+  public void copyChroma(final YuvCropSampler sampler) {
+    if (nv21 != null) {
+      final int frameSize = width * height;
+      sampler.copyChroma(nv21, frameSize + 1, nv21, frameSize, width, 2);
+    } else if (chromaCopied) {
+      sampler.copyChroma(uCopy, 0, vCopy, 0, uvRowStride, uvPixelStride);
+    } else {
+      sampler.copyChroma(uBuffer, vBuffer, uvRowStride, uvPixelStride);
+    }
+  }
+
+  private void setGeometry(
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+    luminanceCopied = false;
+    chromaCopied = false;
+  }
+
+  private void copyChromaPlanes() {
+    if (nv21 != null) {
+      throw new IllegalStateException("NV21 frames have no separate chroma planes");
+    }
+    if (!chromaCopied) {
+      uCopy = copy(uBuffer, uCopy);
+      vCopy = copy(vBuffer, vCopy);
+      chromaCopied = true;
+    }
+  }
+
+  // Copies the whole buffer, reusing out if it is large enough.
+  private static byte[] copy(final ByteBuffer buffer, byte[] out) {
+    final int length = buffer.limit();
+    if (out == null || out.length < length) {
+      out = new byte[length];
+    }
+    buffer.rewind();
+    buffer.get(out, 0, length);
+    return out;
+  }
+}
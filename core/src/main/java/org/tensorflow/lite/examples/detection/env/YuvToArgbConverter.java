@@ -0,0 +1,242 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * Table-driven Java YUV 4:2:0 to ARGB_8888 conversion.
+ *
+ * <p>The output is bit-exact with the original integer conversion:
+ *
+ * <pre>
+ *   y' = max(y - 16, 0), u' = u - 128, v' = v - 128
+ *   r = 1192 * y' + 1634 * v'
+ *   g = 1192 * y' - 833 * v' - 400 * u'
+ *   b = 1192 * y' + 2066 * u'
+ *   channel = clamp(x, 0, 2^18 - 1) >> 10
+ * </pre>
+ *
+ * Every term is looked up in a 256-entry table, and since {@code clamp(x, 0, 2^18 - 1) >> 10 ==
+ * clamp(x >> 10, 0, 255)} the final clamp is one more lookup indexed by {@code x >> 10}. The chroma
+ * terms are computed once per 2x2 block and shared by its four pixels.
+ */
+public final class YuvToArgbConverter {
+  // 1192 * max(y - 16, 0)
+  private static final int[] Y_TABLE = new int[256];
+  // 1634 * (v - 128)
+  private static final int[] R_V_TABLE = new int[256];
+  // -833 * (v - 128)
+  private static final int[] G_V_TABLE = new int[256];
+  // -400 * (u - 128)
+  private static final int[] G_U_TABLE = new int[256];
+  // 2066 * (u - 128)
+  private static final int[] B_U_TABLE = new int[256];
+
+  // (x >> 10) lies in [-259, 534] for every x the tables can produce.
+  private static final int CLAMP_OFFSET = 260;
+  private static final int[] CLAMP_TABLE = new int[CLAMP_OFFSET + 540];
+
+  static {
+    for (int i = 0; i < 256; ++i) {
+      Y_TABLE[i] = 1192 * Math.max(i - 16, 0);
+      R_V_TABLE[i] = 1634 * (i - 128);
+      G_V_TABLE[i] = -833 * (i - 128);
+      G_U_TABLE[i] = -400 * (i - 128);
+      B_U_TABLE[i] = 2066 * (i - 128);
+    }
+    for (int i = 0; i < CLAMP_TABLE.length; ++i) {
+      CLAMP_TABLE[i] = Math.min(Math.max(i - CLAMP_OFFSET, 0), 255);
+    }
+  }
+
+  private YuvToArgbConverter() {}
+
+  /** Converts a single pixel. */
+  public static int toArgb(final int y, final int u, final int v) {
+    final int yy = Y_TABLE[y];
+    return 0xff000000
+        | (CLAMP_TABLE[((yy + R_V_TABLE[v]) >> 10) + CLAMP_OFFSET] << 16)
+        | (CLAMP_TABLE[((yy + G_V_TABLE[v] + G_U_TABLE[u]) >> 10) + CLAMP_OFFSET] << 8)
+        | CLAMP_TABLE[((yy + B_U_TABLE[u]) >> 10) + CLAMP_OFFSET];
+  }
+
+  /**
+   * Converts an NV21 (YUV420SP, interleaved V/U) frame.
+   *
+   * @param input The Y plane followed by the interleaved chroma plane.
+   * @param width Frame width, also the row stride of both planes.
+   * @param height Frame height.
+   * @param output A pre-allocated array of at least {@code width * height} pixels.
+   */
+  public static void convertYuv420Sp(
+      final byte[] input, final int width, final int height, final int[] output) {
+    convertYuv420Sp(input, width, height, output, 0, height);
+  }
+
+  /**
+   * Converts rows {@code [startRow, endRow)} of an NV21 frame. {@code startRow} must be even so the
+   * range starts on a chroma row pair; independent ranges can be converted concurrently.
+   */
+  public static void convertYuv420Sp(
+      final byte[] input,
+      final int width,
+      final int height,
+      final int[] output,
+      final int startRow,
+      final int endRow) {
+    final int frameSize = width * height;
+    convert(
+        input,
+        0,
+        width,
+        input,
+        frameSize + 1,
+        input,
+        frameSize,
+        width,
+        2,
+        width,
+        output,
+        startRow,
+        Math.min(endRow, height));
+  }
+
+  /**
+   * Converts a frame with arbitrary row and pixel strides, e.g. the three planes of a Camera2
+   * YUV_420_888 image.
+   */
+  public static void convertYuv420(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    convertYuv420(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out, 0, height);
+  }
+
+  /**
+   * Converts rows {@code [startRow, endRow)} of a strided frame. {@code startRow} must be even so
+   * the range starts on a chroma row pair; independent ranges can be converted concurrently.
+   */
+  public static void convertYuv420(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out,
+      final int startRow,
+      final int endRow) {
+    convert(
+        yData,
+        0,
+        yRowStride,
+        uData,
+        0,
+        vData,
+        0,
+        uvRowStride,
+        uvPixelStride,
+        width,
+        out,
+        startRow,
+        Math.min(endRow, height));
+  }
+
+  private static void convert(
+      final byte[] yData,
+      final int yOffset,
+      final int yRowStride,
+      final byte[] uData,
+      final int uOffset,
+      final byte[] vData,
+      final int vOffset,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int width,
+      final int[] out,
+      final int startRow,
+      final int endRow) {
+    if ((startRow & 1) != 0) {
+      throw new IllegalArgumentException("startRow must be even: " + startRow);
+    }
+    final int[] yTable = Y_TABLE;
+    final int[] clamp = CLAMP_TABLE;
+    final int evenWidth = width & ~1;
+
+    for (int j = startRow; j < endRow; j += 2) {
+      final boolean hasSecondRow = j + 1 < endRow;
+      int pY0 = yOffset + j * yRowStride;
+      int pY1 = pY0 + yRowStride;
+      int pU = uOffset + (j >> 1) * uvRowStride;
+      int pV = vOffset + (j >> 1) * uvRowStride;
+      int o0 = j * width;
+      int o1 = o0 + width;
+
+      for (int i = 0; i < width; i += 2) {
+        final int u = 0xff & uData[pU];
+        final int v = 0xff & vData[pV];
+        pU += uvPixelStride;
+        pV += uvPixelStride;
+        final int rv = R_V_TABLE[v] + (CLAMP_OFFSET << 10);
+        final int guv = G_V_TABLE[v] + G_U_TABLE[u] + (CLAMP_OFFSET << 10);
+        final int bu = B_U_TABLE[u] + (CLAMP_OFFSET << 10);
+
+        int yy = yTable[0xff & yData[pY0]];
+        out[o0] =
+            0xff000000
+                | (clamp[(yy + rv) >> 10] << 16)
+                | (clamp[(yy + guv) >> 10] << 8)
+                | clamp[(yy + bu) >> 10];
+        if (i < evenWidth) {
+          yy = yTable[0xff & yData[pY0 + 1]];
+          out[o0 + 1] =
+              0xff000000
+                  | (clamp[(yy + rv) >> 10] << 16)
+                  | (clamp[(yy + guv) >> 10] << 8)
+                  | clamp[(yy + bu) >> 10];
+        }
+        if (hasSecondRow) {
+          yy = yTable[0xff & yData[pY1]];
+          out[o1] =
+              0xff000000
+                  | (clamp[(yy + rv) >> 10] << 16)
+                  | (clamp[(yy + guv) >> 10] << 8)
+                  | clamp[(yy + bu) >> 10];
+          if (i < evenWidth) {
+            yy = yTable[0xff & yData[pY1 + 1]];
+            out[o1 + 1] =
+                0xff000000
+                    | (clamp[(yy + rv) >> 10] << 16)
+                    | (clamp[(yy + guv) >> 10] << 8)
+                    | clamp[(yy + bu) >> 10];
+          }
+        }
+        pY0 += 2;
+        pY1 += 2;
+        o0 += 2;
+        o1 += 2;
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+
+import static java.lang.Math.exp;
+
+public class DataEncoder {
+    private final int boxesNum;
+
+    // Prior boxes (cx, cy, w, h), one column buffer per coordinate.
+    private final PriorBoxes priors;
+    private final FloatBuffer priorCx;
+    private final FloatBuffer priorCy;
+    private final FloatBuffer priorW;
+    private final FloatBuffer priorH;
+
+    private final NMS nms;
+    private int topK = 50;
+    private float nmsThreshold = 0.5f;                   // NMS阈值
+    private float backThreshold = 0.0f;                  // 背景过滤置信度
+    private int preNmsTopN = 1000;                       // NMS前保留的最高分候选框个数
+    private float[] variances = new float[]{0.1f, 0.2f};
+
+    // Per-frame scratch for decode(), sized once for the worst case so that decoding never allocates.
+    private final float[] candidateBoxes;               // (x1, y1, x2, y2) quads
+    private final float[] candidateScores;
+    private final int[] keepIndex;
+    private final TopKSelector preNmsSelector;
+    // Flattened copies of float[][] model outputs, allocated on first use of the array API.
+    private FloatBuffer arrayLoc;
+    private FloatBuffer arrayConf;
+    // Time spent in NMS per decode, or null when not measured.
+    private volatile LatencyHistogram nmsLatency;
+
+    public DataEncoder(float imageSize) {
+        this(imageSize, null);
+    }
+
+    /**
+     * @param imageSize model input size in pixels
+     * @param cacheDir directory for the prior box cache file, or null to build the priors in memory
+     */
+    public DataEncoder(float imageSize, File cacheDir) {
+        this.priors = PriorBoxes.load(imageSize, cacheDir);
+        this.boxesNum = this.priors.getCount();
+        this.priorCx = this.priors.getCenterX();
+        this.priorCy = this.priors.getCenterY();
+        this.priorW = this.priors.getWidth();
+        this.priorH = this.priors.getHeight();
+
+        this.nms = new NMS(this.boxesNum);
+        this.candidateBoxes = new float[this.boxesNum * 4];
+        this.candidateScores = new float[this.boxesNum];
+        this.keepIndex = new int[this.boxesNum];
+        this.preNmsSelector = new TopKSelector(this.boxesNum);
+    }
+
+    public int getBoxesNum() {return this.boxesNum;}
+
+    public int getPreNmsTopN() {return this.preNmsTopN;}
+
+    /** Records the time spent in NMS on every decode into {@code histogram}; null turns it off. */
+    public void setNmsLatency(LatencyHistogram histogram) {
+        this.nmsLatency = histogram;
+    }
+
+    /**
+     * Sets how many of the highest scoring anchors are decoded and passed to NMS, like Caffe/TF
+     * pre_nms_top_n. This bounds the NMS cost regardless of how many anchors clear the background
+     * threshold.
+     */
+    public void setPreNmsTopN(int preNmsTopN) {
+        this.preNmsTopN = Math.max(1, Math.min(preNmsTopN, this.boxesNum));
+    }
+
+    public Map<Integer, Object> decode(float[][] loc, float[][] conf) {
+        Map<Integer, Object> output = new HashMap<>();  // 返回输出结果
+
+        float[] flatBoxes = new float[this.topK * 4];
+        float[] flatScores = new float[this.topK];
+        int count = decode(loc, conf, flatBoxes, flatScores);
+
+        float[][] outputBoxes = new float[count][4];
+        float[] outputScores = new float[count];
+        for (int i = 0; i < count; i++) {
+            outputBoxes[i][0] = flatBoxes[i * 4];
+            outputBoxes[i][1] = flatBoxes[i * 4 + 1];
+            outputBoxes[i][2] = flatBoxes[i * 4 + 2];
+            outputBoxes[i][3] = flatBoxes[i * 4 + 3];
+            outputScores[i] = flatScores[i];
+        }
+
+        output.put(0, outputBoxes);
+        output.put(1, outputScores);
+
+        return output;
+    }
+
+    /**
+     * Allocation-free variant of {@link #decode(float[][], float[][])}.
+     *
+     * <p>Decoded boxes are written into caller-owned buffers: {@code outBoxes} receives one
+     * (x1, y1, x2, y2) quad per result and {@code outScores} the matching face score. Both buffers
+     * should be allocated once and reused for every frame.
+     *
+     * @param loc location predictions, [boxesNum, 4]
+     * @param conf class predictions, [boxesNum, 2] (background, face)
+     * @param outBoxes output quads, at least 4 * outScores.length long
+     * @param outScores output scores
+     * @return the number of results written, at most min(topK, outScores.length)
+     */
+    public int decode(float[][] loc, float[][] conf, float[] outBoxes, float[] outScores) {
+        int anchors = Math.min(loc.length, this.boxesNum);
+        if (this.arrayLoc == null) {
+            this.arrayLoc = FloatBuffer.allocate(this.boxesNum * 4);
+            this.arrayConf = FloatBuffer.allocate(this.boxesNum * 2);
+        }
+        for (int i = 0; i < anchors; i++) {
+            this.arrayLoc.put(i * 4, loc[i][0]);
+            this.arrayLoc.put(i * 4 + 1, loc[i][1]);
+            this.arrayLoc.put(i * 4 + 2, loc[i][2]);
+            this.arrayLoc.put(i * 4 + 3, loc[i][3]);
+            this.arrayConf.put(i * 2, conf[i][0]);
+            this.arrayConf.put(i * 2 + 1, conf[i][1]);
+        }
+        return decode(this.arrayLoc, this.arrayConf, anchors, outBoxes, outScores);
+    }
+
+    /**
+     * Decodes the raw model outputs in place, e.g. straight from the interpreter's output buffers.
+     * Only absolute gets are used, so the buffers' positions are left untouched.
+     *
+     * @param loc location predictions, row-major [boxesNum, 4]
+     * @param conf class predictions, row-major [boxesNum, 2] (background, face)
+     * @param outBoxes output quads, at least 4 * outScores.length long
+     * @param outScores output scores
+     * @return the number of results written, at most min(topK, outScores.length)
+     */
+    public int decode(FloatBuffer loc, FloatBuffer conf, float[] outBoxes, float[] outScores) {
+        return decode(loc, conf, this.boxesNum, outBoxes, outScores);
+    }
+
+    /**
+     * Convenience variant of {@link #decode(FloatBuffer, FloatBuffer, float[], float[])} that returns
+     * {@link Detection}s, for callers that are not bound by the per-frame allocation budget.
+     *
+     * @param scale factor from normalized coordinates to the output space, e.g. the input size
+     * @param title title of every detection
+     */
+    public List<Detection> decodeDetections(FloatBuffer loc, FloatBuffer conf, float scale, String title) {
+        float[] boxes = new float[this.topK * 4];
+        float[] scores = new float[this.topK];
+        int count = decode(loc, conf, boxes, scores);
+        List<Detection> detections = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            detections.add(new Detection(
+                    title,
+                    scores[i],
+                    boxes[i * 4] * scale,
+                    boxes[i * 4 + 1] * scale,
+                    boxes[i * 4 + 2] * scale,
+                    boxes[i * 4 + 3] * scale));
+        }
+        return detections;
+    }
+
+    private int decode(FloatBuffer loc, FloatBuffer conf, int anchors, float[] outBoxes, float[] outScores) {
+        // Pick the top preNmsTopN anchors by face score first, so that only those get decoded.
+        this.preNmsSelector.reset(this.preNmsTopN);
+        for (int i = 0; i < anchors; i++) {
+            // conf[i][0]是背景，conf[i][1]是人脸
+            float background = conf.get(i * 2);
+            float face = conf.get(i * 2 + 1);
+            if (background < this.backThreshold && face > this.backThreshold) {
+                this.preNmsSelector.offer(face, i);
+            }
+        }
+
+        int candidates = this.preNmsSelector.size();
+        for (int k = 0; k < candidates; k++) {
+            int i = this.preNmsSelector.indexAt(k);
+
+            // cxcy = loc[:, :2] * variances[0] * default_boxes[:, 2:] + default_boxes[:, :2]
+            // wh = torch.exp(loc[:, 2:] * variances[1]) * default_boxes[:, 2:]
+            // boxes = torch.cat([cxcy-wh/2, cxcy+wh/2], 1)                        # [21824,4]
+            float priorW = this.priorW.get(i);
+            float priorH = this.priorH.get(i);
+            float cx = loc.get(i * 4) * this.variances[0] * priorW + this.priorCx.get(i);
+            float cy = loc.get(i * 4 + 1) * this.variances[0] * priorH + this.priorCy.get(i);
+            float w = (float) exp((double)(loc.get(i * 4 + 2) * this.variances[1])) * priorW;
+            float h = (float) exp((double)(loc.get(i * 4 + 3) * this.variances[1])) * priorH;
+
+            int offset = k * 4;
+            this.candidateBoxes[offset] = cx - w / 2.0f;        // x1
+            this.candidateBoxes[offset + 1] = cy - h / 2.0f;    // y1
+            this.candidateBoxes[offset + 2] = cx + w / 2.0f;    // x2
+            this.candidateBoxes[offset + 3] = cy + h / 2.0f;    // y2
+            this.candidateScores[k] = this.preNmsSelector.scoreAt(k);
+        }
+
+        int topN = Math.min(this.topK, outScores.length);
+        LatencyHistogram nmsLatency = this.nmsLatency;
+        long nmsStart = nmsLatency != null ? System.nanoTime() : 0L;
+        int kept = this.nms.filter(
+                this.candidateBoxes, this.candidateScores, candidates, topN, this.nmsThreshold, this.keepIndex);
+        if (nmsLatency != null) {
+            nmsLatency.recordSince(nmsStart);
+        }
+
+        for (int i = 0; i < kept; i++) {
+            int src = this.keepIndex[i];
+            System.arraycopy(this.candidateBoxes, src * 4, outBoxes, i * 4, 4);
+            outScores[i] = this.candidateScores[src];
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+/**
+ * A detected object with its box as plain floats: the Android-free counterpart of {@code
+ * Classifier.Recognition}, for code that runs off the device, e.g. offline re-scoring.
+ *
+ * <p>Coordinates are (left, top, right, bottom) in whatever space the producer documents,
+ * typically model input pixels.
+ */
+public final class Detection {
+  private final String title;
+  private final float confidence;
+  private final float left;
+  private final float top;
+  private final float right;
+  private final float bottom;
+
+  public Detection(
+      final String title,
+      final float confidence,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    this.title = title;
+    this.confidence = confidence;
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public float getConfidence() {
+    return confidence;
+  }
+
+  public float getLeft() {
+    return left;
+  }
+
+  public float getTop() {
+    return top;
+  }
+
+  public float getRight() {
+    return right;
+  }
+
+  public float getBottom() {
+    return bottom;
+  }
+
+  public float width() {
+    return right - left;
+  }
+
+  public float height() {
+    return bottom - top;
+  }
+
+  /** Intersection over union with another box, 0 if they do not overlap. */
+  public float iou(final Detection other) {
+    final float w = Math.min(right, other.right) - Math.max(left, other.left);
+    final float h = Math.min(bottom, other.bottom) - Math.max(top, other.top);
+    if (w <= 0 || h <= 0) {
+      return 0.0f;
+    }
+    final float intersection = w * h;
+    return intersection / (width() * height() + other.width() * other.height() - intersection);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s (%.1f%%) [%.1f, %.1f, %.1f, %.1f]",
+        title, confidence * 100.0f, left, top, right, bottom);
+  }
+}
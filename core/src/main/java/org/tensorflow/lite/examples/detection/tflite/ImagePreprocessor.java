@@ -0,0 +1,290 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import org.tensorflow.lite.examples.detection.env.ArgbRowSource;
+import org.tensorflow.lite.examples.detection.env.StripedWorkerPool;
+
+/**
+ * Converts a square ARGB_8888 image, given as a pixel array or as an {@link ArgbRowSource}, into
+ * the RGB input tensor of a model.
+ *
+ * <p>The quantized / float decision and the mean/std normalization are fixed at construction, so
+ * the per-pixel work is three table lookups. Each row is built in a primitive scratch array and
+ * written to the tensor with a single bulk put. Rows are split across a {@link StripedWorkerPool}
+ * when one is given.
+ *
+ * <p>The tensor may hold several images for batched inference; each {@link #process} call fills one
+ * slot of it.
+ */
+public class ImagePreprocessor {
+  private final int inputSize;
+  private final boolean quantized;
+  private final int batchSize;
+  // Number of channel values in one image.
+  private final int imageLength;
+  // Normalized value of every 8-bit channel value, for float models.
+  private final float[] normalized;
+  private final ByteBuffer imgData;
+  private final StripedWorkerPool pool;
+
+  // Per-stripe views of imgData and row scratch, so stripes never share a position.
+  private final FloatBuffer[] floatViews;
+  private final float[][] floatRows;
+  private final ByteBuffer[] byteViews;
+  private final byte[][] byteRows;
+  // Per-stripe ARGB rows read from a row source.
+  private final int[][] argbRows;
+  private final StripedWorkerPool.StripeTask stripeTask = this::processRows;
+
+  private int[] pixels;
+  private ArgbRowSource source;
+  // First channel value of the slot being filled.
+  private int slotOffset;
+
+  private ImagePreprocessor(
+      final int inputSize,
+      final boolean quantized,
+      final float mean,
+      final float std,
+      final int batchSize,
+      final StripedWorkerPool pool) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+    }
+    this.inputSize = inputSize;
+    this.quantized = quantized;
+    this.batchSize = batchSize;
+    this.pool = pool;
+    imageLength = inputSize * inputSize * 3;
+
+    final int numBytesPerChannel = quantized ? 1 : 4;
+    imgData = ByteBuffer.allocateDirect(batchSize * imageLength * numBytesPerChannel);
+    imgData.order(ByteOrder.nativeOrder());
+
+    final int stripes = pool != null ? pool.getParallelism() : 1;
+    final int rowLength = inputSize * 3;
+    argbRows = new int[stripes][inputSize];
+    if (quantized) {
+      normalized = null;
+      floatViews = null;
+      floatRows = null;
+      byteViews = new ByteBuffer[stripes];
+      byteRows = new byte[stripes][rowLength];
+      for (int i = 0; i < stripes; ++i) {
+        byteViews[i] = imgData.duplicate();
+      }
+    } else {
+      normalized = new float[256];
+      for (int v = 0; v < 256; ++v) {
+        normalized[v] = (v - mean) / std;
+      }
+      byteViews = null;
+      byteRows = null;
+      floatViews = new FloatBuffer[stripes];
+      floatRows = new float[stripes][rowLength];
+      for (int i = 0; i < stripes; ++i) {
+        floatViews[i] = imgData.asFloatBuffer();
+      }
+    }
+  }
+
+  /** Feeds the raw 8-bit RGB channels of each pixel to a quantized (uint8) model. */
+  public static ImagePreprocessor quantized(final int inputSize, final StripedWorkerPool pool) {
+    return quantized(inputSize, 1, pool);
+  }
+
+  /** Same as {@link #quantized(int, StripedWorkerPool)}, with room for {@code batchSize} images. */
+  public static ImagePreprocessor quantized(
+      final int inputSize, final int batchSize, final StripedWorkerPool pool) {
+    return new ImagePreprocessor(inputSize, true, 0.0f, 1.0f, batchSize, pool);
+  }
+
+  /**
+   * Feeds {@code (channel - mean) / std} to a float32 model.
+   *
+   * @param inputSize Width and height of the model input
+   * @param mean Value subtracted from every 8-bit channel
+   * @param std Value the centered channel is divided by
+   * @param pool Workers to split the rows across, or null to run on the calling thread
+   */
+  public static ImagePreprocessor normalized(
+      final int inputSize, final float mean, final float std, final StripedWorkerPool pool) {
+    return normalized(inputSize, 1, mean, std, pool);
+  }
+
+  /**
+   * Same as {@link #normalized(int, float, float, StripedWorkerPool)}, with room for {@code
+   * batchSize} images.
+   */
+  public static ImagePreprocessor normalized(
+      final int inputSize,
+      final int batchSize,
+      final float mean,
+      final float std,
+      final StripedWorkerPool pool) {
+    return new ImagePreprocessor(inputSize, false, mean, std, batchSize, pool);
+  }
+
+  /** Returns the whole input tensor, filled by {@link #process}. */
+  public ByteBuffer getInput() {
+    return imgData;
+  }
+
+  /**
+   * Returns a native-ordered view of the first {@code count} slots, sized exactly for a model input
+   * resized to batch {@code count}.
+   */
+  public ByteBuffer getInput(final int count) {
+    if (count < 1 || count > batchSize) {
+      throw new IllegalArgumentException("count must be in [1, " + batchSize + "]: " + count);
+    }
+    if (count == batchSize) {
+      return imgData;
+    }
+    final ByteBuffer view = imgData.duplicate();
+    view.limit(imgData.capacity() / batchSize * count);
+    return view.slice().order(ByteOrder.nativeOrder());
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  /**
+   * Fills the input tensor from {@code inputSize * inputSize} ARGB_8888 pixels in row-major order,
+   * as returned by {@code Bitmap.getPixels}.
+   */
+  public void process(final int[] pixels) {
+    process(0, pixels);
+  }
+
+  /** Same as {@link #process(int[])}, filling batch slot {@code slot}. */
+  public void process(final int slot, final int[] pixels) {
+    checkSlot(slot);
+    if (pixels.length < inputSize * inputSize) {
+      throw new IllegalArgumentException(
+          "Expected " + inputSize * inputSize + " pixels, got " + pixels.length);
+    }
+    this.pixels = pixels;
+    slotOffset = slot * imageLength;
+    try {
+      run();
+    } finally {
+      this.pixels = null;
+    }
+  }
+
+  /**
+   * Fills the input tensor from a {@code inputSize x inputSize} row source, e.g. a camera frame
+   * sampled on the fly, without an intermediate pixel array.
+   */
+  public void process(final ArgbRowSource source) {
+    process(0, source);
+  }
+
+  /** Same as {@link #process(ArgbRowSource)}, filling batch slot {@code slot}. */
+  public void process(final int slot, final ArgbRowSource source) {
+    checkSlot(slot);
+    if (source.getWidth() != inputSize || source.getHeight() != inputSize) {
+      throw new IllegalArgumentException(
+          "Expected a "
+              + inputSize
+              + "x"
+              + inputSize
+              + " source, got "
+              + source.getWidth()
+              + "x"
+              + source.getHeight());
+    }
+    this.source = source;
+    slotOffset = slot * imageLength;
+    try {
+      run();
+    } finally {
+      this.source = null;
+    }
+  }
+
+  private void checkSlot(final int slot) {
+    if (slot < 0 || slot >= batchSize) {
+      throw new IndexOutOfBoundsException("slot " + slot + " of " + batchSize);
+    }
+  }
+
+  private void run() {
+    if (pool != null) {
+      pool.run(inputSize, 1, stripeTask);
+    } else {
+      processRows(0, 0, inputSize);
+    }
+    imgData.rewind();
+  }
+
+  private void processRows(final int stripe, final int startRow, final int endRow) {
+    if (quantized) {
+      final ByteBuffer out = byteViews[stripe];
+      final byte[] row = byteRows[stripe];
+      out.position(slotOffset + startRow * inputSize * 3);
+      for (int y = startRow; y < endRow; ++y) {
+        final int[] in = rowPixels(stripe, y);
+        final int first = in == pixels ? y * inputSize : 0;
+        int k = 0;
+        for (int x = first, end = x + inputSize; x < end; ++x) {
+          final int pixelValue = in[x];
+          row[k++] = (byte) (pixelValue >> 16);
+          row[k++] = (byte) (pixelValue >> 8);
+          row[k++] = (byte) pixelValue;
+        }
+        out.put(row, 0, k);
+      }
+    } else {
+      final FloatBuffer out = floatViews[stripe];
+      final float[] row = floatRows[stripe];
+      final float[] table = normalized;
+      out.position(slotOffset + startRow * inputSize * 3);
+      for (int y = startRow; y < endRow; ++y) {
+        final int[] in = rowPixels(stripe, y);
+        final int first = in == pixels ? y * inputSize : 0;
+        int k = 0;
+        for (int x = first, end = x + inputSize; x < end; ++x) {
+          final int pixelValue = in[x];
+          row[k++] = table[(pixelValue >> 16) & 0xFF];
+          row[k++] = table[(pixelValue >> 8) & 0xFF];
+          row[k++] = table[pixelValue & 0xFF];
+        }
+        out.put(row, 0, k);
+      }
+    }
+  }
+
+  /** Returns the array holding row {@code y}: the whole pixel array, or a freshly read row. */
+  private int[] rowPixels(final int stripe, final int y) {
+    if (source == null) {
+      return pixels;
+    }
+    final int[] row = argbRows[stripe];
+    source.readRow(y, row, 0);
+    return row;
+  }
+}
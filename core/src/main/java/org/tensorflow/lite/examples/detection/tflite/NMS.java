@@ -0,0 +1,240 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Arrays;
+
+/**
+ * Greedy non-maximum suppression over flat (x1, y1, x2, y2) box arrays.
+ *
+ * <p>An NMS instance owns its sort and area buffers, so {@link #filter} does not allocate as long as
+ * the candidate count stays within the capacity given to the constructor. Instances are not
+ * thread-safe.
+ */
+public class NMS {
+    private final static float INVALID_ANCHOR = -10000.0f;
+    // Ranges at or below this size are finished with insertion sort.
+    private final static int INSERTION_SORT_THRESHOLD = 16;
+
+    private final int[] order;              // candidate indices, sorted by descending score
+    private final float[] sortKeys;         // scores in the same order as order[]
+    private final float[] areas;            // cached box areas, indexed by candidate
+    private final boolean[] suppressed;     // indexed by position in order[]
+
+    public NMS(int capacity) {
+        this.order = new int[capacity];
+        this.sortKeys = new float[capacity];
+        this.areas = new float[capacity];
+        this.suppressed = new boolean[capacity];
+    }
+
+    /**
+     * Runs greedy NMS: candidates are visited in descending score order, each kept box suppresses
+     * every remaining box whose IoU with it exceeds {@code threshold}, and the search stops as soon
+     * as {@code topK} boxes are kept. The input arrays are not modified.
+     *
+     * @param boxes (x1, y1, x2, y2) quads, 4 * count floats
+     * @param scores candidate scores, count floats
+     * @param count number of candidates, at most the capacity of this instance
+     * @param topK maximum number of boxes to keep
+     * @param threshold IoU above which the lower scored box is dropped
+     * @param keep receives the kept candidate indices, highest score first
+     * @return the number of indices written to {@code keep}
+     */
+    public int filter(float[] boxes, float[] scores, int count, int topK, float threshold, int[] keep) {
+        if (count > this.order.length) {
+            throw new IllegalArgumentException(
+                    "NMS capacity is " + this.order.length + ", got " + count + " candidates");
+        }
+        topK = Math.min(topK, keep.length);
+
+        for (int i = 0; i < count; i++) {
+            int b = i * 4;
+            this.order[i] = i;
+            this.sortKeys[i] = scores[i];
+            this.areas[i] = (boxes[b + 2] - boxes[b]) * (boxes[b + 3] - boxes[b + 1]);
+        }
+        sortDescending(this.sortKeys, this.order, 0, count - 1);
+        Arrays.fill(this.suppressed, 0, count, false);
+
+        int kept = 0;
+        for (int oi = 0; oi < count && kept < topK; oi++) {
+            if (this.suppressed[oi]) {
+                continue;
+            }
+            int i = this.order[oi];
+            keep[kept++] = i;
+
+            int a = i * 4;
+            float ax1 = boxes[a];
+            float ay1 = boxes[a + 1];
+            float ax2 = boxes[a + 2];
+            float ay2 = boxes[a + 3];
+            float areaA = this.areas[i];
+
+            for (int oj = oi + 1; oj < count; oj++) {
+                if (this.suppressed[oj]) {
+                    continue;
+                }
+                int j = this.order[oj];
+                int b = j * 4;
+                float w = Math.min(ax2, boxes[b + 2]) - Math.max(ax1, boxes[b]);
+                if (w <= 0) {
+                    continue;
+                }
+                float h = Math.min(ay2, boxes[b + 3]) - Math.max(ay1, boxes[b + 1]);
+                if (h <= 0) {
+                    continue;
+                }
+                float inter = w * h;
+                if (inter > threshold * (areaA + this.areas[j] - inter)) {
+                    this.suppressed[oj] = true;
+                }
+            }
+        }
+        return kept;
+    }
+
+    /** Sorts keys[left..right] in descending order, applying the same moves to indices. */
+    private static void sortDescending(float[] keys, int[] indices, int left, int right) {
+        while (right - left > INSERTION_SORT_THRESHOLD) {
+            // Median of three, moved to keys[left].
+            int mid = (left + right) >>> 1;
+            if (keys[mid] > keys[left]) swap(keys, indices, mid, left);
+            if (keys[right] > keys[left]) swap(keys, indices, right, left);
+            if (keys[right] > keys[mid]) swap(keys, indices, right, mid);
+            swap(keys, indices, left, mid);
+            float pivot = keys[left];
+
+            int i = left;
+            int j = right + 1;
+            while (true) {
+                while (keys[++i] > pivot && i < right) {}
+                while (keys[--j] < pivot) {}
+                if (i >= j) {
+                    break;
+                }
+                swap(keys, indices, i, j);
+            }
+            swap(keys, indices, left, j);
+
+            // Recurse into the smaller half to bound the stack depth.
+            if (j - left < right - j) {
+                sortDescending(keys, indices, left, j - 1);
+                left = j + 1;
+            } else {
+                sortDescending(keys, indices, j + 1, right);
+                right = j - 1;
+            }
+        }
+
+        for (int i = left + 1; i <= right; i++) {
+            float key = keys[i];
+            int index = indices[i];
+            int j = i - 1;
+            while (j >= left && keys[j] < key) {
+                keys[j + 1] = keys[j];
+                indices[j + 1] = indices[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            indices[j + 1] = index;
+        }
+    }
+
+    private static void swap(float[] keys, int[] indices, int a, int b) {
+        float key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        int index = indices[a];
+        indices[a] = indices[b];
+        indices[b] = index;
+    }
+
+    private static void quickSortScore(float[][] anchors, float[] scores, int left, int right) {
+        int dp;
+        if (left < right) {
+            dp = partitionScore(anchors, scores, left, right);
+            quickSortScore(anchors, scores, left, dp - 1);
+            quickSortScore(anchors, scores, dp + 1, right);
+        }
+    }
+
+    private static int partitionScore(float[][] anchors, float scores[], int left, int right) {
+        float pivot = scores[left];
+        float[] pivotA = anchors[left];
+        while (left < right) {
+            while (left < right && scores[right] <= pivot)
+                right--;
+            if (left < right) {
+                anchors[left] = anchors[right];
+                scores[left++] = scores[right];
+            }
+            while (left < right && scores[left] >= pivot)
+                left++;
+            if (left < right) {
+                anchors[right] = anchors[left];
+                scores[right--] = scores[left];
+            }
+        }
+        scores[left] = pivot;
+        anchors[left] = pivotA;
+        return left;
+    }
+
+    private static float computeOverlapAreaRate(float[] anchor1, float[] anchor2){
+        float xx1 = anchor1[0]>anchor2[0]?anchor1[0]:anchor2[0];
+        float yy1 = anchor1[1]>anchor2[1]?anchor1[1]:anchor2[1];
+        float xx2 = anchor1[2]<anchor2[2]?anchor1[2]:anchor2[2];
+        float yy2 = anchor1[3]<anchor2[3]?anchor1[3]:anchor2[3];
+
+        float w = xx2 - xx1 + 1;
+        float h = yy2 - yy1 + 1;
+        if(w<0||h<0){
+            return 0;
+        }
+
+        float inter = w * h;
+
+        float anchor1_area1 = (anchor1[2] - anchor1[0] + 1)*(anchor1[3] - anchor1[1] + 1);
+        float anchor2_area1 = (anchor2[2] - anchor2[0] + 1)*(anchor2[3] - anchor2[1] + 1);
+
+        return inter / (anchor1_area1 + anchor2_area1 - inter);
+    }
+
+    /** @deprecated expects pre-sorted input and pixel coordinates; use {@link #filter}. */
+    @Deprecated
+    public static int[] nmsScoreFilter(float[][] anchors, float[] score, int topN, float thresh) {
+        int length = anchors.length;
+        int count = 0;
+
+        for(int i=0;i<length;i++){
+            if(score[i]==INVALID_ANCHOR){
+                continue;
+            }
+            if (++count >= topN) {
+                break;
+            }
+            for(int j=i+1;j<length;j++){
+                if(score[j]!=INVALID_ANCHOR) {
+                    if (computeOverlapAreaRate(anchors[i], anchors[j]) > thresh) {
+                        score[j] = INVALID_ANCHOR;
+                    }
+                }
+            }
+        }
+        int outputIndex[] = new int[count];
+        int j = 0;
+        for(int i=0;i<length && count>0;i++){
+            if(score[i]!=INVALID_ANCHOR){
+                outputIndex[j++] = i;
+                count--;
+            }
+        }
+        return outputIndex;
+    }
+
+    /** @deprecated moves whole anchor rows; {@link #filter} sorts an index array instead. */
+    @Deprecated
+    public static void sortScores(float[][] anchors, float[] scores){
+        quickSortScore(anchors, scores, 0, scores.length - 1);
+    }
+}
\ No newline at end of file
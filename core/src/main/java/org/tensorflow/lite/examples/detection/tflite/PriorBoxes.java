@@ -0,0 +1,245 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The FaceBoxes prior (default) box table, stored column-wise in one flat buffer: all center x
+ * values, then all center y values, then widths, then heights, each normalized to [0, 1].
+ *
+ * <p>The table only depends on the input size and the anchor configuration below, so it is
+ * generated once and persisted as a binary file. Later starts memory-map that file instead of
+ * rebuilding 21824 boxes.
+ */
+public final class PriorBoxes {
+    // File layout: header of HEADER_INTS native-order ints, then 4 * count native-order floats.
+    private static final int MAGIC = 0x46425052;         // "FBPR"
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 8;
+    private static final int HEADER_BYTES = HEADER_INTS * 4;
+
+    // steps = [s / scale for s in (32, 64, 128)]
+    private static final int[] STEPS = {32, 64, 128};
+    // sizes = [s / scale for s in (32, 256, 512)]
+    private static final int[] SIZES = {32, 256, 512};
+    // aspect_ratios = ((1, 2, 4), (1,), (1,))
+    private static final int[][] ASPECT_RATIOS = {{1, 2, 4}, {1}, {1}};
+    // feature_map_sizes = (32, 16, 8)
+    private static final int[] FEATURE_MAP_SIZES = {32, 16, 8};
+    // density = [[-3, -1, 1, 3], [-1, 1], [0]], used for the first layer only
+    private static final int[][] DENSITY = {{-3, -1, 1, 3}, {-1, 1}, {0}};
+
+    private final int count;
+    private final FloatBuffer cx;
+    private final FloatBuffer cy;
+    private final FloatBuffer w;
+    private final FloatBuffer h;
+
+    private PriorBoxes(FloatBuffer table, int count) {
+        this.count = count;
+        this.cx = column(table, 0, count);
+        this.cy = column(table, 1, count);
+        this.w = column(table, 2, count);
+        this.h = column(table, 3, count);
+    }
+
+    /** Generates the table in memory, without touching any cache. */
+    public static PriorBoxes generate(float imageSize) {
+        ByteBuffer buffer = build(imageSize);
+        buffer.position(HEADER_BYTES);
+        return new PriorBoxes(buffer.slice().order(ByteOrder.nativeOrder()).asFloatBuffer(), countPriors());
+    }
+
+    /**
+     * Memory-maps the cached table for this input size from {@code cacheDir}, generating and
+     * writing it first if it is missing or stale. Falls back to an in-memory table if the cache
+     * cannot be used.
+     */
+    public static PriorBoxes load(float imageSize, File cacheDir) {
+        if (cacheDir == null) {
+            return generate(imageSize);
+        }
+        File file = new File(cacheDir, cacheFileName(imageSize));
+        try {
+            PriorBoxes cached = map(file, imageSize);
+            if (cached != null) {
+                return cached;
+            }
+            write(file, build(imageSize));
+            cached = map(file, imageSize);
+            if (cached != null) {
+                return cached;
+            }
+        } catch (IOException e) {
+            // The cache is only an optimization; build the table in memory instead.
+        }
+        return generate(imageSize);
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    /** Center x column, indexed by prior. */
+    public FloatBuffer getCenterX() {
+        return this.cx;
+    }
+
+    /** Center y column, indexed by prior. */
+    public FloatBuffer getCenterY() {
+        return this.cy;
+    }
+
+    /** Width column, indexed by prior. */
+    public FloatBuffer getWidth() {
+        return this.w;
+    }
+
+    /** Height column, indexed by prior. */
+    public FloatBuffer getHeight() {
+        return this.h;
+    }
+
+    private static FloatBuffer column(FloatBuffer table, int column, int count) {
+        FloatBuffer view = table.duplicate();
+        view.position(column * count);
+        view.limit((column + 1) * count);
+        return view.slice();
+    }
+
+    private static int countPriors() {
+        int count = 0;
+        for (int layer = 0; layer < FEATURE_MAP_SIZES.length; layer++) {
+            int perCell = 0;
+            for (int ratio = 0; ratio < ASPECT_RATIOS[layer].length; ratio++) {
+                perCell += layer == 0 ? DENSITY[ratio].length * DENSITY[ratio].length : 1;
+            }
+            count += FEATURE_MAP_SIZES[layer] * FEATURE_MAP_SIZES[layer] * perCell;
+        }
+        return count;
+    }
+
+    private static int configHash(float imageSize) {
+        int hash = Float.floatToIntBits(imageSize);
+        hash = 31 * hash + Arrays.hashCode(STEPS);
+        hash = 31 * hash + Arrays.hashCode(SIZES);
+        hash = 31 * hash + Arrays.deepHashCode(ASPECT_RATIOS);
+        hash = 31 * hash + Arrays.hashCode(FEATURE_MAP_SIZES);
+        hash = 31 * hash + Arrays.deepHashCode(DENSITY);
+        return hash;
+    }
+
+    private static String cacheFileName(float imageSize) {
+        return "faceboxes_priors_" + (int) imageSize + "_" + Integer.toHexString(configHash(imageSize)) + ".bin";
+    }
+
+    /** Builds header and table into a native-order buffer, positioned at 0. */
+    private static ByteBuffer build(float imageSize) {
+        int count = countPriors();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_BYTES + count * 16).order(ByteOrder.nativeOrder());
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(count);
+        buffer.putInt(Float.floatToIntBits(imageSize));
+        buffer.putInt(configHash(imageSize));
+        buffer.position(HEADER_BYTES);
+        FloatBuffer table = buffer.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        int index = 0;
+        for (int layer = 0; layer < FEATURE_MAP_SIZES.length; layer++) {     // 遍历3层中的每一层
+            int fmsize = FEATURE_MAP_SIZES[layer];                            // 分别为32, 16, 8
+            float step = STEPS[layer] / imageSize;
+            float s = SIZES[layer] / imageSize;
+
+            for (float boxY = 0; boxY < fmsize; boxY++) {
+                for (float boxX = 0; boxX < fmsize; boxX++) {
+                    // cx = (w + 0.5)*steps[i], cy = (h + 0.5)*steps[i]
+                    float centerX = (float) ((boxX + 0.5) * step);
+                    float centerY = (float) ((boxY + 0.5) * step);
+
+                    for (int ratio = 0; ratio < ASPECT_RATIOS[layer].length; ratio++) {
+                        int ar = ASPECT_RATIOS[layer][ratio];
+                        if (layer == 0) {
+                            int[] density = DENSITY[ratio];
+                            for (int dxIndex = 0; dxIndex < density.length; dxIndex++) {
+                                for (int dyIndex = 0; dyIndex < density.length; dyIndex++) {
+                                    float dx = density[dxIndex];
+                                    float dy = density[dyIndex];
+                                    put(table, count, index++,
+                                            (float) (centerX + dx / 8.0 * s * ar),
+                                            (float) (centerY + dy / 8.0 * s * ar),
+                                            s * ar, s * ar);
+                                }
+                            }
+                        } else {
+                            put(table, count, index++, centerX, centerY, s * ar, s * ar);
+                        }
+                    }
+                }
+            }
+        }
+
+        buffer.position(0);
+        return buffer;
+    }
+
+    private static void put(FloatBuffer table, int count, int index, float cx, float cy, float w, float h) {
+        table.put(index, cx);
+        table.put(count + index, cy);
+        table.put(2 * count + index, w);
+        table.put(3 * count + index, h);
+    }
+
+    private static void write(File file, ByteBuffer buffer) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not move " + tmp + " to " + file);
+        }
+    }
+
+    /** Maps and validates a cache file; returns null if it is missing or does not match. */
+    private static PriorBoxes map(File file, float imageSize) throws IOException {
+        int count = countPriors();
+        long expectedLength = HEADER_BYTES + count * 16L;
+        if (!file.isFile() || file.length() != expectedLength) {
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer mapped;
+        try {
+            // The mapping stays valid after the channel is closed.
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, expectedLength);
+        } finally {
+            raf.close();
+        }
+        mapped.order(ByteOrder.nativeOrder());
+        if (mapped.getInt(0) != MAGIC
+                || mapped.getInt(4) != VERSION
+                || mapped.getInt(8) != count
+                || mapped.getInt(12) != Float.floatToIntBits(imageSize)
+                || mapped.getInt(16) != configHash(imageSize)) {
+            return null;
+        }
+        mapped.position(HEADER_BYTES);
+        return new PriorBoxes(mapped.slice().order(ByteOrder.nativeOrder()).asFloatBuffer(), count);
+    }
+}
@@ -0,0 +1,77 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+/**
+ * Keeps the N highest scores offered to it together with their anchor indices, the equivalent of
+ * pre_nms_top_n in Caffe and the TF Object Detection API.
+ *
+ * <p>Backed by a bounded binary min-heap over primitive arrays: the root is the weakest score kept
+ * so far, so a new score either replaces it in O(log N) or is rejected with a single compare.
+ * Results are returned in heap order, not sorted.
+ */
+public class TopKSelector {
+    private final float[] scores;
+    private final int[] indices;
+    private int limit;
+    private int size;
+
+    public TopKSelector(int capacity) {
+        this.scores = new float[capacity];
+        this.indices = new int[capacity];
+        this.limit = capacity;
+    }
+
+    /** Empties the selector and sets how many entries it keeps, at most its capacity. */
+    public void reset(int limit) {
+        this.limit = Math.max(1, Math.min(limit, this.scores.length));
+        this.size = 0;
+    }
+
+    public void offer(float score, int index) {
+        if (this.size < this.limit) {
+            int i = this.size++;
+            // Sift up.
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (this.scores[parent] <= score) {
+                    break;
+                }
+                this.scores[i] = this.scores[parent];
+                this.indices[i] = this.indices[parent];
+                i = parent;
+            }
+            this.scores[i] = score;
+            this.indices[i] = index;
+        } else if (score > this.scores[0]) {
+            // Replace the weakest entry and sift down.
+            int i = 0;
+            int half = this.size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < this.size && this.scores[right] < this.scores[child]) {
+                    child = right;
+                }
+                if (score <= this.scores[child]) {
+                    break;
+                }
+                this.scores[i] = this.scores[child];
+                this.indices[i] = this.indices[child];
+                i = child;
+            }
+            this.scores[i] = score;
+            this.indices[i] = index;
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public float scoreAt(int i) {
+        return this.scores[i];
+    }
+
+    public int indexAt(int i) {
+        return this.indices[i];
+    }
+}
@@ -0,0 +1,58 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * Keeps boxes alive between detections and associates each new set of detections with them.
+ *
+ * <p>Boxes are passed as packed {@code (left, top, right, bottom)} floats in frame pixels, four per
+ * box, and timestamps are in whatever monotonic unit the caller uses for frames. Tracks are
+ * addressed by index, {@code 0 <= track < getTrackCount()}; indices change when tracks are added or
+ * dropped, {@link #getTrackId} does not. Implementations are not expected to be thread-safe.
+ */
+public interface BoxTracker {
+  /** Moves every track forward to {@code timestamp} and drops the ones that went stale. */
+  void predict(long timestamp);
+
+  /**
+   * Matches detections made on the frame at {@code timestamp} to the tracks, corrects the matched
+   * tracks and starts new ones for the rest.
+   *
+   * @param boxes {@code 4 * count} packed boxes.
+   * @param scores {@code count} detection scores.
+   */
+  void update(float[] boxes, float[] scores, int count, long timestamp);
+
+  int getTrackCount();
+
+  /** Returns an id that stays the same for the lifetime of the track. */
+  int getTrackId(int track);
+
+  /** Writes the current box of {@code track} to {@code out[offset..offset + 3]}. */
+  void getTrackBox(int track, float[] out, int offset);
+
+  /** Returns how much the current box can be trusted, 1 right after a detection down to 0. */
+  float getTrackConfidence(int track);
+
+  /**
+   * Returns the index of the detection the last {@link #update} assigned to {@code track}, or -1 if
+   * it got none.
+   */
+  int getMatchedDetection(int track);
+
+  /** Drops every track. */
+  void reset();
+}
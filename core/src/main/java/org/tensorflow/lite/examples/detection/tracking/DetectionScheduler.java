@@ -0,0 +1,127 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * Decides, frame by frame, whether a full detection is worth running or whether the tracker can
+ * carry the existing boxes on its own.
+ *
+ * <p>Detection is skipped while every tracked object is followed with at least the minimum
+ * correlation and no motion shows up outside the tracked boxes. It is requested again as soon as
+ * a track weakens or is lost, as soon as unexplained motion appears, and in any case once the
+ * maximum interval has passed since the last detection, so objects that crept in slowly are still
+ * picked up.
+ *
+ * <p>{@link #decide} is a pure query apart from remembering the track count; call {@link
+ * #onDetectionStarted} once a detection was actually submitted, so that a frame that could not get
+ * a detector slot asks again on the next one. Not thread-safe.
+ */
+public class DetectionScheduler {
+  /** Outcome of {@link #decide}, with the reason when a detection is due. */
+  public enum Decision {
+    /** The tracker is doing fine, no detection needed. */
+    SKIP,
+    /** No detection has run yet. */
+    FIRST,
+    /** The maximum interval since the last detection has passed. */
+    MAX_INTERVAL,
+    /** A tracked object has fallen below the minimum correlation. */
+    LOW_CORRELATION,
+    /** Fewer objects are tracked than before. */
+    TRACK_LOST,
+    /** Something changed outside the tracked boxes. */
+    MOTION
+  }
+
+  private final float minCorrelation;
+  private final long maxIntervalMs;
+  private final int minMotionCells;
+  private boolean started;
+  private long lastDetectionMs;
+  private int lastTrackCount;
+  // A track was lost since the last detection, kept until one is started.
+  private boolean trackLost;
+
+  /**
+   * @param minCorrelation Lowest tracker correlation, 0-1, at which a box is trusted without a
+   *     detection.
+   * @param maxIntervalMs Longest time between two detections.
+   * @param minMotionCells Changed {@link MotionGrid} cells outside the tracked boxes that count as
+   *     new motion.
+   */
+  public DetectionScheduler(
+      final float minCorrelation, final long maxIntervalMs, final int minMotionCells) {
+    if (maxIntervalMs < 0) {
+      throw new IllegalArgumentException("Negative interval " + maxIntervalMs);
+    }
+    if (minMotionCells <= 0) {
+      throw new IllegalArgumentException("Bad motion cell count " + minMotionCells);
+    }
+    this.minCorrelation = minCorrelation;
+    this.maxIntervalMs = maxIntervalMs;
+    this.minMotionCells = minMotionCells;
+  }
+
+  /**
+   * Returns whether to detect on the current frame.
+   *
+   * @param nowMs Current time on a monotonic clock.
+   * @param trackCount Objects currently tracked.
+   * @param lowestCorrelation Lowest correlation among them, ignored when there are none.
+   * @param motionCells Changed motion cells not covered by a tracked object.
+   */
+  public Decision decide(
+      final long nowMs,
+      final int trackCount,
+      final float lowestCorrelation,
+      final int motionCells) {
+    if (trackCount < lastTrackCount) {
+      trackLost = true;
+    }
+    lastTrackCount = trackCount;
+
+    if (!started) {
+      return Decision.FIRST;
+    }
+    if (nowMs - lastDetectionMs >= maxIntervalMs) {
+      return Decision.MAX_INTERVAL;
+    }
+    if (trackCount > 0 && lowestCorrelation < minCorrelation) {
+      return Decision.LOW_CORRELATION;
+    }
+    if (trackLost) {
+      return Decision.TRACK_LOST;
+    }
+    if (motionCells >= minMotionCells) {
+      return Decision.MOTION;
+    }
+    return Decision.SKIP;
+  }
+
+  /** Records that a detection was submitted at {@code nowMs}. */
+  public void onDetectionStarted(final long nowMs) {
+    started = true;
+    lastDetectionMs = nowMs;
+    trackLost = false;
+  }
+
+  /** Starts over as if no detection had run. */
+  public void reset() {
+    started = false;
+    lastTrackCount = 0;
+    trackLost = false;
+  }
+}
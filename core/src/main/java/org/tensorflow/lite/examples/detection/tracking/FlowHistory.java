@@ -0,0 +1,132 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Arrays;
+
+/**
+ * The packed optical flow deltas of the last few frames, kept in a fixed ring.
+ *
+ * <p>{@link #add} keeps the array it is given rather than copying it: the native tracker hands out
+ * a fresh array for every frame, and the prebuilt library has no call that fills one in place, so
+ * that allocation stays but no second one is made here. {@link #poll} hands out the frames it
+ * removes as a {@link Range} over the ring, which stays valid until the next {@link #add} or
+ * {@link #clear}.
+ *
+ * <p>Timestamps are expected to increase from frame to frame. Not thread-safe.
+ */
+public class FlowHistory {
+  private final long[] timestamps;
+  private final byte[][] deltas;
+  private final int[] lengths;
+  private final Range range = new Range();
+  // Slot of the oldest frame, and the number of frames held.
+  private int start;
+  private int size;
+
+  public FlowHistory(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Bad capacity " + capacity);
+    }
+    timestamps = new long[capacity];
+    deltas = new byte[capacity][];
+    lengths = new int[capacity];
+  }
+
+  /**
+   * Appends {@code data[0..length)}, dropping the oldest frame if the ring is full. The array is
+   * kept as is, so the caller must not write to it afterwards.
+   */
+  public void add(final long timestamp, final byte[] data, final int length) {
+    if (length < 0 || length > data.length) {
+      throw new IllegalArgumentException("Bad length " + length + " of " + data.length);
+    }
+    final int capacity = timestamps.length;
+    final int slot;
+    if (size == capacity) {
+      slot = start;
+      start = (start + 1) % capacity;
+    } else {
+      slot = (start + size++) % capacity;
+    }
+    deltas[slot] = data;
+    lengths[slot] = length;
+    timestamps[slot] = timestamp;
+    range.count = 0;
+  }
+
+  /**
+   * Removes the frames up to and including {@code endTimestamp} and returns them, oldest first.
+   * The returned range is reused by the next call.
+   */
+  public Range poll(final long endTimestamp) {
+    final int capacity = timestamps.length;
+    int count = 0;
+    while (count < size && timestamps[(start + count) % capacity] <= endTimestamp) {
+      ++count;
+    }
+    range.first = start;
+    range.count = count;
+    start = (start + count) % capacity;
+    size -= count;
+    return range;
+  }
+
+  /** Returns the number of frames held. */
+  public int size() {
+    return size;
+  }
+
+  /** Drops every frame. */
+  public void clear() {
+    Arrays.fill(deltas, null);
+    start = 0;
+    size = 0;
+    range.count = 0;
+  }
+
+  /** Frames removed by {@link #poll}, read in place. */
+  public final class Range {
+    private int first;
+    private int count;
+
+    private Range() {}
+
+    public int size() {
+      return count;
+    }
+
+    public long getTimestamp(final int i) {
+      return timestamps[slot(i)];
+    }
+
+    /** Returns the array holding frame {@code i}; only the first {@link #getLength} bytes are its. */
+    public byte[] getDeltas(final int i) {
+      return deltas[slot(i)];
+    }
+
+    public int getLength(final int i) {
+      return lengths[slot(i)];
+    }
+
+    private int slot(final int i) {
+      if (i < 0 || i >= count) {
+        throw new IndexOutOfBoundsException("Frame " + i + " of " + count);
+      }
+      return (first + i) % timestamps.length;
+    }
+  }
+}
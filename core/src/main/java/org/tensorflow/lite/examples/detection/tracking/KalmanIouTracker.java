@@ -0,0 +1,369 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * A {@link BoxTracker} that needs no image data: each track is a constant-velocity Kalman filter
+ * over the box center and size, and detections are assigned to tracks greedily by IoU, best pair
+ * first.
+ *
+ * <p>With a constant-velocity model and diagonal noise the 8-state filter splits exactly into four
+ * independent filters of (value, velocity), one each for the center x, center y, width and height,
+ * so each track only keeps 4 x 5 floats and the matrix algebra unrolls into a few multiplications.
+ * Process and measurement noise scale with the box height, as in SORT/DeepSORT, so small and large
+ * boxes are equally smooth.
+ *
+ * <p>Detections usually arrive a few frames after the frame they were made on. {@link #update}
+ * winds each track back by its velocity to that frame for matching and applies the correction to
+ * the current state, so the boxes do not jump back when a late detection comes in.
+ *
+ * <p>All state lives in arrays sized at construction; {@link #predict} and {@link #update} do not
+ * allocate. Not thread-safe.
+ */
+public class KalmanIouTracker implements BoxTracker {
+  // Noise standard deviations per frame, relative to the box height.
+  private static final float POSITION_NOISE = 1.0f / 20.0f;
+  private static final float VELOCITY_NOISE = 1.0f / 160.0f;
+  private static final float MEASUREMENT_NOISE = 1.0f / 20.0f;
+
+  // Per track and coordinate: value, velocity and the covariance p00, p01, p11.
+  private static final int COORDINATES = 4;
+  private static final int VALUES = 5;
+  private static final int STRIDE = COORDINATES * VALUES;
+  private static final int X = 0;
+  private static final int V = 1;
+  private static final int P00 = 2;
+  private static final int P01 = 3;
+  private static final int P11 = 4;
+  // Coordinate order within a track.
+  private static final int CENTER_X = 0;
+  private static final int CENTER_Y = 1;
+  private static final int WIDTH = 2;
+  private static final int HEIGHT = 3;
+
+  private final int maxTracks;
+  private final int maxDetections;
+  private final float minIou;
+  private final long maxAge;
+  private final float confidenceDecay;
+
+  private final float[] state;
+  private final int[] ids;
+  private final float[] confidences;
+  private final long[] lastMatched;
+  private final int[] matches;
+  // Scratch for update().
+  private final float[] ious;
+  private final boolean[] assigned;
+  private final float[] measurement = new float[COORDINATES];
+
+  private int trackCount;
+  private int nextId;
+  private long currentTime;
+  private boolean hasTime;
+
+  /**
+   * @param maxTracks Most boxes tracked at once; further detections are ignored, lowest score
+   *     first.
+   * @param maxDetections Most detections read per {@link #update}.
+   * @param minIou Lowest IoU, 0-1, for a detection to be assigned to a track.
+   * @param maxAge How long a track survives without a matching detection, in timestamp units.
+   * @param confidenceDecay Factor the confidence of a track shrinks by per timestamp unit without
+   *     a matching detection.
+   */
+  public KalmanIouTracker(
+      final int maxTracks,
+      final int maxDetections,
+      final float minIou,
+      final long maxAge,
+      final float confidenceDecay) {
+    if (maxTracks <= 0 || maxDetections <= 0) {
+      throw new IllegalArgumentException(
+          "Bad capacity " + maxTracks + " tracks, " + maxDetections + " detections");
+    }
+    if (minIou < 0.0f || minIou > 1.0f) {
+      throw new IllegalArgumentException("Bad IoU threshold " + minIou);
+    }
+    if (confidenceDecay <= 0.0f || confidenceDecay > 1.0f) {
+      throw new IllegalArgumentException("Bad confidence decay " + confidenceDecay);
+    }
+    this.maxTracks = maxTracks;
+    this.maxDetections = maxDetections;
+    this.minIou = minIou;
+    this.maxAge = maxAge;
+    this.confidenceDecay = confidenceDecay;
+    state = new float[maxTracks * STRIDE];
+    ids = new int[maxTracks];
+    confidences = new float[maxTracks];
+    lastMatched = new long[maxTracks];
+    matches = new int[maxTracks];
+    ious = new float[maxTracks * maxDetections];
+    assigned = new boolean[maxDetections];
+  }
+
+  @Override
+  public void predict(final long timestamp) {
+    if (!hasTime) {
+      currentTime = timestamp;
+      hasTime = true;
+      return;
+    }
+    final long dt = timestamp - currentTime;
+    if (dt <= 0) {
+      return;
+    }
+    currentTime = timestamp;
+    final float decay = (float) Math.pow(confidenceDecay, dt);
+    for (int track = trackCount - 1; track >= 0; --track) {
+      if (timestamp - lastMatched[track] > maxAge) {
+        remove(track);
+        continue;
+      }
+      final int base = track * STRIDE;
+      final float scale = scale(base);
+      for (int c = 0; c < COORDINATES; ++c) {
+        predict(base + c * VALUES, dt, scale);
+      }
+      confidences[track] *= decay;
+    }
+  }
+
+  @Override
+  public void update(
+      final float[] boxes, final float[] scores, final int count, final long timestamp) {
+    if (!hasTime || timestamp > currentTime) {
+      predict(timestamp);
+    }
+    final long lag = currentTime - timestamp;
+    final int detections = Math.min(count, maxDetections);
+
+    for (int track = 0; track < trackCount; ++track) {
+      matches[track] = -1;
+      final int base = track * STRIDE;
+      // The track as it was on the detection frame.
+      final float cx = rewind(base + CENTER_X * VALUES, lag);
+      final float cy = rewind(base + CENTER_Y * VALUES, lag);
+      final float w = rewind(base + WIDTH * VALUES, lag);
+      final float h = rewind(base + HEIGHT * VALUES, lag);
+      for (int d = 0; d < detections; ++d) {
+        ious[track * maxDetections + d] =
+            iou(
+                cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2,
+                boxes[4 * d], boxes[4 * d + 1], boxes[4 * d + 2], boxes[4 * d + 3]);
+      }
+    }
+    for (int d = 0; d < detections; ++d) {
+      assigned[d] = false;
+    }
+
+    // Greedy assignment: keep taking the best remaining pair until none is good enough.
+    while (true) {
+      int bestTrack = -1;
+      int bestDetection = -1;
+      float best = minIou;
+      for (int track = 0; track < trackCount; ++track) {
+        if (matches[track] >= 0) {
+          continue;
+        }
+        for (int d = 0; d < detections; ++d) {
+          final float iou = ious[track * maxDetections + d];
+          if (!assigned[d] && iou >= best && iou > 0.0f) {
+            best = iou;
+            bestTrack = track;
+            bestDetection = d;
+          }
+        }
+      }
+      if (bestTrack < 0) {
+        break;
+      }
+      matches[bestTrack] = bestDetection;
+      assigned[bestDetection] = true;
+      correct(bestTrack, boxes, bestDetection, lag);
+      confidences[bestTrack] = 1.0f;
+      lastMatched[bestTrack] = timestamp;
+    }
+
+    // New tracks for the rest, best score first while there is room.
+    while (trackCount < maxTracks) {
+      int next = -1;
+      for (int d = 0; d < detections; ++d) {
+        if (!assigned[d] && (next < 0 || scores[d] > scores[next])) {
+          next = d;
+        }
+      }
+      if (next < 0) {
+        break;
+      }
+      assigned[next] = true;
+      start(trackCount++, boxes, next, timestamp);
+    }
+  }
+
+  @Override
+  public int getTrackCount() {
+    return trackCount;
+  }
+
+  @Override
+  public int getTrackId(final int track) {
+    checkTrack(track);
+    return ids[track];
+  }
+
+  @Override
+  public void getTrackBox(final int track, final float[] out, final int offset) {
+    checkTrack(track);
+    final int base = track * STRIDE;
+    final float cx = state[base + CENTER_X * VALUES + X];
+    final float cy = state[base + CENTER_Y * VALUES + X];
+    final float w = Math.max(0.0f, state[base + WIDTH * VALUES + X]);
+    final float h = Math.max(0.0f, state[base + HEIGHT * VALUES + X]);
+    out[offset] = cx - w / 2;
+    out[offset + 1] = cy - h / 2;
+    out[offset + 2] = cx + w / 2;
+    out[offset + 3] = cy + h / 2;
+  }
+
+  @Override
+  public float getTrackConfidence(final int track) {
+    checkTrack(track);
+    return confidences[track];
+  }
+
+  @Override
+  public int getMatchedDetection(final int track) {
+    checkTrack(track);
+    return matches[track];
+  }
+
+  @Override
+  public void reset() {
+    trackCount = 0;
+    hasTime = false;
+  }
+
+  private void start(final int track, final float[] boxes, final int d, final long timestamp) {
+    final int base = track * STRIDE;
+    toMeasurement(boxes, d, 0, base);
+    final float scale = Math.max(1.0f, measurement[HEIGHT]);
+    final float positionStd = 2.0f * POSITION_NOISE * scale;
+    final float velocityStd = 10.0f * VELOCITY_NOISE * scale;
+    for (int c = 0; c < COORDINATES; ++c) {
+      final int i = base + c * VALUES;
+      state[i + X] = measurement[c];
+      state[i + V] = 0.0f;
+      state[i + P00] = positionStd * positionStd;
+      state[i + P01] = 0.0f;
+      state[i + P11] = velocityStd * velocityStd;
+    }
+    ids[track] = nextId++;
+    confidences[track] = 1.0f;
+    lastMatched[track] = timestamp;
+    matches[track] = d;
+  }
+
+  private void correct(final int track, final float[] boxes, final int d, final long lag) {
+    final int base = track * STRIDE;
+    toMeasurement(boxes, d, lag, base);
+    final float measurementStd = MEASUREMENT_NOISE * scale(base);
+    final float r = measurementStd * measurementStd;
+    for (int c = 0; c < COORDINATES; ++c) {
+      final int i = base + c * VALUES;
+      final float p00 = state[i + P00];
+      final float p01 = state[i + P01];
+      final float s = p00 + r;
+      final float k0 = p00 / s;
+      final float k1 = p01 / s;
+      final float innovation = measurement[c] - state[i + X];
+      state[i + X] += k0 * innovation;
+      state[i + V] += k1 * innovation;
+      state[i + P00] = (1.0f - k0) * p00;
+      state[i + P01] = (1.0f - k0) * p01;
+      state[i + P11] -= k1 * p01;
+    }
+  }
+
+  // Fills measurement with detection d as center and size, moved forward by lag at the velocity of
+  // the track at base.
+  private void toMeasurement(final float[] boxes, final int d, final long lag, final int base) {
+    final float left = boxes[4 * d];
+    final float top = boxes[4 * d + 1];
+    final float right = boxes[4 * d + 2];
+    final float bottom = boxes[4 * d + 3];
+    measurement[CENTER_X] = (left + right) / 2;
+    measurement[CENTER_Y] = (top + bottom) / 2;
+    measurement[WIDTH] = right - left;
+    measurement[HEIGHT] = bottom - top;
+    if (lag > 0) {
+      for (int c = 0; c < COORDINATES; ++c) {
+        measurement[c] += lag * state[base + c * VALUES + V];
+      }
+    }
+  }
+
+  private void predict(final int i, final long dt, final float scale) {
+    final float positionStd = POSITION_NOISE * scale;
+    final float velocityStd = VELOCITY_NOISE * scale;
+    final float p01 = state[i + P01];
+    final float p11 = state[i + P11];
+    state[i + X] += dt * state[i + V];
+    state[i + P00] += dt * (2.0f * p01 + dt * p11) + dt * positionStd * positionStd;
+    state[i + P01] = p01 + dt * p11;
+    state[i + P11] = p11 + dt * velocityStd * velocityStd;
+  }
+
+  private float rewind(final int i, final long lag) {
+    return state[i + X] - lag * state[i + V];
+  }
+
+  private float scale(final int base) {
+    return Math.max(1.0f, state[base + HEIGHT * VALUES + X]);
+  }
+
+  // Moves the last track into the free slot.
+  private void remove(final int track) {
+    final int last = --trackCount;
+    if (track == last) {
+      return;
+    }
+    System.arraycopy(state, last * STRIDE, state, track * STRIDE, STRIDE);
+    ids[track] = ids[last];
+    confidences[track] = confidences[last];
+    lastMatched[track] = lastMatched[last];
+    matches[track] = matches[last];
+  }
+
+  private void checkTrack(final int track) {
+    if (track < 0 || track >= trackCount) {
+      throw new IndexOutOfBoundsException("Track " + track + " of " + trackCount);
+    }
+  }
+
+  private static float iou(
+      final float left1, final float top1, final float right1, final float bottom1,
+      final float left2, final float top2, final float right2, final float bottom2) {
+    final float w = Math.min(right1, right2) - Math.max(left1, left2);
+    final float h = Math.min(bottom1, bottom2) - Math.max(top1, top2);
+    if (w <= 0 || h <= 0) {
+      return 0.0f;
+    }
+    final float intersection = w * h;
+    final float union =
+        (right1 - left1) * (bottom1 - top1) + (right2 - left2) * (bottom2 - top2) - intersection;
+    return union > 0 ? intersection / union : 0.0f;
+  }
+}
@@ -0,0 +1,190 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
+
+/**
+ * Coarse frame-to-frame motion detection on the luminance plane.
+ *
+ * <p>The frame is split into a grid of cells and {@link #update} compares the mean brightness of
+ * each cell, sampled on a sparse lattice, with the previous frame. Cells whose mean moved by more
+ * than the threshold are flagged as changed; callers then {@link #clear} the cells covered by
+ * objects they already know about, so whatever is left flagged is motion nobody accounts for.
+ *
+ * <p>Allocation-free after construction. Not thread-safe.
+ */
+public class MotionGrid {
+  // Only every SAMPLE_STEP-th pixel of every SAMPLE_STEP-th row is read.
+  private static final int SAMPLE_STEP = 4;
+
+  private final int frameWidth;
+  private final int frameHeight;
+  private final int columns;
+  private final int rows;
+  private final int threshold;
+  // Cell column of each sampled x.
+  private final int[] sampleColumns;
+  private final int[] sums;
+  private final int[] samples;
+  private final int[] means;
+  private final boolean[] changed;
+  private boolean primed;
+  private int changedCount;
+
+  /**
+   * @param frameWidth Width of the luminance frames, in pixels.
+   * @param frameHeight Height of the luminance frames, in pixels.
+   * @param columns Cells across the frame.
+   * @param rows Cells down the frame.
+   * @param threshold Change of the mean luminance, 0-255, for a cell to count as changed.
+   */
+  public MotionGrid(
+      final int frameWidth,
+      final int frameHeight,
+      final int columns,
+      final int rows,
+      final int threshold) {
+    if (frameWidth <= 0 || frameHeight <= 0) {
+      throw new IllegalArgumentException("Bad frame size " + frameWidth + "x" + frameHeight);
+    }
+    if (columns <= 0 || rows <= 0 || columns > frameWidth || rows > frameHeight) {
+      throw new IllegalArgumentException("Bad grid size " + columns + "x" + rows);
+    }
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.columns = columns;
+    this.rows = rows;
+    this.threshold = threshold;
+    sums = new int[columns * rows];
+    samples = new int[columns * rows];
+    means = new int[columns * rows];
+    changed = new boolean[columns * rows];
+    sampleColumns = new int[(frameWidth + SAMPLE_STEP - 1) / SAMPLE_STEP];
+    for (int i = 0; i < sampleColumns.length; ++i) {
+      sampleColumns[i] = i * SAMPLE_STEP * columns / frameWidth;
+    }
+  }
+
+  /**
+   * Compares {@code luminance} with the frame passed to the previous call and flags the cells that
+   * changed. Every cell counts as changed on the first frame and after {@link #reset}.
+   *
+   * @return The number of changed cells.
+   */
+  public int update(final byte[] luminance, final int rowStride) {
+    Arrays.fill(sums, 0);
+    Arrays.fill(samples, 0);
+    for (int y = 0; y < frameHeight; y += SAMPLE_STEP) {
+      final int rowOffset = y * rowStride;
+      final int cellRow = y * rows / frameHeight * columns;
+      for (int i = 0, x = 0; i < sampleColumns.length; ++i, x += SAMPLE_STEP) {
+        final int cell = cellRow + sampleColumns[i];
+        sums[cell] += luminance[rowOffset + x] & 0xFF;
+        ++samples[cell];
+      }
+    }
+    return compare();
+  }
+
+  /** Same as {@link #update(byte[], int)} for a luminance plane read in place. */
+  public int update(final ByteBuffer luminance, final int rowStride) {
+    Arrays.fill(sums, 0);
+    Arrays.fill(samples, 0);
+    for (int y = 0; y < frameHeight; y += SAMPLE_STEP) {
+      final int rowOffset = y * rowStride;
+      final int cellRow = y * rows / frameHeight * columns;
+      for (int i = 0, x = 0; i < sampleColumns.length; ++i, x += SAMPLE_STEP) {
+        final int cell = cellRow + sampleColumns[i];
+        sums[cell] += luminance.get(rowOffset + x) & 0xFF;
+        ++samples[cell];
+      }
+    }
+    return compare();
+  }
+
+  /**
+   * Same as {@link #update(byte[], int)} for the luminance of {@code frame}, read from the array if
+   * the frame already has one and from the plane buffer otherwise, never copied.
+   */
+  public int update(final YuvFrame frame) {
+    if (frame.hasLuminanceArray()) {
+      return update(frame.getLuminance(), frame.getYRowStride());
+    }
+    return update(frame.getLuminanceBuffer(), frame.getYRowStride());
+  }
+
+  // Flags the cells whose mean moved since the last frame.
+  private int compare() {
+    changedCount = 0;
+    for (int i = 0; i < means.length; ++i) {
+      final int mean = samples[i] > 0 ? sums[i] / samples[i] : 0;
+      changed[i] = !primed || Math.abs(mean - means[i]) > threshold;
+      if (changed[i]) {
+        ++changedCount;
+      }
+      means[i] = mean;
+    }
+    primed = true;
+    return changedCount;
+  }
+
+  /**
+   * Unflags every cell overlapping the given box, in frame pixels.
+   *
+   * @return The number of cells still flagged.
+   */
+  public int clear(final float left, final float top, final float right, final float bottom) {
+    final int firstColumn = clamp((int) (left * columns / frameWidth), columns);
+    final int lastColumn = clamp((int) (right * columns / frameWidth), columns);
+    final int firstRow = clamp((int) (top * rows / frameHeight), rows);
+    final int lastRow = clamp((int) (bottom * rows / frameHeight), rows);
+    for (int row = firstRow; row <= lastRow; ++row) {
+      for (int column = firstColumn; column <= lastColumn; ++column) {
+        final int cell = row * columns + column;
+        if (changed[cell]) {
+          changed[cell] = false;
+          --changedCount;
+        }
+      }
+    }
+    return changedCount;
+  }
+
+  /** Forgets the previous frame, so the next {@link #update} flags every cell. */
+  public void reset() {
+    primed = false;
+  }
+
+  /** Returns the number of cells flagged by the last {@link #update} and not cleared since. */
+  public int getChangedCount() {
+    return changedCount;
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  private static int clamp(final int index, final int count) {
+    return Math.max(0, Math.min(count - 1, index));
+  }
+}
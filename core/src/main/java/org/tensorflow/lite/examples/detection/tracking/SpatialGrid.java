@@ -0,0 +1,186 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the frame that finds the boxes overlapping a query box without looking at
+ * the rest.
+ *
+ * <p>Boxes are added as entries numbered from 0 in the order they were added, and stay until the
+ * next {@link #clear}; {@link #remove} only hides an entry from queries. Each entry is linked into
+ * every cell it touches, so a query visits the cells under the query box and whatever entries are
+ * linked there. Boxes reaching outside the frame are clamped to the border cells.
+ *
+ * <p>Storage grows as needed and is kept across {@link #clear}, so once it has seen the largest
+ * scene nothing is allocated. Not thread-safe.
+ */
+public class SpatialGrid {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final int columns;
+  private final int rows;
+  private final float cellWidth;
+  private final float cellHeight;
+  // First node of each cell, -1 if empty.
+  private final int[] cellHeads;
+  // Linked lists of entries per cell.
+  private int[] nodeEntries = new int[INITIAL_CAPACITY];
+  private int[] nodeNext = new int[INITIAL_CAPACITY];
+  private int nodeCount;
+  // Per entry: the box, whether it was removed and the last query that saw it.
+  private float[] boxes = new float[4 * INITIAL_CAPACITY];
+  private boolean[] removed = new boolean[INITIAL_CAPACITY];
+  private int[] stamps = new int[INITIAL_CAPACITY];
+  private int entryCount;
+  // Counts queries; package-private so tests can run it up to the wraparound.
+  int stamp;
+  private int[] results = new int[INITIAL_CAPACITY];
+  private int resultCount;
+
+  /**
+   * @param frameWidth Width of the area covered, in pixels.
+   * @param frameHeight Height of the area covered, in pixels.
+   * @param columns Cells across the frame.
+   * @param rows Cells down the frame.
+   */
+  public SpatialGrid(
+      final int frameWidth, final int frameHeight, final int columns, final int rows) {
+    if (frameWidth <= 0 || frameHeight <= 0) {
+      throw new IllegalArgumentException("Bad frame size " + frameWidth + "x" + frameHeight);
+    }
+    if (columns <= 0 || rows <= 0) {
+      throw new IllegalArgumentException("Bad grid size " + columns + "x" + rows);
+    }
+    this.columns = columns;
+    this.rows = rows;
+    cellWidth = (float) frameWidth / columns;
+    cellHeight = (float) frameHeight / rows;
+    cellHeads = new int[columns * rows];
+    Arrays.fill(cellHeads, -1);
+  }
+
+  /** Drops every entry. */
+  public void clear() {
+    Arrays.fill(cellHeads, -1);
+    nodeCount = 0;
+    entryCount = 0;
+  }
+
+  /** Adds a box and returns its entry number. */
+  public int add(final float left, final float top, final float right, final float bottom) {
+    final int entry = entryCount++;
+    if (entry == removed.length) {
+      final int capacity = 2 * entry;
+      boxes = Arrays.copyOf(boxes, 4 * capacity);
+      removed = Arrays.copyOf(removed, capacity);
+      stamps = Arrays.copyOf(stamps, capacity);
+      results = Arrays.copyOf(results, capacity);
+    }
+    boxes[4 * entry] = left;
+    boxes[4 * entry + 1] = top;
+    boxes[4 * entry + 2] = right;
+    boxes[4 * entry + 3] = bottom;
+    removed[entry] = false;
+    stamps[entry] = stamp;
+
+    final int lastColumn = column(right);
+    final int lastRow = row(bottom);
+    for (int row = row(top); row <= lastRow; ++row) {
+      for (int column = column(left); column <= lastColumn; ++column) {
+        if (nodeCount == nodeEntries.length) {
+          nodeEntries = Arrays.copyOf(nodeEntries, 2 * nodeCount);
+          nodeNext = Arrays.copyOf(nodeNext, 2 * nodeCount);
+        }
+        final int cell = row * columns + column;
+        nodeEntries[nodeCount] = entry;
+        nodeNext[nodeCount] = cellHeads[cell];
+        cellHeads[cell] = nodeCount++;
+      }
+    }
+    return entry;
+  }
+
+  /** Hides an entry from later queries. */
+  public void remove(final int entry) {
+    if (entry < 0 || entry >= entryCount) {
+      throw new IndexOutOfBoundsException("Entry " + entry + " of " + entryCount);
+    }
+    removed[entry] = true;
+  }
+
+  /**
+   * Finds the entries whose box overlaps the given one with a non-empty intersection. The results
+   * are read with {@link #getResult} until the next query.
+   *
+   * @return The number of entries found.
+   */
+  public int query(final float left, final float top, final float right, final float bottom) {
+    if (++stamp == 0) {
+      // The counter wrapped, make sure no entry looks visited.
+      Arrays.fill(stamps, 0, entryCount, 0);
+      stamp = 1;
+    }
+    resultCount = 0;
+    final int lastColumn = column(right);
+    final int lastRow = row(bottom);
+    for (int row = row(top); row <= lastRow; ++row) {
+      for (int column = column(left); column <= lastColumn; ++column) {
+        for (int node = cellHeads[row * columns + column]; node >= 0; node = nodeNext[node]) {
+          final int entry = nodeEntries[node];
+          if (stamps[entry] == stamp) {
+            continue;
+          }
+          stamps[entry] = stamp;
+          if (!removed[entry] && overlaps(entry, left, top, right, bottom)) {
+            results[resultCount++] = entry;
+          }
+        }
+      }
+    }
+    // Report entries in the order they were added, whatever cells they came from.
+    Arrays.sort(results, 0, resultCount);
+    return resultCount;
+  }
+
+  /** Returns the {@code i}-th entry found by the last {@link #query}. */
+  public int getResult(final int i) {
+    if (i < 0 || i >= resultCount) {
+      throw new IndexOutOfBoundsException("Result " + i + " of " + resultCount);
+    }
+    return results[i];
+  }
+
+  public int getEntryCount() {
+    return entryCount;
+  }
+
+  private boolean overlaps(
+      final int entry, final float left, final float top, final float right, final float bottom) {
+    final int i = 4 * entry;
+    return Math.max(left, boxes[i]) < Math.min(right, boxes[i + 2])
+        && Math.max(top, boxes[i + 1]) < Math.min(bottom, boxes[i + 3]);
+  }
+
+  private int column(final float x) {
+    return Math.max(0, Math.min(columns - 1, (int) (x / cellWidth)));
+  }
+
+  private int row(final float y) {
+    return Math.max(0, Math.min(rows - 1, (int) (y / cellHeight)));
+  }
+}
@@ -0,0 +1,150 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class BufferPoolTest {
+  // Hands out int[] buffers of width * height and remembers the ones discarded.
+  private static final class CountingAllocator implements BufferPool.Allocator<int[]> {
+    final List<int[]> discarded = new ArrayList<>();
+
+    @Override
+    public int[] allocate(final int width, final int height, final Object config) {
+      return new int[width * height];
+    }
+
+    @Override
+    public void discard(final int[] buffer) {
+      discarded.add(buffer);
+    }
+  }
+
+  @Test
+  public void returnsTheBufferWithTheLastRelease() {
+    final BufferPool<int[]> pool = new BufferPool<>(new CountingAllocator(), 2);
+    final BufferPool.Lease<int[]> lease = pool.acquire(4, 3, "a");
+    final int[] buffer = lease.get();
+    assertEquals(12, buffer.length);
+    assertSame(lease, lease.retain());
+
+    lease.release();
+    assertSame(buffer, lease.get());
+    // Still held, so a second request gets a new buffer.
+    final BufferPool.Lease<int[]> other = pool.acquire(4, 3, "a");
+    assertNotSame(buffer, other.get());
+    other.release();
+
+    lease.release();
+    assertSame(buffer, pool.acquire(4, 3, "a").get());
+    assertEquals(2, pool.getAllocationCount());
+    assertEquals(1, pool.getReuseCount());
+  }
+
+  @Test
+  public void usingAReleasedLeaseThrows() {
+    final BufferPool<int[]> pool = new BufferPool<>(new CountingAllocator(), 1);
+    final BufferPool.Lease<int[]> lease = pool.acquire(2, 2, null);
+    lease.release();
+    try {
+      lease.release();
+      fail();
+    } catch (final IllegalStateException expected) {
+    }
+    try {
+      lease.retain();
+      fail();
+    } catch (final IllegalStateException expected) {
+    }
+    try {
+      lease.get();
+      fail();
+    } catch (final IllegalStateException expected) {
+    }
+    // The failed release did not put the buffer on the shelf twice.
+    pool.acquire(2, 2, null);
+    pool.acquire(2, 2, null);
+    assertEquals(2, pool.getAllocationCount());
+    assertEquals(1, pool.getReuseCount());
+  }
+
+  @Test
+  public void discardsPastMaxIdlePerKey() {
+    final CountingAllocator allocator = new CountingAllocator();
+    final BufferPool<int[]> pool = new BufferPool<>(allocator, 2);
+    final List<BufferPool.Lease<int[]>> leases = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      leases.add(pool.acquire(8, 8, "a"));
+    }
+    leases.add(pool.acquire(8, 8, "b"));
+    final int[] third = leases.get(2).get();
+    for (final BufferPool.Lease<int[]> lease : leases) {
+      lease.release();
+    }
+    // Two of the "a" buffers are kept; the "b" shelf has room for its own.
+    assertEquals(1, allocator.discarded.size());
+    assertSame(third, allocator.discarded.get(0));
+  }
+
+  @Test
+  public void clearKeepsLeasesThatAreStillOut() {
+    final CountingAllocator allocator = new CountingAllocator();
+    final BufferPool<int[]> pool = new BufferPool<>(allocator, 4);
+    final BufferPool.Lease<int[]> idle = pool.acquire(2, 2, "a");
+    final int[] idleBuffer = idle.get();
+    final BufferPool.Lease<int[]> held = pool.acquire(2, 2, "a");
+    final int[] heldBuffer = held.get();
+    idle.release();
+
+    pool.clear();
+    assertEquals(1, allocator.discarded.size());
+    assertSame(idleBuffer, allocator.discarded.get(0));
+    assertSame(heldBuffer, held.get());
+
+    held.release();
+    assertSame(heldBuffer, pool.acquire(2, 2, "a").get());
+    assertEquals(1, allocator.discarded.size());
+  }
+
+  @Test
+  public void keysCompareShapeAndConfig() {
+    final BufferPool<int[]> pool = new BufferPool<>(new CountingAllocator(), 4);
+    final int[] nullConfig = release(pool.acquire(3, 5, null));
+    final int[] stringConfig = release(pool.acquire(3, 5, "a"));
+    final int[] swapped = release(pool.acquire(5, 3, null));
+    assertEquals(3, pool.getAllocationCount());
+
+    assertSame(nullConfig, pool.acquire(3, 5, null).get());
+    // An equal config that is not the same instance finds the same shelf.
+    assertSame(stringConfig, pool.acquire(3, 5, new String("a")).get());
+    assertSame(swapped, pool.acquire(5, 3, null).get());
+    assertEquals(3, pool.getAllocationCount());
+    assertEquals(3, pool.getReuseCount());
+  }
+
+  private static int[] release(final BufferPool.Lease<int[]> lease) {
+    final int[] buffer = lease.get();
+    lease.release();
+    return buffer;
+  }
+}
@@ -0,0 +1,97 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+  @Test
+  public void bucketEdges() {
+    // Below 128 every value has a bucket of its own.
+    assertEquals(127, LatencyHistogram.bucketOf(127));
+    assertEquals(127, LatencyHistogram.highestValueOf(127));
+    // 128..255 are split in 64 buckets of two.
+    assertEquals(128, LatencyHistogram.bucketOf(128));
+    assertEquals(129, LatencyHistogram.highestValueOf(128));
+    assertEquals(191, LatencyHistogram.bucketOf(255));
+    assertEquals(255, LatencyHistogram.highestValueOf(191));
+    // 256..511 in 64 buckets of four.
+    assertEquals(192, LatencyHistogram.bucketOf(256));
+    assertEquals(259, LatencyHistogram.highestValueOf(192));
+
+    final int last = LatencyHistogram.bucketOf(LatencyHistogram.MAX_TRACKABLE);
+    assertEquals(LatencyHistogram.MAX_TRACKABLE, LatencyHistogram.highestValueOf(last));
+    assertEquals(last - 1, LatencyHistogram.bucketOf(LatencyHistogram.highestValueOf(last - 1)));
+  }
+
+  @Test
+  public void everyValueFallsInsideItsBucket() {
+    final Random random = new Random(18);
+    for (int i = 0; i < 100000; ++i) {
+      final long value = random.nextLong() >>> (28 + random.nextInt(36));
+      final int bucket = LatencyHistogram.bucketOf(value);
+      final long highest = LatencyHistogram.highestValueOf(bucket);
+      assertTrue(value + " above bucket " + bucket, value <= highest);
+      if (bucket > 0) {
+        assertTrue(value + " below bucket " + bucket,
+            value > LatencyHistogram.highestValueOf(bucket - 1));
+      }
+      assertTrue(value + " too coarse", highest - value <= value / 64);
+    }
+  }
+
+  @Test
+  public void percentilesMatchASortedReference() {
+    final Random random = new Random(7);
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final long[] values = new long[5001];
+    for (int i = 0; i < values.length; ++i) {
+      // Mostly a few milliseconds with a long tail, like frame latencies.
+      values[i] = (long) (2e6 + Math.abs(random.nextGaussian()) * 3e6)
+          + (random.nextInt(50) == 0 ? random.nextInt(200000000) : 0);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    for (final double percentile : new double[] {0, 50, 90, 99, 100}) {
+      final int rank = Math.max(1, (int) Math.ceil(percentile / 100 * values.length));
+      final long reference = values[rank - 1];
+      final long expected = Math.min(
+          LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(reference)),
+          values[values.length - 1]);
+      assertEquals("p" + percentile, expected, histogram.getPercentileNanos(percentile));
+    }
+    assertEquals(values[values.length - 1], histogram.getMaxNanos());
+    assertEquals(values.length, histogram.getCount());
+  }
+
+  @Test
+  public void emptyAndResetReportZero() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentileNanos(50));
+    histogram.record(-5);
+    histogram.record(1000);
+    assertEquals(0, histogram.getPercentileNanos(50));
+    assertEquals(1000, histogram.getPercentileNanos(100));
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentileNanos(99));
+  }
+}
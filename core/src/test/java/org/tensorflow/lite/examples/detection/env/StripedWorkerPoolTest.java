@@ -0,0 +1,87 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+
+public class StripedWorkerPoolTest {
+  @Test
+  public void coversEveryRowOnce() {
+    final StripedWorkerPool pool = new StripedWorkerPool(4);
+    try {
+      for (int total = 0; total < 50; ++total) {
+        final AtomicIntegerArray visits = new AtomicIntegerArray(total);
+        pool.run(total, 3, (stripe, start, end) -> {
+          assertTrue(stripe == 0 || start % 3 == 0);
+          for (int row = start; row < end; ++row) {
+            visits.incrementAndGet(row);
+          }
+        });
+        for (int row = 0; row < total; ++row) {
+          assertEquals(1, visits.get(row));
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void finishesAJobDispatchedBeforeShutdown() {
+    // Shutting down from inside the job races the workers waking up for it; the job must still
+    // complete instead of waiting for stripes nobody will run.
+    for (int i = 0; i < 500; ++i) {
+      final StripedWorkerPool pool = new StripedWorkerPool(4);
+      final AtomicIntegerArray visits = new AtomicIntegerArray(40);
+      pool.run(40, 1, (stripe, start, end) -> {
+        if (stripe == 0) {
+          pool.shutdown();
+        }
+        for (int row = start; row < end; ++row) {
+          visits.incrementAndGet(row);
+        }
+      });
+      for (int row = 0; row < 40; ++row) {
+        assertEquals(1, visits.get(row));
+      }
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsJobsAfterShutdown() {
+    final StripedWorkerPool pool = new StripedWorkerPool(2);
+    pool.shutdown();
+    pool.run(10, 1, (stripe, start, end) -> {});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rethrowsWorkerFailures() {
+    final StripedWorkerPool pool = new StripedWorkerPool(2);
+    try {
+      pool.run(10, 1, (stripe, start, end) -> {
+        if (stripe == 1) {
+          throw new IllegalArgumentException();
+        }
+      });
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
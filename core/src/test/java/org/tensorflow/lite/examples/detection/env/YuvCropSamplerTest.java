@@ -0,0 +1,164 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class YuvCropSamplerTest {
+  // Power-of-two friendly sizes, so the matrices and the sampler's running sums are exact.
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+  private static final int ROW_STRIDE = 72;
+  private static final int CROP_SIZE = 32;
+
+  @Test
+  public void nearestMatchesCroppingTheConvertedFrame() {
+    final float scaleX = (float) WIDTH / CROP_SIZE;
+    final float scaleY = (float) HEIGHT / CROP_SIZE;
+    // Scale only, and a 90 degree rotation: crop x runs up the frame, crop y along it.
+    assertNearestMatchesFrame(new float[] {scaleX, 0, 0, 0, scaleY, 0, 0, 0, 1});
+    assertNearestMatchesFrame(new float[] {0, scaleX, 0, -scaleY, 0, HEIGHT, 0, 0, 1});
+  }
+
+  @Test
+  public void bilinearKeepsAConstantPlaneConstant() {
+    // Reaches a little outside the frame, so the edge clamping is exercised as well.
+    final float[] cropToFrame = {2.5f, 0.25f, -6, -0.5f, 1.75f, -4, 0, 0, 1};
+    for (final int luma : new int[] {0, 17, 128, 255}) {
+      final YuvCropSampler sampler =
+          new YuvCropSampler(
+              WIDTH, HEIGHT, CROP_SIZE, CROP_SIZE, cropToFrame, YuvCropSampler.Sampling.BILINEAR);
+      final byte[] y = new byte[ROW_STRIDE * HEIGHT];
+      Arrays.fill(y, (byte) luma);
+      final byte[] chroma = new byte[WIDTH * HEIGHT];
+      Arrays.fill(chroma, (byte) 90);
+      sampler.setLuminance(y, ROW_STRIDE);
+      sampler.copyChroma(chroma, 0, chroma, 0, WIDTH, 1);
+
+      final int expected = YuvToArgbConverter.toArgb(luma, 90, 90);
+      final int[] row = new int[CROP_SIZE];
+      for (int j = 0; j < CROP_SIZE; ++j) {
+        sampler.readRow(j, row, 0);
+        for (int i = 0; i < CROP_SIZE; ++i) {
+          assertEquals(expected, row[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void copiesChromaFromEveryLayout() {
+    // Odd sizes, where the last chroma column and row cover a single pixel.
+    final int width = 37;
+    final int height = 23;
+    final int chromaWidth = 19;
+    final int chromaHeight = 12;
+    final Random random = new Random(13);
+    final byte[] y = randomBytes(random, width * height);
+    final byte[] u = randomBytes(random, chromaWidth * chromaHeight);
+    final byte[] v = randomBytes(random, chromaWidth * chromaHeight);
+    final int[] expected = new int[width * height];
+    for (int j = 0; j < height; ++j) {
+      for (int i = 0; i < width; ++i) {
+        final int uv = (j / 2) * chromaWidth + i / 2;
+        expected[j * width + i] =
+            YuvToArgbConverter.toArgb(0xff & y[j * width + i], 0xff & u[uv], 0xff & v[uv]);
+      }
+    }
+
+    // Planar, pixel stride 1, with padded rows.
+    final int planarStride = 24;
+    final byte[] uPlanar = new byte[planarStride * chromaHeight];
+    final byte[] vPlanar = new byte[planarStride * chromaHeight];
+    // Semi-planar V/U, pixel stride 2, as in NV21 and most YUV_420_888 images.
+    final int packedStride = 40;
+    final byte[] vu = new byte[packedStride * chromaHeight];
+    for (int j = 0; j < chromaHeight; ++j) {
+      for (int i = 0; i < chromaWidth; ++i) {
+        uPlanar[j * planarStride + i] = u[j * chromaWidth + i];
+        vPlanar[j * planarStride + i] = v[j * chromaWidth + i];
+        vu[j * packedStride + 2 * i] = v[j * chromaWidth + i];
+        vu[j * packedStride + 2 * i + 1] = u[j * chromaWidth + i];
+      }
+    }
+    final ByteBuffer vBuffer = ByteBuffer.allocateDirect(vu.length);
+    vBuffer.put(vu);
+    vBuffer.position(1);
+    final ByteBuffer uBuffer = vBuffer.slice();
+    vBuffer.position(0);
+
+    final YuvCropSampler sampler =
+        new YuvCropSampler(
+            width, height, 1, 1, new float[] {1, 0, 0, 0, 1, 0, 0, 0, 1},
+            YuvCropSampler.Sampling.NEAREST);
+    sampler.setLuminance(y, width);
+    final int[] frame = new int[width * height];
+
+    sampler.copyChroma(uPlanar, 0, vPlanar, 0, planarStride, 1);
+    sampler.convertFrame(frame);
+    assertArrayEquals(expected, frame);
+    sampler.copyChroma(vu, 1, vu, 0, packedStride, 2);
+    sampler.convertFrame(frame);
+    assertArrayEquals(expected, frame);
+    sampler.copyChroma(ByteBuffer.wrap(uPlanar), ByteBuffer.wrap(vPlanar), planarStride, 1);
+    sampler.convertFrame(frame);
+    assertArrayEquals(expected, frame);
+    sampler.copyChroma(uBuffer, vBuffer, packedStride, 2);
+    sampler.convertFrame(frame);
+    assertArrayEquals(expected, frame);
+    assertEquals(0, uBuffer.position());
+    assertEquals(0, vBuffer.position());
+  }
+
+  private static void assertNearestMatchesFrame(final float[] cropToFrame) {
+    final Random random = new Random(1);
+    final byte[] y = randomBytes(random, ROW_STRIDE * HEIGHT);
+    final byte[] u = randomBytes(random, WIDTH / 2 * HEIGHT / 2);
+    final byte[] v = randomBytes(random, WIDTH / 2 * HEIGHT / 2);
+    final YuvCropSampler sampler =
+        new YuvCropSampler(
+            WIDTH, HEIGHT, CROP_SIZE, CROP_SIZE, cropToFrame, YuvCropSampler.Sampling.NEAREST);
+    sampler.setLuminance(y, ROW_STRIDE);
+    sampler.copyChroma(u, 0, v, 0, WIDTH / 2, 1);
+    final int[] frame = new int[WIDTH * HEIGHT];
+    sampler.convertFrame(frame);
+
+    final int[] row = new int[CROP_SIZE];
+    for (int j = 0; j < CROP_SIZE; ++j) {
+      sampler.readRow(j, row, 0);
+      for (int i = 0; i < CROP_SIZE; ++i) {
+        // The frame pixel the crop pixel's center lands in.
+        final float x = i + 0.5f;
+        final float yy = j + 0.5f;
+        final int sx = (int) Math.floor(cropToFrame[0] * x + cropToFrame[1] * yy + cropToFrame[2]);
+        final int sy = (int) Math.floor(cropToFrame[3] * x + cropToFrame[4] * yy + cropToFrame[5]);
+        assertEquals(frame[sy * WIDTH + sx], row[i]);
+      }
+    }
+  }
+
+  private static byte[] randomBytes(final Random random, final int length) {
+    final byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
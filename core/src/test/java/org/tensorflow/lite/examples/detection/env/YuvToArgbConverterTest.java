@@ -0,0 +1,175 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class YuvToArgbConverterTest {
+  private static final int[][] SIZES = {{1, 1}, {2, 2}, {3, 5}, {16, 9}, {37, 23}, {64, 48}};
+
+  @Test
+  public void matchesTheOriginalConversionForEveryPixel() {
+    for (int y = 0; y < 256; ++y) {
+      for (int u = 0; u < 256; ++u) {
+        for (int v = 0; v < 256; ++v) {
+          final int expected = referenceYuv2Rgb(y, u, v);
+          final int actual = YuvToArgbConverter.toArgb(y, u, v);
+          // Only build the message for a mismatch; this runs 2^24 times.
+          if (actual != expected) {
+            assertEquals("y=" + y + " u=" + u + " v=" + v, expected, actual);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void convertsNv21FramesLikeTheOriginal() {
+    final Random random = new Random(17);
+    for (final int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      // The original loop reads a whole V/U pair for an odd last column, hence the extra byte.
+      final byte[] input = randomBytes(random, width * height + (height + 1) / 2 * width + 1);
+      final int[] expected = new int[width * height];
+      referenceYuv420Sp(input, width, height, expected);
+
+      final int[] output = new int[width * height];
+      YuvToArgbConverter.convertYuv420Sp(input, width, height, output);
+      assertArrayEquals(width + "x" + height, expected, output);
+
+      final int[] striped = new int[width * height];
+      for (int start = 0; start < height; start += 4) {
+        YuvToArgbConverter.convertYuv420Sp(input, width, height, striped, start, start + 4);
+      }
+      assertArrayEquals(width + "x" + height, expected, striped);
+    }
+  }
+
+  @Test
+  public void convertsStridedFramesLikeTheOriginal() {
+    final Random random = new Random(19);
+    for (final int[] size : SIZES) {
+      for (final int uvPixelStride : new int[] {1, 2}) {
+        final int width = size[0];
+        final int height = size[1];
+        final int yRowStride = width + 3;
+        final int uvRowStride = (width + 1) / 2 * uvPixelStride + 5;
+        final int uvLength = (height + 1) / 2 * uvRowStride;
+        final byte[] y = randomBytes(random, height * yRowStride);
+        final byte[] u = randomBytes(random, uvLength);
+        final byte[] v = randomBytes(random, uvLength);
+        final int[] expected = new int[width * height];
+        referenceYuv420(y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, expected);
+
+        final int[] output = new int[width * height];
+        YuvToArgbConverter.convertYuv420(
+            y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, output);
+        assertArrayEquals(width + "x" + height, expected, output);
+
+        // Uneven ranges, the last one running past the frame.
+        final int[] striped = new int[width * height];
+        int start = 0;
+        for (int rows = 2; start < height; rows += 2) {
+          YuvToArgbConverter.convertYuv420(
+              y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, striped, start,
+              start + rows);
+          start += rows;
+        }
+        assertArrayEquals(width + "x" + height, expected, striped);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRangesStartingOnAnOddRow() {
+    YuvToArgbConverter.convertYuv420Sp(new byte[24], 4, 4, new int[16], 1, 4);
+  }
+
+  // The per-pixel conversion ImageUtils used before the table-driven one, kept verbatim.
+  private static int referenceYuv2Rgb(int y, int u, int v) {
+    final int kMaxChannelValue = 262143;
+    y = (y - 16) < 0 ? 0 : (y - 16);
+    u -= 128;
+    v -= 128;
+
+    int y1192 = 1192 * y;
+    int r = (y1192 + 1634 * v);
+    int g = (y1192 - 833 * v - 400 * u);
+    int b = (y1192 + 2066 * u);
+
+    r = r > kMaxChannelValue ? kMaxChannelValue : (r < 0 ? 0 : r);
+    g = g > kMaxChannelValue ? kMaxChannelValue : (g < 0 ? 0 : g);
+    b = b > kMaxChannelValue ? kMaxChannelValue : (b < 0 ? 0 : b);
+
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+
+  private static void referenceYuv420Sp(
+      final byte[] input, final int width, final int height, final int[] output) {
+    final int frameSize = width * height;
+    for (int j = 0, yp = 0; j < height; j++) {
+      int uvp = frameSize + (j >> 1) * width;
+      int u = 0;
+      int v = 0;
+
+      for (int i = 0; i < width; i++, yp++) {
+        int y = 0xff & input[yp];
+        if ((i & 1) == 0) {
+          v = 0xff & input[uvp++];
+          u = 0xff & input[uvp++];
+        }
+
+        output[yp] = referenceYuv2Rgb(y, u, v);
+      }
+    }
+  }
+
+  private static void referenceYuv420(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    int yp = 0;
+    for (int j = 0; j < height; j++) {
+      int pY = yRowStride * j;
+      int pUV = uvRowStride * (j >> 1);
+
+      for (int i = 0; i < width; i++) {
+        int uv_offset = pUV + (i >> 1) * uvPixelStride;
+
+        out[yp++] =
+            referenceYuv2Rgb(
+                0xff & yData[pY + i], 0xff & uData[uv_offset], 0xff & vData[uv_offset]);
+      }
+    }
+  }
+
+  private static byte[] randomBytes(final Random random, final int length) {
+    final byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
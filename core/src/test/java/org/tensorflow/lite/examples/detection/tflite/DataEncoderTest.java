@@ -0,0 +1,194 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.Test;
+
+public class DataEncoderTest {
+  private static final float IMAGE_SIZE = 1024;
+  private static final int TOP_K = 50;
+  private static final float NMS_THRESHOLD = 0.5f;
+
+  @Test
+  public void decodesEveryAnchorLikeBeforeWhenNotCapped() {
+    final DataEncoder encoder = new DataEncoder(IMAGE_SIZE);
+    encoder.setPreNmsTopN(encoder.getBoxesNum());
+    assertEquals(encoder.getBoxesNum(), encoder.getPreNmsTopN());
+    final Random random = new Random(3);
+    for (int trial = 0; trial < 5; ++trial) {
+      final float[][] loc = randomLoc(random, encoder.getBoxesNum());
+      final float[][] conf = randomConf(random, encoder.getBoxesNum(), 0.2f);
+      assertDecodes(encoder, loc, conf, referenceDecode(loc, conf, Integer.MAX_VALUE));
+    }
+  }
+
+  @Test
+  public void decodesOnlyTheBestAnchorsWhenCapped() {
+    final DataEncoder encoder = new DataEncoder(IMAGE_SIZE);
+    encoder.setPreNmsTopN(100);
+    final Random random = new Random(5);
+    final float[][] loc = randomLoc(random, encoder.getBoxesNum());
+    final float[][] conf = randomConf(random, encoder.getBoxesNum(), 0.2f);
+    assertDecodes(encoder, loc, conf, referenceDecode(loc, conf, 100));
+  }
+
+  @Test
+  public void decodesBuffersLikeArrays() {
+    final DataEncoder encoder = new DataEncoder(IMAGE_SIZE);
+    final int anchors = encoder.getBoxesNum();
+    final Random random = new Random(9);
+    final float[][] loc = randomLoc(random, anchors);
+    final float[][] conf = randomConf(random, anchors, 0.05f);
+    final FloatBuffer locBuffer = FloatBuffer.allocate(4 * anchors);
+    final FloatBuffer confBuffer = FloatBuffer.allocate(2 * anchors);
+    for (int i = 0; i < anchors; ++i) {
+      locBuffer.put(loc[i]);
+      confBuffer.put(conf[i]);
+    }
+    locBuffer.rewind();
+    confBuffer.rewind();
+
+    final float[] boxes = new float[4 * TOP_K];
+    final float[] scores = new float[TOP_K];
+    final int count = encoder.decode(locBuffer, confBuffer, boxes, scores);
+    assertEquals(0, locBuffer.position());
+    assertEquals(0, confBuffer.position());
+    final float[] arrayBoxes = new float[4 * TOP_K];
+    final float[] arrayScores = new float[TOP_K];
+    assertEquals(count, encoder.decode(loc, conf, arrayBoxes, arrayScores));
+    assertArrayEquals(arrayBoxes, boxes, 0.0f);
+    assertArrayEquals(arrayScores, scores, 0.0f);
+  }
+
+  private static void assertDecodes(
+      final DataEncoder encoder,
+      final float[][] loc,
+      final float[][] conf,
+      final float[] expected) {
+    final float[] boxes = new float[4 * TOP_K];
+    final float[] scores = new float[TOP_K];
+    final int count = encoder.decode(loc, conf, boxes, scores);
+    assertTrue(count > 0);
+    assertEquals(expected.length / 5, count);
+    for (int i = 0; i < count; ++i) {
+      assertEquals(expected[5 * i + 4], scores[i], 0.0f);
+      for (int c = 0; c < 4; ++c) {
+        assertEquals(expected[5 * i + c], boxes[4 * i + c], 0.0f);
+      }
+    }
+  }
+
+  // The decode from before the pre-NMS selection: every anchor that clears the background filter is
+  // decoded in anchor order, and the best limit of them go to NMS. Returns (x1, y1, x2, y2, score)
+  // per kept box.
+  private static float[] referenceDecode(
+      final float[][] loc, final float[][] conf, final int limit) {
+    final PriorBoxes priors = PriorBoxes.generate(IMAGE_SIZE);
+    final int anchors = priors.getCount();
+    final float[] boxes = new float[4 * anchors];
+    final float[] scores = new float[anchors];
+    int candidates = 0;
+    for (int i = 0; i < anchors; ++i) {
+      if (conf[i][0] < 0.0f && conf[i][1] > 0.0f) {
+        final float priorW = priors.getWidth().get(i);
+        final float priorH = priors.getHeight().get(i);
+        final float cx = loc[i][0] * 0.1f * priorW + priors.getCenterX().get(i);
+        final float cy = loc[i][1] * 0.1f * priorH + priors.getCenterY().get(i);
+        final float w = (float) Math.exp((double) (loc[i][2] * 0.2f)) * priorW;
+        final float h = (float) Math.exp((double) (loc[i][3] * 0.2f)) * priorH;
+        boxes[4 * candidates] = cx - w / 2.0f;
+        boxes[4 * candidates + 1] = cy - h / 2.0f;
+        boxes[4 * candidates + 2] = cx + w / 2.0f;
+        boxes[4 * candidates + 3] = cy + h / 2.0f;
+        scores[candidates] = conf[i][1];
+        ++candidates;
+      }
+    }
+    if (candidates > limit) {
+      // Keep the best limit candidates, still in anchor order.
+      final Integer[] order = new Integer[candidates];
+      for (int i = 0; i < candidates; ++i) {
+        order[i] = i;
+      }
+      Arrays.sort(
+          order,
+          new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+              return Float.compare(scores[b], scores[a]);
+            }
+          });
+      final boolean[] best = new boolean[candidates];
+      for (int i = 0; i < limit; ++i) {
+        best[order[i]] = true;
+      }
+      int kept = 0;
+      for (int i = 0; i < candidates; ++i) {
+        if (best[i]) {
+          System.arraycopy(boxes, 4 * i, boxes, 4 * kept, 4);
+          scores[kept++] = scores[i];
+        }
+      }
+      candidates = kept;
+    }
+
+    final int[] keep = new int[TOP_K];
+    final int kept =
+        new NMS(candidates).filter(boxes, scores, candidates, TOP_K, NMS_THRESHOLD, keep);
+    final float[] result = new float[5 * kept];
+    for (int i = 0; i < kept; ++i) {
+      System.arraycopy(boxes, 4 * keep[i], result, 5 * i, 4);
+      result[5 * i + 4] = scores[keep[i]];
+    }
+    return result;
+  }
+
+  private static float[][] randomLoc(final Random random, final int anchors) {
+    final float[][] loc = new float[anchors][4];
+    for (final float[] row : loc) {
+      for (int c = 0; c < 4; ++c) {
+        row[c] = 2.0f * random.nextFloat() - 1.0f;
+      }
+    }
+    return loc;
+  }
+
+  // A fraction of the anchors score as faces, each with a different score so NMS order is unique.
+  private static float[][] randomConf(
+      final Random random, final int anchors, final float faceFraction) {
+    final int[] ranks = new int[anchors];
+    for (int i = 0; i < anchors; ++i) {
+      final int j = random.nextInt(i + 1);
+      ranks[i] = ranks[j];
+      ranks[j] = i + 1;
+    }
+    final float[][] conf = new float[anchors][2];
+    for (int i = 0; i < anchors; ++i) {
+      final boolean face = random.nextFloat() < faceFraction;
+      conf[i][0] = face ? -1.0f : 1.0f;
+      conf[i][1] = face ? ranks[i] / (float) anchors : -1.0f;
+    }
+    return conf;
+  }
+}
@@ -0,0 +1,238 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.Test;
+
+public class NMSTest {
+  @Test
+  public void matchesSortThenSuppress() {
+    final Random random = new Random(42);
+    final NMS nms = new NMS(300);
+    final int[] keep = new int[300];
+    for (int trial = 0; trial < 500; ++trial) {
+      final int count = random.nextInt(301);
+      final float[] boxes = randomBoxes(random, count);
+      final float[] scores = distinctScores(random, count);
+      final int topK = 1 + random.nextInt(count + 1);
+      final float threshold = 0.2f + 0.6f * random.nextFloat();
+      final float[] boxesBefore = boxes.clone();
+      final float[] scoresBefore = scores.clone();
+
+      final int kept = nms.filter(boxes, scores, count, topK, threshold, keep);
+      assertArrayEquals(
+          reference(boxes, scores, count, topK, threshold), Arrays.copyOf(keep, kept));
+      assertArrayEquals(boxesBefore, boxes, 0.0f);
+      assertArrayEquals(scoresBefore, scores, 0.0f);
+    }
+  }
+
+  @Test
+  public void handlesEmptyAndSingleInput() {
+    final NMS nms = new NMS(4);
+    final int[] keep = new int[4];
+    assertEquals(0, nms.filter(new float[0], new float[0], 0, 4, 0.5f, keep));
+    assertEquals(1, nms.filter(new float[] {0, 0, 1, 1}, new float[] {0.3f}, 1, 4, 0.5f, keep));
+    assertEquals(0, keep[0]);
+  }
+
+  @Test
+  public void stopsAtTopK() {
+    final NMS nms = new NMS(10);
+    final float[] boxes = new float[40];
+    final float[] scores = new float[10];
+    for (int i = 0; i < 10; ++i) {
+      setBox(boxes, i, 10 * i, 0, 10 * i + 5, 5);
+      scores[i] = 0.05f * i;
+    }
+    final int[] keep = new int[10];
+    assertEquals(3, nms.filter(boxes, scores, 10, 3, 0.5f, keep));
+    assertArrayEquals(new int[] {9, 8, 7}, Arrays.copyOf(keep, 3));
+    // The keep buffer caps topK as well.
+    final int[] small = new int[2];
+    assertEquals(2, nms.filter(boxes, scores, 10, 10, 0.5f, small));
+    assertArrayEquals(new int[] {9, 8}, small);
+  }
+
+  @Test
+  public void keepsEveryTiedCandidateOnce() {
+    // All scores equal, which is where a quicksort partition goes wrong if it is going to.
+    final int count = 1000;
+    final NMS nms = new NMS(count);
+    final float[] boxes = new float[4 * count];
+    final float[] scores = new float[count];
+    for (int i = 0; i < count; ++i) {
+      setBox(boxes, i, 10 * i, 0, 10 * i + 5, 5);
+      scores[i] = 0.5f;
+    }
+    final int[] keep = new int[count];
+    assertEquals(count, nms.filter(boxes, scores, count, count, 0.5f, keep));
+    Arrays.sort(keep);
+    for (int i = 0; i < count; ++i) {
+      assertEquals(i, keep[i]);
+    }
+  }
+
+  @Test
+  public void keepsOneOfTiedOverlappingBoxes() {
+    final NMS nms = new NMS(3);
+    final float[] boxes = new float[12];
+    setBox(boxes, 0, 0, 0, 10, 10);
+    setBox(boxes, 1, 1, 0, 11, 10);
+    setBox(boxes, 2, 50, 0, 60, 10);
+    final int[] keep = new int[3];
+    final int kept = nms.filter(boxes, new float[] {0.8f, 0.8f, 0.9f}, 3, 3, 0.5f, keep);
+    assertEquals(2, kept);
+    assertEquals(2, keep[0]);
+    assertTrue(keep[1] == 0 || keep[1] == 1);
+  }
+
+  @Test
+  public void neverSuppressesWithZeroAreaBoxes() {
+    final NMS nms = new NMS(3);
+    final float[] boxes = new float[12];
+    setBox(boxes, 0, 0, 0, 10, 10);
+    setBox(boxes, 1, 5, 5, 5, 5);
+    setBox(boxes, 2, 0, 0, 10, 0);
+    final int[] keep = new int[3];
+    assertEquals(3, nms.filter(boxes, new float[] {0.9f, 0.8f, 0.7f}, 3, 3, 0.0f, keep));
+    assertArrayEquals(new int[] {0, 1, 2}, keep);
+  }
+
+  @Test
+  public void reusesBuffersAcrossCalls() {
+    final NMS nms = new NMS(8);
+    final int[] keep = new int[8];
+    final float[] overlapping = new float[32];
+    final float[] scores = new float[8];
+    for (int i = 0; i < 8; ++i) {
+      setBox(overlapping, i, 0, 0, 10, 10);
+      scores[i] = 0.1f * i;
+    }
+    assertEquals(1, nms.filter(overlapping, scores, 8, 8, 0.3f, keep));
+    assertEquals(7, keep[0]);
+
+    // Nothing suppressed in the first call may leak into the second, smaller one.
+    final float[] apart = new float[16];
+    for (int i = 0; i < 4; ++i) {
+      setBox(apart, i, 20 * i, 0, 20 * i + 10, 10);
+    }
+    final int kept = nms.filter(apart, new float[] {0.1f, 0.4f, 0.3f, 0.2f}, 4, 8, 0.3f, keep);
+    assertArrayEquals(new int[] {1, 2, 3, 0}, Arrays.copyOf(keep, kept));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMoreCandidatesThanCapacity() {
+    new NMS(2).filter(new float[12], new float[3], 3, 3, 0.5f, new int[3]);
+  }
+
+  // Stable sort by descending score, then the textbook greedy loop.
+  private static int[] reference(
+      final float[] boxes,
+      final float[] scores,
+      final int count,
+      final int topK,
+      final float threshold) {
+    final Integer[] order = new Integer[count];
+    for (int i = 0; i < count; ++i) {
+      order[i] = i;
+    }
+    Arrays.sort(
+        order,
+        new Comparator<Integer>() {
+          @Override
+          public int compare(final Integer a, final Integer b) {
+            return Float.compare(scores[b], scores[a]);
+          }
+        });
+    final boolean[] suppressed = new boolean[count];
+    final int[] keep = new int[count];
+    int kept = 0;
+    for (int oi = 0; oi < count && kept < topK; ++oi) {
+      if (suppressed[oi]) {
+        continue;
+      }
+      keep[kept++] = order[oi];
+      for (int oj = oi + 1; oj < count; ++oj) {
+        if (iou(boxes, order[oi], order[oj]) > threshold) {
+          suppressed[oj] = true;
+        }
+      }
+    }
+    return Arrays.copyOf(keep, kept);
+  }
+
+  private static float iou(final float[] boxes, final int a, final int b) {
+    final float w =
+        Math.min(boxes[4 * a + 2], boxes[4 * b + 2]) - Math.max(boxes[4 * a], boxes[4 * b]);
+    final float h =
+        Math.min(boxes[4 * a + 3], boxes[4 * b + 3]) - Math.max(boxes[4 * a + 1], boxes[4 * b + 1]);
+    if (w <= 0 || h <= 0) {
+      return 0.0f;
+    }
+    final float intersection = w * h;
+    return intersection / (area(boxes, a) + area(boxes, b) - intersection);
+  }
+
+  private static float area(final float[] boxes, final int i) {
+    return (boxes[4 * i + 2] - boxes[4 * i]) * (boxes[4 * i + 3] - boxes[4 * i + 1]);
+  }
+
+  private static float[] randomBoxes(final Random random, final int count) {
+    final float[] boxes = new float[4 * count];
+    for (int i = 0; i < count; ++i) {
+      final float x = 100 * random.nextFloat();
+      final float y = 100 * random.nextFloat();
+      setBox(boxes, i, x, y, x + 1 + 30 * random.nextFloat(), y + 1 + 30 * random.nextFloat());
+    }
+    return boxes;
+  }
+
+  // A shuffled permutation of count distinct values in (0, 1], so the reference order is unique.
+  private static float[] distinctScores(final Random random, final int count) {
+    final float[] scores = new float[count];
+    for (int i = 0; i < count; ++i) {
+      scores[i] = (i + 1) / (float) count;
+    }
+    for (int i = count - 1; i > 0; --i) {
+      final int j = random.nextInt(i + 1);
+      final float score = scores[i];
+      scores[i] = scores[j];
+      scores[j] = score;
+    }
+    return scores;
+  }
+
+  private static void setBox(
+      final float[] boxes,
+      final int i,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    boxes[4 * i] = left;
+    boxes[4 * i + 1] = top;
+    boxes[4 * i + 2] = right;
+    boxes[4 * i + 3] = bottom;
+  }
+}
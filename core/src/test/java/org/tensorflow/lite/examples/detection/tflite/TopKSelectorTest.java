@@ -0,0 +1,132 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class TopKSelectorTest {
+  @Test
+  public void keepsTheSameEntriesAsAFullSort() {
+    final Random random = new Random(7);
+    final TopKSelector selector = new TopKSelector(500);
+    for (int trial = 0; trial < 200; ++trial) {
+      final int count = random.nextInt(400);
+      // Distinct scores, so the kept indices are unique as well.
+      final float[] scores = new float[count];
+      for (int i = 0; i < count; ++i) {
+        scores[i] = (i + 1) / 400.0f;
+      }
+      shuffle(random, scores);
+      final int limit = 1 + random.nextInt(500);
+      selector.reset(limit);
+      for (int i = 0; i < count; ++i) {
+        selector.offer(scores[i], i);
+      }
+
+      final int expected = Math.min(limit, count);
+      assertEquals(expected, selector.size());
+      final float[] sorted = scores.clone();
+      Arrays.sort(sorted);
+      final float[] kept = new float[expected];
+      for (int k = 0; k < expected; ++k) {
+        kept[k] = selector.scoreAt(k);
+        assertEquals(scores[selector.indexAt(k)], kept[k], 0.0f);
+      }
+      Arrays.sort(kept);
+      assertArrayEquals(Arrays.copyOfRange(sorted, count - expected, count), kept, 0.0f);
+    }
+  }
+
+  @Test
+  public void keepsTheTopScoresWithTies() {
+    final Random random = new Random(11);
+    final TopKSelector selector = new TopKSelector(100);
+    for (int trial = 0; trial < 200; ++trial) {
+      final int count = 1 + random.nextInt(300);
+      final float[] scores = new float[count];
+      for (int i = 0; i < count; ++i) {
+        scores[i] = random.nextInt(5) / 4.0f;
+      }
+      final int limit = 1 + random.nextInt(100);
+      selector.reset(limit);
+      for (int i = 0; i < count; ++i) {
+        selector.offer(scores[i], i);
+      }
+
+      // Which of several tied entries survives is unspecified, but the scores kept are not.
+      final int expected = Math.min(limit, count);
+      assertEquals(expected, selector.size());
+      final float[] sorted = scores.clone();
+      Arrays.sort(sorted);
+      final float[] kept = new float[expected];
+      final boolean[] seen = new boolean[count];
+      for (int k = 0; k < expected; ++k) {
+        final int index = selector.indexAt(k);
+        assertFalse(seen[index]);
+        seen[index] = true;
+        kept[k] = selector.scoreAt(k);
+        assertEquals(scores[index], kept[k], 0.0f);
+      }
+      Arrays.sort(kept);
+      assertArrayEquals(Arrays.copyOfRange(sorted, count - expected, count), kept, 0.0f);
+    }
+  }
+
+  @Test
+  public void keepsTheMaximumWhenLimitedToOne() {
+    final TopKSelector selector = new TopKSelector(8);
+    selector.reset(1);
+    final float[] scores = {0.3f, 0.9f, 0.1f, 0.9f, 0.5f};
+    for (int i = 0; i < scores.length; ++i) {
+      selector.offer(scores[i], i);
+    }
+    assertEquals(1, selector.size());
+    assertEquals(0.9f, selector.scoreAt(0), 0.0f);
+    assertEquals(1, selector.indexAt(0));
+  }
+
+  @Test
+  public void clampsTheLimitToTheCapacity() {
+    final TopKSelector selector = new TopKSelector(4);
+    selector.reset(10);
+    for (int i = 0; i < 10; ++i) {
+      selector.offer(i, i);
+    }
+    assertEquals(4, selector.size());
+
+    selector.reset(0);
+    assertEquals(0, selector.size());
+    selector.offer(1.0f, 0);
+    selector.offer(2.0f, 1);
+    assertEquals(1, selector.size());
+    assertEquals(1, selector.indexAt(0));
+  }
+
+  private static void shuffle(final Random random, final float[] values) {
+    for (int i = values.length - 1; i > 0; --i) {
+      final int j = random.nextInt(i + 1);
+      final float value = values[i];
+      values[i] = values[j];
+      values[j] = value;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tracking.DetectionScheduler.Decision;
+
+public class DetectionSchedulerTest {
+  private static final float MIN_CORRELATION = 0.5f;
+  private static final long MAX_INTERVAL_MS = 1000;
+  private static final int MIN_MOTION_CELLS = 3;
+
+  private final DetectionScheduler scheduler =
+      new DetectionScheduler(MIN_CORRELATION, MAX_INTERVAL_MS, MIN_MOTION_CELLS);
+
+  @Test
+  public void skipsWhileTheTrackerIsFine() {
+    scheduler.onDetectionStarted(0);
+    // The correlation is ignored without tracked objects.
+    assertEquals(Decision.SKIP, scheduler.decide(5, 0, 0.0f, 0));
+    assertEquals(Decision.SKIP, scheduler.decide(10, 2, 0.9f, MIN_MOTION_CELLS - 1));
+    assertEquals(Decision.SKIP, scheduler.decide(MAX_INTERVAL_MS - 1, 2, 0.9f, 0));
+  }
+
+  @Test
+  public void reasonsComeInOrderOfPrecedence() {
+    // Every reason holds on each frame below; the highest one left is reported.
+    assertEquals(Decision.FIRST, scheduler.decide(0, 3, 0.1f, 10));
+    scheduler.onDetectionStarted(0);
+    scheduler.decide(1, 3, 0.9f, 0);
+
+    assertEquals(Decision.MAX_INTERVAL, scheduler.decide(MAX_INTERVAL_MS, 2, 0.1f, 10));
+    assertEquals(Decision.LOW_CORRELATION, scheduler.decide(2, 1, 0.1f, 10));
+    assertEquals(Decision.TRACK_LOST, scheduler.decide(3, 1, 0.9f, 10));
+    scheduler.onDetectionStarted(4);
+    assertEquals(Decision.MOTION, scheduler.decide(5, 1, 0.9f, MIN_MOTION_CELLS));
+  }
+
+  @Test
+  public void trackLostStaysUntilADetectionStarts() {
+    scheduler.onDetectionStarted(0);
+    scheduler.decide(1, 3, 0.9f, 0);
+    assertEquals(Decision.TRACK_LOST, scheduler.decide(2, 2, 0.9f, 0));
+    // The count is back up, but no detection has run since the loss.
+    assertEquals(Decision.TRACK_LOST, scheduler.decide(3, 3, 0.9f, 0));
+    assertEquals(Decision.TRACK_LOST, scheduler.decide(4, 3, 0.9f, 0));
+
+    scheduler.onDetectionStarted(5);
+    assertEquals(Decision.SKIP, scheduler.decide(6, 3, 0.9f, 0));
+  }
+
+  @Test
+  public void resetStartsOver() {
+    scheduler.onDetectionStarted(0);
+    scheduler.decide(1, 3, 0.9f, 0);
+    scheduler.reset();
+    assertEquals(Decision.FIRST, scheduler.decide(2, 0, 0.9f, 0));
+    scheduler.onDetectionStarted(2);
+    // The tracks forgotten by reset() do not count as lost.
+    assertEquals(Decision.SKIP, scheduler.decide(3, 0, 0.9f, 0));
+  }
+}
@@ -0,0 +1,114 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class FlowHistoryTest {
+  @Test
+  public void dropsTheOldestFrameOnceFull() {
+    final FlowHistory history = new FlowHistory(3);
+    final byte[][] frames = new byte[5][];
+    for (int i = 0; i < frames.length; ++i) {
+      frames[i] = new byte[] {(byte) i, (byte) i};
+      history.add(10 * i, frames[i], 1 + i % 2);
+    }
+    assertEquals(3, history.size());
+
+    final FlowHistory.Range range = history.poll(Long.MAX_VALUE);
+    assertEquals(3, range.size());
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(10 * (i + 2), range.getTimestamp(i));
+      assertSame(frames[i + 2], range.getDeltas(i));
+      assertEquals(1 + (i + 2) % 2, range.getLength(i));
+    }
+    assertEquals(0, history.size());
+  }
+
+  @Test
+  public void pollsAcrossTheWrap() {
+    final FlowHistory history = new FlowHistory(4);
+    for (int i = 0; i < 6; ++i) {
+      history.add(i, new byte[] {(byte) i}, 1);
+    }
+    // Frames 2..5 are held, starting at slot 2, so polling up to 4 wraps past the last slot.
+    final FlowHistory.Range range = history.poll(4);
+    assertEquals(3, range.size());
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(i + 2, range.getTimestamp(i));
+      assertEquals(i + 2, range.getDeltas(i)[0]);
+    }
+    assertEquals(1, history.size());
+
+    history.add(6, new byte[] {6}, 1);
+    final FlowHistory.Range rest = history.poll(6);
+    assertEquals(2, rest.size());
+    assertEquals(5, rest.getTimestamp(0));
+    assertEquals(6, rest.getTimestamp(1));
+  }
+
+  @Test
+  public void pollStopsAtTheFirstLaterFrame() {
+    final FlowHistory history = new FlowHistory(4);
+    history.add(5, new byte[1], 1);
+    history.add(9, new byte[1], 1);
+    assertEquals(0, history.poll(4).size());
+    assertEquals(1, history.poll(8).size());
+    assertEquals(1, history.size());
+  }
+
+  @Test
+  public void addAndClearInvalidateTheRange() {
+    final FlowHistory history = new FlowHistory(2);
+    history.add(1, new byte[1], 1);
+    history.add(2, new byte[1], 1);
+    final FlowHistory.Range range = history.poll(2);
+    assertEquals(2, range.size());
+
+    history.add(3, new byte[1], 1);
+    assertEquals(0, range.size());
+    assertOutOfBounds(range, 0);
+
+    assertEquals(1, history.poll(3).size());
+    history.clear();
+    assertEquals(0, range.size());
+    assertOutOfBounds(range, 0);
+    assertEquals(0, history.size());
+  }
+
+  @Test
+  public void rejectsALengthPastTheArray() {
+    final FlowHistory history = new FlowHistory(2);
+    try {
+      history.add(1, new byte[2], 3);
+      fail();
+    } catch (final IllegalArgumentException expected) {
+    }
+    assertEquals(0, history.size());
+  }
+
+  private static void assertOutOfBounds(final FlowHistory.Range range, final int i) {
+    try {
+      range.getTimestamp(i);
+      fail();
+    } catch (final IndexOutOfBoundsException expected) {
+    }
+  }
+}
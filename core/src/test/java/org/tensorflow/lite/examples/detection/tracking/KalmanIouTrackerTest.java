@@ -0,0 +1,172 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class KalmanIouTrackerTest {
+  private static final float[] SCORE = {1.0f};
+
+  private final float[] box = new float[4];
+
+  @Test
+  public void followsConstantVelocity() {
+    final KalmanIouTracker tracker = new KalmanIouTracker(4, 4, 0.3f, 10, 0.9f);
+    for (int t = 0; t < 40; ++t) {
+      tracker.update(box(100 + 4 * t, 50, 40, 40), SCORE, 1, t);
+    }
+    assertEquals(1, tracker.getTrackCount());
+    assertBox(tracker, 0, 100 + 4 * 39, 50, 40, 40, 1.0f);
+
+    // Without detections the track keeps moving at the learned velocity.
+    tracker.predict(44);
+    assertBox(tracker, 0, 100 + 4 * 44, 50, 40, 40, 1.0f);
+    assertEquals(0.9f * 0.9f * 0.9f * 0.9f * 0.9f, tracker.getTrackConfidence(0), 1e-5f);
+  }
+
+  @Test
+  public void assignsDetectionsByOverlap() {
+    final KalmanIouTracker tracker = new KalmanIouTracker(4, 4, 0.3f, 10, 0.9f);
+    tracker.update(boxes(box(0, 0, 20, 20), box(100, 0, 20, 20)), scores(0.9f, 0.8f), 2, 0);
+    final int first = tracker.getTrackId(0);
+    final int second = tracker.getTrackId(1);
+
+    // The same boxes, slightly moved and in the other order.
+    tracker.update(boxes(box(102, 1, 20, 20), box(2, 1, 20, 20)), scores(0.8f, 0.9f), 2, 1);
+    assertEquals(2, tracker.getTrackCount());
+    assertEquals(first, tracker.getTrackId(0));
+    assertEquals(1, tracker.getMatchedDetection(0));
+    assertEquals(second, tracker.getTrackId(1));
+    assertEquals(0, tracker.getMatchedDetection(1));
+  }
+
+  @Test
+  public void bestPairWins() {
+    final KalmanIouTracker tracker = new KalmanIouTracker(4, 4, 0.3f, 10, 0.9f);
+    tracker.update(boxes(box(0, 0, 20, 20), box(10, 0, 20, 20)), scores(0.9f, 0.8f), 2, 0);
+
+    // Overlaps both tracks, the first one more. It goes to the first track, and the second one is
+    // left without a detection rather than taking it as well.
+    tracker.update(box(1, 0, 20, 20), SCORE, 1, 1);
+    assertEquals(2, tracker.getTrackCount());
+    assertEquals(0, tracker.getMatchedDetection(0));
+    assertEquals(-1, tracker.getMatchedDetection(1));
+  }
+
+  @Test
+  public void rewindsLateDetections() {
+    final KalmanIouTracker tracker = new KalmanIouTracker(4, 4, 0.3f, 10, 0.9f);
+    for (int t = 0; t < 40; ++t) {
+      tracker.update(box(10 * t, 0, 20, 20), SCORE, 1, t);
+    }
+    // Three frames later the track has moved 30 pixels, further than its own width, so the
+    // detection from frame 39 only overlaps it once the track is wound back.
+    tracker.predict(42);
+    tracker.update(box(390, 0, 20, 20), SCORE, 1, 39);
+    assertEquals(1, tracker.getTrackCount());
+    assertEquals(0, tracker.getMatchedDetection(0));
+    // The correction is applied to the current frame, so the box stays where it was predicted.
+    assertBox(tracker, 0, 420, 0, 20, 20, 1.0f);
+  }
+
+  @Test
+  public void dropsTracksAfterMaxAge() {
+    final KalmanIouTracker tracker = new KalmanIouTracker(4, 4, 0.3f, 5, 0.9f);
+    tracker.update(box(0, 0, 20, 20), SCORE, 1, 0);
+    tracker.predict(5);
+    assertEquals(1, tracker.getTrackCount());
+    tracker.predict(6);
+    assertEquals(0, tracker.getTrackCount());
+  }
+
+  @Test
+  public void removalMovesLastTrackIntoTheGap() {
+    final KalmanIouTracker tracker = new KalmanIouTracker(4, 4, 0.3f, 5, 0.9f);
+    final float[] all = boxes(box(0, 0, 20, 20), box(100, 0, 20, 20), box(200, 0, 20, 20));
+    tracker.update(all, scores(0.9f, 0.8f, 0.7f), 3, 0);
+    final int firstId = tracker.getTrackId(0);
+    final int lastId = tracker.getTrackId(2);
+
+    // Only the first and last boxes are seen again, so the middle track expires.
+    final float[] ends = boxes(box(0, 0, 20, 20), box(200, 0, 20, 20));
+    for (int t = 1; t <= 6; ++t) {
+      tracker.update(ends, scores(0.9f, 0.7f), 2, t);
+    }
+    assertEquals(2, tracker.getTrackCount());
+    assertEquals(firstId, tracker.getTrackId(0));
+    assertEquals(lastId, tracker.getTrackId(1));
+    assertEquals(1, tracker.getMatchedDetection(1));
+    assertEquals(1.0f, tracker.getTrackConfidence(1), 0.0f);
+    assertBox(tracker, 1, 200, 0, 20, 20, 0.5f);
+  }
+
+  @Test
+  public void overflowDropsLowestScoresFirst() {
+    final KalmanIouTracker tracker = new KalmanIouTracker(2, 4, 0.3f, 10, 0.9f);
+    final float[] three = boxes(box(0, 0, 20, 20), box(100, 0, 20, 20), box(200, 0, 20, 20));
+    tracker.update(three, scores(0.5f, 0.9f, 0.7f), 3, 0);
+    assertEquals(2, tracker.getTrackCount());
+    assertEquals(1, tracker.getMatchedDetection(0));
+    assertEquals(2, tracker.getMatchedDetection(1));
+    assertBox(tracker, 0, 100, 0, 20, 20, 0.0f);
+    assertBox(tracker, 1, 200, 0, 20, 20, 0.0f);
+  }
+
+  @Test
+  public void resetForgetsTracks() {
+    final KalmanIouTracker tracker = new KalmanIouTracker(4, 4, 0.3f, 10, 0.9f);
+    tracker.update(box(0, 0, 20, 20), SCORE, 1, 0);
+    tracker.reset();
+    assertEquals(0, tracker.getTrackCount());
+    tracker.update(box(0, 0, 20, 20), SCORE, 1, 100);
+    assertEquals(1, tracker.getTrackCount());
+    assertEquals(1.0f, tracker.getTrackConfidence(0), 0.0f);
+  }
+
+  private void assertBox(
+      final KalmanIouTracker tracker,
+      final int track,
+      final float left,
+      final float top,
+      final float width,
+      final float height,
+      final float tolerance) {
+    tracker.getTrackBox(track, box, 0);
+    assertEquals(left, box[0], tolerance);
+    assertEquals(top, box[1], tolerance);
+    assertEquals(left + width, box[2], tolerance);
+    assertEquals(top + height, box[3], tolerance);
+  }
+
+  private static float[] box(
+      final float left, final float top, final float width, final float height) {
+    return new float[] {left, top, left + width, top + height};
+  }
+
+  private static float[] boxes(final float[]... boxes) {
+    final float[] out = new float[4 * boxes.length];
+    for (int i = 0; i < boxes.length; ++i) {
+      System.arraycopy(boxes[i], 0, out, 4 * i, 4);
+    }
+    return out;
+  }
+
+  private static float[] scores(final float... scores) {
+    return scores;
+  }
+}
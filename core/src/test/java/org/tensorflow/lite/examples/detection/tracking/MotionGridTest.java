@@ -0,0 +1,106 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class MotionGridTest {
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+  private static final int STRIDE = 72;
+  private static final int COLUMNS = 4;
+  private static final int ROWS = 3;
+
+  @Test
+  public void flagsTheCellsThatChanged() {
+    final MotionGrid grid = new MotionGrid(WIDTH, HEIGHT, COLUMNS, ROWS, 10);
+    final byte[] frame = frame(100);
+    assertEquals(COLUMNS * ROWS, grid.update(frame, STRIDE));
+    assertEquals(0, grid.update(frame, STRIDE));
+
+    // Brighten the cell at column 2, row 1, and a bit less than the threshold everywhere else.
+    final byte[] next = frame(108);
+    fillCell(next, 2, 1, 140);
+    assertEquals(1, grid.update(next, STRIDE));
+    assertEquals(1, grid.getChangedCount());
+
+    grid.reset();
+    assertEquals(COLUMNS * ROWS, grid.update(next, STRIDE));
+  }
+
+  @Test
+  public void clearKeepsTheCountConsistent() {
+    final MotionGrid grid = new MotionGrid(WIDTH, HEIGHT, COLUMNS, ROWS, 10);
+    grid.update(frame(0), STRIDE);
+    assertEquals(12, grid.getChangedCount());
+
+    // Cells are 16x16; this box touches columns 0-1 of rows 0-1.
+    assertEquals(8, grid.clear(2, 2, 20, 20));
+    // Clearing the same cells again does not count them twice.
+    assertEquals(8, grid.clear(0, 0, 31, 31));
+    assertEquals(8, grid.getChangedCount());
+    // Boxes reaching past the frame are clamped to its edge cells.
+    assertEquals(5, grid.clear(-50, 40, 40, 500));
+    assertEquals(0, grid.clear(-1, -1, WIDTH + 1, HEIGHT + 1));
+    assertEquals(0, grid.clear(0, 0, WIDTH, HEIGHT));
+    assertEquals(0, grid.getChangedCount());
+
+    // The next update counts afresh.
+    final byte[] next = frame(0);
+    fillCell(next, 3, 2, 200);
+    assertEquals(1, grid.update(next, STRIDE));
+  }
+
+  @Test
+  public void bufferMatchesArray() {
+    final MotionGrid fromArray = new MotionGrid(WIDTH, HEIGHT, COLUMNS, ROWS, 10);
+    final MotionGrid fromBuffer = new MotionGrid(WIDTH, HEIGHT, COLUMNS, ROWS, 10);
+    final byte[] first = frame(50);
+    final byte[] second = frame(50);
+    fillCell(second, 0, 2, 90);
+    fillCell(second, 3, 0, 20);
+    for (final byte[] frame : new byte[][] {first, second, first}) {
+      final ByteBuffer direct = ByteBuffer.allocateDirect(frame.length);
+      direct.put(frame).rewind();
+      assertEquals(fromArray.update(frame, STRIDE), fromBuffer.update(direct, STRIDE));
+    }
+    assertEquals(2, fromArray.getChangedCount());
+  }
+
+  // A frame of uniform luminance, with the padding past the width left at 255.
+  private static byte[] frame(final int value) {
+    final byte[] frame = new byte[STRIDE * HEIGHT];
+    Arrays.fill(frame, (byte) 255);
+    for (int y = 0; y < HEIGHT; ++y) {
+      Arrays.fill(frame, y * STRIDE, y * STRIDE + WIDTH, (byte) value);
+    }
+    return frame;
+  }
+
+  private static void fillCell(
+      final byte[] frame, final int column, final int row, final int value) {
+    final int cellWidth = WIDTH / COLUMNS;
+    final int cellHeight = HEIGHT / ROWS;
+    for (int y = row * cellHeight; y < (row + 1) * cellHeight; ++y) {
+      final int offset = y * STRIDE + column * cellWidth;
+      Arrays.fill(frame, offset, offset + cellWidth, (byte) value);
+    }
+  }
+}
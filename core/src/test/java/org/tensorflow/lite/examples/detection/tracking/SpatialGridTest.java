@@ -0,0 +1,168 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class SpatialGridTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  @Test
+  public void matchesABruteForceScan() {
+    final Random random = new Random(23);
+    final SpatialGrid grid = new SpatialGrid(WIDTH, HEIGHT, 8, 6);
+    for (int scene = 0; scene < 4; ++scene) {
+      grid.clear();
+      final int count = 1000;
+      final float[] boxes = new float[4 * count];
+      final boolean[] removed = new boolean[count];
+      for (int i = 0; i < count; ++i) {
+        randomBox(random, boxes, i);
+        assertEquals(
+            i, grid.add(boxes[4 * i], boxes[4 * i + 1], boxes[4 * i + 2], boxes[4 * i + 3]));
+        if (random.nextInt(10) == 0) {
+          grid.remove(i);
+          removed[i] = true;
+        }
+      }
+      assertEquals(count, grid.getEntryCount());
+
+      final float[] query = new float[4];
+      for (int q = 0; q < 200; ++q) {
+        randomBox(random, query, 0);
+        final int found = grid.query(query[0], query[1], query[2], query[3]);
+        assertArrayEquals(bruteForce(boxes, removed, count, query), results(grid, found));
+      }
+    }
+  }
+
+  @Test
+  public void clampsBoxesOutsideTheFrame() {
+    final SpatialGrid grid = new SpatialGrid(WIDTH, HEIGHT, 8, 6);
+    grid.add(-200, -100, -150, -50);
+    grid.add(WIDTH + 10, HEIGHT + 10, WIDTH + 90, HEIGHT + 90);
+    grid.add(-50, 100, WIDTH + 50, 120);
+
+    assertArrayEquals(new int[] {0}, results(grid, grid.query(-180, -80, -160, -60)));
+    assertArrayEquals(
+        new int[] {1}, results(grid, grid.query(WIDTH + 20, HEIGHT + 20, 2000, 2000)));
+    assertArrayEquals(new int[] {2}, results(grid, grid.query(-40, 0, -30, 200)));
+    // In the corner cell, but not overlapping.
+    assertArrayEquals(new int[0], results(grid, grid.query(-140, -40, -120, -20)));
+  }
+
+  @Test
+  public void hidesRemovedEntries() {
+    final SpatialGrid grid = new SpatialGrid(WIDTH, HEIGHT, 8, 6);
+    grid.add(10, 10, 50, 50);
+    grid.add(20, 20, 60, 60);
+    grid.remove(0);
+    assertArrayEquals(new int[] {1}, results(grid, grid.query(0, 0, 100, 100)));
+    assertEquals(2, grid.getEntryCount());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rejectsRemovingUnknownEntries() {
+    final SpatialGrid grid = new SpatialGrid(WIDTH, HEIGHT, 8, 6);
+    grid.add(10, 10, 50, 50);
+    grid.remove(1);
+  }
+
+  @Test
+  public void startsOverAfterClear() {
+    final SpatialGrid grid = new SpatialGrid(WIDTH, HEIGHT, 8, 6);
+    for (int i = 0; i < 100; ++i) {
+      grid.add(i, i, i + 5, i + 5);
+    }
+    grid.remove(1);
+    grid.clear();
+    assertEquals(0, grid.getEntryCount());
+    assertEquals(0, grid.query(0, 0, WIDTH, HEIGHT));
+
+    // Entry numbers start from 0 again, and removals do not carry over.
+    assertEquals(0, grid.add(300, 300, 310, 310));
+    assertEquals(1, grid.add(0, 0, 10, 10));
+    assertEquals(2, grid.add(3, 3, 8, 8));
+    assertArrayEquals(new int[] {1, 2}, results(grid, grid.query(0, 0, 20, 20)));
+  }
+
+  @Test
+  public void reportsEntriesInInsertionOrder() {
+    final SpatialGrid grid = new SpatialGrid(WIDTH, HEIGHT, 8, 6);
+    // Added from the bottom right up, so the cells are walked in the opposite order.
+    grid.add(600, 440, 630, 470);
+    grid.add(300, 200, 340, 260);
+    grid.add(10, 10, 630, 470);
+    grid.add(5, 5, 40, 40);
+    assertArrayEquals(new int[] {0, 1, 2, 3}, results(grid, grid.query(0, 0, WIDTH, HEIGHT)));
+  }
+
+  @Test
+  public void survivesTheQueryCounterWrappingAround() {
+    final SpatialGrid grid = new SpatialGrid(WIDTH, HEIGHT, 8, 6);
+    grid.add(10, 10, 50, 50);
+    grid.add(500, 400, 550, 450);
+    // Leaves entry 0 marked as seen by query 1.
+    assertArrayEquals(new int[] {0}, results(grid, grid.query(0, 0, 60, 60)));
+
+    grid.stamp = -2;
+    for (int i = 0; i < 2; ++i) {
+      assertArrayEquals(new int[] {1}, results(grid, grid.query(490, 390, 560, 460)));
+    }
+    // Once the counter is back at 1, entry 0 must not look seen already.
+    assertArrayEquals(new int[] {0}, results(grid, grid.query(0, 0, 60, 60)));
+    assertArrayEquals(new int[] {0, 1}, results(grid, grid.query(0, 0, WIDTH, HEIGHT)));
+  }
+
+  private static int[] results(final SpatialGrid grid, final int count) {
+    final int[] results = new int[count];
+    for (int i = 0; i < count; ++i) {
+      results[i] = grid.getResult(i);
+    }
+    return results;
+  }
+
+  private static int[] bruteForce(
+      final float[] boxes, final boolean[] removed, final int count, final float[] query) {
+    final int[] found = new int[count];
+    int n = 0;
+    for (int i = 0; i < count; ++i) {
+      if (!removed[i]
+          && Math.max(query[0], boxes[4 * i]) < Math.min(query[2], boxes[4 * i + 2])
+          && Math.max(query[1], boxes[4 * i + 1]) < Math.min(query[3], boxes[4 * i + 3])) {
+        found[n++] = i;
+      }
+    }
+    final int[] result = new int[n];
+    System.arraycopy(found, 0, result, 0, n);
+    return result;
+  }
+
+  // Mostly inside the frame, some reaching past its edges.
+  private static void randomBox(final Random random, final float[] boxes, final int i) {
+    final float x = -50 + (WIDTH + 100) * random.nextFloat();
+    final float y = -50 + (HEIGHT + 100) * random.nextFloat();
+    boxes[4 * i] = x;
+    boxes[4 * i + 1] = y;
+    boxes[4 * i + 2] = x + 1 + 120 * random.nextFloat();
+    boxes[4 * i + 3] = y + 1 + 120 * random.nextFloat();
+  }
+}
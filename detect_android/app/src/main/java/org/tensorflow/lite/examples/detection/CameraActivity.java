@@ -22,6 +22,7 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.RectF;
@@ -44,7 +45,9 @@ import android.support.design.widget.BottomSheetBehavior;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.SwitchCompat;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.util.Size;
+import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.Surface;
 import android.view.View;
@@ -56,9 +59,14 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
-import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import org.tensorflow.lite.examples.detection.env.BufferPool;
+import org.tensorflow.lite.examples.detection.env.FramePool;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.MetricsRegistry;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
 
 public abstract class CameraActivity extends AppCompatActivity
     implements OnImageAvailableListener,
@@ -72,16 +80,79 @@ public abstract class CameraActivity extends AppCompatActivity
     private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
     protected int previewWidth = 0;
     protected int previewHeight = 0;
-    private boolean debug = false;
+    // Per-frame Bitmaps and planes shared between the camera, the pipeline threads and the UI.
+    protected final FramePool framePool = new FramePool();
+    // Latencies and counters of every stage, see getStatsDump().
+    protected final MetricsRegistry metrics = new MetricsRegistry();
+    // Frames the camera delivered while the previous one was still being processed.
+    private final AtomicLong cameraDroppedFrames = metrics.counter("camera.dropped");
+    private final LatencyHistogram yuvConvertLatency = metrics.histogram("frame.yuv_convert");
+    // Toggled on the UI thread, read by the pipeline threads.
+    private volatile boolean debug = false;
     private Handler handler;
     private HandlerThread handlerThread;
     private boolean useCamera2API;
     private boolean isProcessingFrame = false;
-    private byte[][] yuvBytes = new byte[3][];
+    // The current frame, wrapping the camera's buffers. Planes are only copied on demand.
+    private final YuvFrame frame = new YuvFrame();
     private int[] rgbBytes = null;
-    private int yRowStride;
     private Runnable postInferenceCallback;
     private Runnable imageConverter;
+    // State of the frame being processed, read by the reusable callbacks below.
+    private byte[] previewBuffer;
+    private Camera previewCamera;
+    private Image currentImage;
+
+    // The callbacks are created once and reused for every frame.
+    private final Runnable legacyImageConverter =
+        new Runnable() {
+            @Override
+            public void run() {
+                ImageUtils.convertYUV420SPToARGB8888(
+                    previewBuffer, previewWidth, previewHeight, rgbBytes);
+            }
+        };
+
+    private final Runnable legacyPostInferenceCallback =
+        new Runnable() {
+            @Override
+            public void run() {
+                previewCamera.addCallbackBuffer(previewBuffer);
+                previewBuffer = null;
+                previewCamera = null;
+                frame.release();
+                isProcessingFrame = false;
+            }
+        };
+
+    private final Runnable camera2ImageConverter =
+        new Runnable() {
+            @Override
+            public void run() {
+                // YUV转RGB
+                ImageUtils.convertYUV420ToARGB8888(
+                    frame.getLuminance(),
+                    frame.getU(),
+                    frame.getV(),
+                    previewWidth,
+                    previewHeight,
+                    frame.getYRowStride(),
+                    frame.getUvRowStride(),
+                    frame.getUvPixelStride(),
+                    rgbBytes);
+            }
+        };
+
+    private final Runnable camera2PostInferenceCallback =
+        new Runnable() {
+            @Override
+            public void run() {
+                frame.release();
+                currentImage.close();
+                currentImage = null;
+                isProcessingFrame = false;
+            }
+        };
 
     private LinearLayout bottomSheetLayout;
     private LinearLayout gestureLayout;
@@ -91,7 +162,15 @@ public abstract class CameraActivity extends AppCompatActivity
     private LinearLayout userListLinearLayout;
 
     private static int MAX_USER_SHOW = 6;                   // 用户最多显示个数
+    private static final int FACE_WIDTH = 90;               // 缩略图宽
+    private static final int FACE_HEIGHT = 100;             // 缩略图高
     private int captureId = 0;
+    // 画缩略图用的对象，只在UI线程使用，重复利用
+    private final RectF thumbnailRect = new RectF();
+    private final Matrix thumbnailMatrix = new Matrix();
+    private final Canvas thumbnailCanvas = new Canvas();
+    private Matrix thumbnailRotation;
+    private int thumbnailOrientation;
 
     protected TextView frameValueTextView, cropValueTextView, inferenceTimeTextView;
     protected ImageView bottomSheetArrowImageView;
@@ -186,31 +265,43 @@ public abstract class CameraActivity extends AppCompatActivity
 
     // =============================================================================================
     protected void addUserListItem(Bitmap SrcImage, RectF location, float conf, Integer orientation) {
-        int faceWidth = 90;
-        int faceHeight = 100;
-
-        LOGGER.i("[CYL] addUserListItem w * h: %d * %d, %d, %f",
-                SrcImage.getWidth(), SrcImage.getHeight(), orientation, conf);
-        LOGGER.i("[CYL] addUserListItem old location %s", location.toString());
-
-        if (location.left < 0) location.left = 0;
-        if (location.top < 0) location.top = 0;
-        if (location.right > SrcImage.getWidth()) location.right = SrcImage.getWidth();
-        if (location.bottom > SrcImage.getHeight()) location.bottom = SrcImage.getHeight();
-
-        Bitmap faceImage = cropBitmap(SrcImage, (int)location.left, (int)location.top,
-                (int)(location.right - location.left), (int)(location.bottom - location.top));
-        Bitmap newBitmap = scaleBitmap(faceImage, faceHeight, faceHeight);
-        LOGGER.i("[CYL] addUserListItem w * h: %d * %d", newBitmap.getWidth(), newBitmap.getHeight());
-
-        Matrix frameToCropTransform =
-                ImageUtils.getTransformationMatrix(
-                        faceHeight, faceHeight,
-                        faceWidth, faceHeight,
-                        orientation, false);
-        Bitmap croppedBitmap = Bitmap.createBitmap(faceWidth, faceHeight, Bitmap.Config.ARGB_8888);
-        final Canvas canvas = new Canvas(croppedBitmap);
-        canvas.drawBitmap(newBitmap, frameToCropTransform, null);
+        if (Logger.VERBOSE && LOGGER.isLoggable(Log.VERBOSE)) {
+            LOGGER.v("[CYL] addUserListItem w * h: %d * %d, %d, %f",
+                    SrcImage.getWidth(), SrcImage.getHeight(), orientation, conf);
+        }
+
+        // location还被跟踪器使用，这里只修改副本
+        thumbnailRect.set(location);
+        if (thumbnailRect.left < 0) thumbnailRect.left = 0;
+        if (thumbnailRect.top < 0) thumbnailRect.top = 0;
+        if (thumbnailRect.right > SrcImage.getWidth()) thumbnailRect.right = SrcImage.getWidth();
+        if (thumbnailRect.bottom > SrcImage.getHeight()) thumbnailRect.bottom = SrcImage.getHeight();
+        if (thumbnailRect.width() < 1 || thumbnailRect.height() < 1) {
+            return;
+        }
+
+        // 裁剪、拉伸到FACE_HEIGHT×FACE_HEIGHT、再旋转到FACE_WIDTH×FACE_HEIGHT，合成一个矩阵一次画完
+        thumbnailMatrix.setTranslate(-(int) thumbnailRect.left, -(int) thumbnailRect.top);
+        thumbnailMatrix.postScale(
+                (float) FACE_HEIGHT / (int) thumbnailRect.width(),
+                (float) FACE_HEIGHT / (int) thumbnailRect.height());
+        if (thumbnailRotation == null || thumbnailOrientation != orientation) {
+            thumbnailRotation =
+                    ImageUtils.getTransformationMatrix(
+                            FACE_HEIGHT, FACE_HEIGHT,
+                            FACE_WIDTH, FACE_HEIGHT,
+                            orientation, false);
+            thumbnailOrientation = orientation;
+        }
+        thumbnailMatrix.postConcat(thumbnailRotation);
+
+        final BufferPool.Lease<Bitmap> thumbnail =
+                framePool.acquireBitmap(FACE_WIDTH, FACE_HEIGHT, Bitmap.Config.ARGB_8888);
+        final Bitmap faceImage = thumbnail.get();
+        faceImage.eraseColor(Color.TRANSPARENT);
+        thumbnailCanvas.setBitmap(faceImage);
+        thumbnailCanvas.drawBitmap(SrcImage, thumbnailMatrix, null);
+        thumbnailCanvas.setBitmap(null);
 
         //寻找行布局，第一个参数为行布局ID，第二个参数为这个行布局需要放到那个容器上
         View view = LayoutInflater.from(this).inflate(R.layout.layout_user_list_item, userListLinearLayout, false);
@@ -222,19 +313,29 @@ public abstract class CameraActivity extends AppCompatActivity
 
         //将int数组中的数据放到ImageView中
         //img.setImageResource(image[x]);
-        img.setImageBitmap(croppedBitmap);
+        img.setImageBitmap(faceImage);
+        // 缩略图在控件移除时还给framePool
+        view.setTag(thumbnail);
         //给TextView添加文字
         nameTextView.setText("id: " + Integer.toString(captureId++));
-        LOGGER.i("[CYL] addUserListItem conf %s", String.format("conf: %.3f", conf));
         confTextView.setText(String.format("conf: %.3f", conf));
         //把行布局放到linear里
 
-        LOGGER.i("[CYL] addUserListItem getChildCount %d", userListLinearLayout.getChildCount());
         if (userListLinearLayout.getChildCount() >= MAX_USER_SHOW) {
-            userListLinearLayout.removeViewAt(0);
-            userListLinearLayout.addView(view);
-        } else {
-            userListLinearLayout.addView(view);
+            removeUserListItem(0);
+        }
+        userListLinearLayout.addView(view);
+    }
+
+    private void removeUserListItem(int index) {
+        View view = userListLinearLayout.getChildAt(index);
+        userListLinearLayout.removeViewAt(index);
+        ImageView img = (ImageView) view.findViewById(R.id.img_item);
+        img.setImageBitmap(null);
+        Object thumbnail = view.getTag();
+        if (thumbnail instanceof BufferPool.Lease) {
+            view.setTag(null);
+            ((BufferPool.Lease<?>) thumbnail).release();
         }
     }
 
@@ -350,23 +451,36 @@ public abstract class CameraActivity extends AppCompatActivity
     }
     // =============================================================================================
     protected int[] getRgbBytes() {
+        final long start = System.nanoTime();
         imageConverter.run();
+        yuvConvertLatency.recordSince(start);
         return rgbBytes;
     }
 
     protected int getLuminanceStride() {
-      return yRowStride;
+      return frame.getYRowStride();
     }
 
+    /**
+     * Returns the current frame as delivered by the camera. It is only valid until {@link
+     * #readyForNextImage()}; copy what must outlive it with {@link YuvFrame#copyLuminance} and
+     * {@link YuvFrame#copyChroma}.
+     */
+    protected YuvFrame getFrame() {
+        return frame;
+    }
+
+    /** Returns the luminance of the current frame, copied out of a Camera2 image on first use. */
     protected byte[] getLuminance() {
-        return yuvBytes[0];
+        return frame.getLuminance();
     }
 
     /** Callback for android.hardware.Camera API */
     @Override
     public void onPreviewFrame(final byte[] bytes, final Camera camera) {
         if (isProcessingFrame) {
-            LOGGER.w("Dropping frame!");
+            cameraDroppedFrames.incrementAndGet();
+            LOGGER.record("Dropping frame!");
             return;
         }
 
@@ -387,23 +501,13 @@ public abstract class CameraActivity extends AppCompatActivity
         }
 
         isProcessingFrame = true;
-        yuvBytes[0] = bytes;
-        yRowStride = previewWidth;
-
-        imageConverter = new Runnable() {
-            @Override
-            public void run() {
-                ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
-            }
-        };
+        frame.setNv21(bytes, previewWidth, previewHeight);
+        previewBuffer = bytes;
+        previewCamera = camera;
 
-        postInferenceCallback = new Runnable() {
-            @Override
-            public void run() {
-                camera.addCallbackBuffer(bytes);
-                isProcessingFrame = false;
-            }
-        };
+        // Nothing is converted until someone asks for the RGB frame.
+        imageConverter = legacyImageConverter;
+        postInferenceCallback = legacyPostInferenceCallback;
 
         // 处理图片
         //LOGGER.i("[CYL] [onPreviewFrame] start processImage 327");
@@ -429,41 +533,28 @@ public abstract class CameraActivity extends AppCompatActivity
             }
 
             if (isProcessingFrame) {
+                cameraDroppedFrames.incrementAndGet();
                 image.close();
                 return;
             }
             isProcessingFrame = true;
             Trace.beginSection("imageAvailable");
             final Plane[] planes = image.getPlanes();
-            fillBytes(planes, yuvBytes);
-            yRowStride = planes[0].getRowStride();
-            final int uvRowStride = planes[1].getRowStride();
-            final int uvPixelStride = planes[1].getPixelStride();
-
-            imageConverter = new Runnable() {
-                @Override
-                public void run() {
-                    // YUV转RGB
-                    ImageUtils.convertYUV420ToARGB8888(
-                            yuvBytes[0],
-                            yuvBytes[1],
-                            yuvBytes[2],
-                            previewWidth,
-                            previewHeight,
-                            yRowStride,
-                            uvRowStride,
-                            uvPixelStride,
-                            rgbBytes);
-                }
-            };
-
-            postInferenceCallback = new Runnable() {
-                @Override
-                public void run() {
-                    image.close();
-                    isProcessingFrame = false;
-                }
-            };
+            currentImage = image;
+            // The planes are wrapped as they are; only consumers that need arrays or have to
+            // outlive the image copy from them.
+            frame.setPlanes(
+                planes[0].getBuffer(),
+                planes[1].getBuffer(),
+                planes[2].getBuffer(),
+                previewWidth,
+                previewHeight,
+                planes[0].getRowStride(),
+                planes[1].getRowStride(),
+                planes[1].getPixelStride());
+
+            imageConverter = camera2ImageConverter;
+            postInferenceCallback = camera2PostInferenceCallback;
 
             // 处理图片
             //LOGGER.i("[CYL] [onPreviewFrame] start processImage 385");
@@ -634,21 +725,33 @@ public abstract class CameraActivity extends AppCompatActivity
         getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
     }
 
-    protected void fillBytes(final Plane[] planes, final byte[][] yuvBytes) {
-        // Because of the variable row stride it's not possible to know in
-        // advance the actual necessary dimensions of the yuv planes.
-        for (int i = 0; i < planes.length; ++i) {
-            final ByteBuffer buffer = planes[i].getBuffer();
-            if (yuvBytes[i] == null) {
-                LOGGER.d("Initializing buffer %d at size %d", i, buffer.capacity());
-                yuvBytes[i] = new byte[buffer.capacity()];
-            }
-            buffer.get(yuvBytes[i]);
+    public boolean isDebug() {
+      return debug;
+    }
+
+    // 音量键切换调试模式：画出调试信息，并记录各阶段耗时
+    @Override
+    public boolean onKeyDown(final int keyCode, final KeyEvent event) {
+        if (keyCode == KeyEvent.KEYCODE_VOLUME_DOWN
+                || keyCode == KeyEvent.KEYCODE_VOLUME_UP
+                || keyCode == KeyEvent.KEYCODE_BUTTON_L1
+                || keyCode == KeyEvent.KEYCODE_DPAD_CENTER) {
+            debug = !debug;
+            onSetDebug(debug);
+            return true;
         }
+        return super.onKeyDown(keyCode, event);
     }
 
-    public boolean isDebug() {
-      return debug;
+    /** Called on the UI thread when debug mode is toggled. */
+    protected void onSetDebug(final boolean debug) {}
+
+    /**
+     * Returns the metrics recorded so far, one per line: stage latencies and drop counters from
+     * {@link #metrics}, then the buffer pool allocation counts.
+     */
+    protected String getStatsDump() {
+        return metrics.dump() + "\n" + framePool.getStatString();
     }
 
     protected void readyForNextImage() {
@@ -19,10 +19,7 @@ package org.tensorflow.lite.examples.detection;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Paint.Style;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.media.ImageReader.OnImageAvailableListener;
@@ -31,16 +28,27 @@ import android.util.Size;
 import android.util.TypedValue;
 import android.widget.Toast;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
 import org.tensorflow.lite.examples.detection.customview.OverlayView.DrawCallback;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
+import org.tensorflow.lite.examples.detection.env.BufferPool;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvCropSampler;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
+import org.tensorflow.lite.examples.detection.pipeline.BackpressurePolicy;
+import org.tensorflow.lite.examples.detection.pipeline.FramePipeline;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteFaceBoxesAPIModel;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tracking.DetectionScheduler;
+import org.tensorflow.lite.examples.detection.tracking.MotionGrid;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
 
 /**
@@ -64,18 +72,43 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     private static final boolean MAINTAIN_ASPECT = false;
     private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
     private static final boolean SAVE_PREVIEW_BITMAP = false;
+    // How the model input is sampled from the camera frame.
+    private static final YuvCropSampler.Sampling CROP_SAMPLING = YuvCropSampler.Sampling.BILINEAR;
+    // Frames in flight between the camera and the tracker, and what to do when all are busy.
+    private static final int PIPELINE_SLOTS = 3;
+    private static final BackpressurePolicy BACKPRESSURE_POLICY = BackpressurePolicy.DROP_OLDEST;
+    // Skip detection while the tracker follows every box well and nothing else moves.
+    private static final boolean ADAPTIVE_DETECTION = true;
+    // Tracker correlation below which a box is re-detected.
+    private static final float SCHEDULER_MIN_CORRELATION = 0.85f;
+    // Longest time the tracker runs on its own.
+    private static final long MAX_DETECTION_INTERVAL_MS = 1000;
+    // Motion grid over the preview frame, and how much change outside the boxes triggers detection.
+    private static final int MOTION_GRID_COLUMNS = 16;
+    private static final int MOTION_GRID_ROWS = 12;
+    private static final int MOTION_THRESHOLD = 12;
+    private static final int MIN_MOTION_CELLS = 2;
     private static final float TEXT_SIZE_DIP = 10;
+    // How often the metrics are written to the log while in debug mode.
+    private static final long STATS_DUMP_INTERVAL_MS = 10000;
+    // Per-frame log records kept between two dumps.
+    private static final int LOG_RING_CAPACITY = 512;
     OverlayView trackingOverlay;
     private Integer sensorOrientation;
 
     private Classifier detector;
 
-    private long lastProcessingTimeMs;
+    // Written by the inference stage, shown by the UI thread.
+    private volatile long lastProcessingTimeMs;
+    // Only used to save the model input when SAVE_PREVIEW_BITMAP is set.
     private Bitmap rgbFrameBitmap = null;
     private Bitmap croppedBitmap = null;
-    private Bitmap cropCopyBitmap = null;
+    // ARGB copy of the current frame, only converted when a thumbnail needs it.
+    private int[] frameArgb = null;
 
-    private boolean computingDetection = false;
+    // Preprocess, inference, decode and tracking each run on their own thread.
+    private FramePipeline<DetectionJob> pipeline;
+    private int inferenceStage;
 
     private long timestamp = 0;
 
@@ -83,11 +116,22 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     private Matrix cropToFrameTransform;
 
     private MultiBoxTracker tracker;
-
-    private byte[] luminanceCopy;
+    // Camera thread only.
+    private DetectionScheduler scheduler;
+    private MotionGrid motionGrid;
 
     private BorderedText borderedText;
 
+    private final LatencyHistogram thumbnailConvertLatency =
+        metrics.histogram("thumbnail.convert");
+    private final LatencyHistogram trackerFlowLatency = metrics.histogram("tracker.flow");
+    private final LatencyHistogram trackerResultsLatency = metrics.histogram("tracker.results");
+    private final LatencyHistogram drawLatency = metrics.histogram("overlay.draw");
+    private final LatencyHistogram motionLatency = metrics.histogram("scheduler.motion");
+    private final AtomicLong skippedDetections = metrics.counter("scheduler.skipped");
+    // When the metrics were last logged. Track stage only.
+    private long lastStatsDumpMs;
+
     @Override
     public void onPreviewSizeChosen(final Size size, final int rotation) {
         final float textSizePx =
@@ -130,7 +174,8 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
                                 TF_OD_API_MODEL_FILE,
                                 TF_OD_API_LABELS_FILE,
                                 TF_OD_API_INPUT_SIZE,
-                                TF_OD_API_IS_QUANTIZED);
+                                TF_OD_API_IS_QUANTIZED,
+                                getCacheDir());
                 cropSize = TF_OD_API_INPUT_SIZE;
             }
 
@@ -150,10 +195,14 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
         sensorOrientation = rotation - getScreenOrientation();
         LOGGER.i("[CYL] Camera orientation relative to screen canvas: %d", sensorOrientation);
 
-        LOGGER.i("[CYL] Initializing rgbFrameBitmap at size W x H: %d x %d", previewWidth, previewHeight);
-        LOGGER.i("[CYL] Initializing croppedBitmap at size W x H: %d x %d", cropSize, cropSize);
-        rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);        // 存放原图？
-        croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);                  // 存放变换后的图？（1024×1024）
+        if (SAVE_PREVIEW_BITMAP) {
+            LOGGER.i("[CYL] Initializing rgbFrameBitmap at size W x H: %d x %d", previewWidth, previewHeight);
+            LOGGER.i("[CYL] Initializing croppedBitmap at size W x H: %d x %d", cropSize, cropSize);
+            rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);        // 存放原图？
+            croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);                  // 存放变换后的图？（1024×1024）
+        }
+        // Frame sized buffers from an earlier preview size are of no use any more.
+        framePool.clear();
 
         // 放回转换后的矩阵，(640, 480)转(1024, 1024)，并旋转一定角度(90度的倍数)
         // MAINTAIN_ASPECT为ture则不缩放大小，有必要会进行裁剪，这里为false
@@ -166,14 +215,26 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
         cropToFrameTransform = new Matrix();
         frameToCropTransform.invert(cropToFrameTransform);      // 反转矩阵（cropToFrameTransform是逆操作，将(1024, 1024)转(640, 480)
 
+        frameArgb = new int[previewWidth * previewHeight];
+        scheduler =
+            new DetectionScheduler(
+                SCHEDULER_MIN_CORRELATION, MAX_DETECTION_INTERVAL_MS, MIN_MOTION_CELLS);
+        motionGrid =
+            new MotionGrid(
+                previewWidth, previewHeight, MOTION_GRID_COLUMNS, MOTION_GRID_ROWS, MOTION_THRESHOLD);
+        startPipeline(cropSize);
+
         trackingOverlay = (OverlayView) findViewById(R.id.tracking_overlay);    // 覆盖视图View
         trackingOverlay.addCallback(
             new DrawCallback() {
                 @Override
                 public void drawCallback(final Canvas canvas) {
+                    final long start = System.nanoTime();
                     tracker.draw(canvas);                                       // 画框的函数，追踪类里面，先追踪过滤，再画
+                    drawLatency.recordSince(start);
                     if (isDebug()) {
                       tracker.drawDebug(canvas);
+                      drawStats(canvas);
                     }
                 }
             });
@@ -183,113 +244,253 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   protected void processImage() {
     ++timestamp;                                        // 时间戳累加
     final long currTimestamp = timestamp;               // 时间戳
-    byte[] originalLuminance = getLuminance();          // 获取亮度
+    // The camera's buffers, read in place. Only what outlives the frame is copied.
+    final YuvFrame frame = getFrame();
 
     // tracker第一次调用会初始化
-    tracker.onFrame(
-        previewWidth,
-        previewHeight,
-        getLuminanceStride(),
-        sensorOrientation,
-        originalLuminance,
-        timestamp);
+    final long flowStart = System.nanoTime();
+    tracker.onFrame(frame, sensorOrientation, timestamp);
+    trackerFlowLatency.recordSince(flowStart);
     trackingOverlay.postInvalidate();       // 本质是调用View的onDraw()绘制。主线程之外，用postInvalidate()。
 
-    // No mutex needed as this method is not reentrant.
-    if (computingDetection) {
+    final long now = SystemClock.uptimeMillis();
+    if (ADAPTIVE_DETECTION && !isDetectionDue(frame, now)) {
+      skippedDetections.incrementAndGet();
       readyForNextImage();
       return;
     }
-    computingDetection = true;
-    LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
 
-    // 将rgbFrameBitmap位图中的像素替换(填充)为getRgbBytes()返回的数组中的颜色值。数组中的每个元素都是int型（ARGB_8888格式）
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
-
-    if (luminanceCopy == null) {
-      luminanceCopy = new byte[originalLuminance.length];
+    // Only frames that get a free pipeline slot go to the detector.
+    final DetectionJob job = pipeline.acquire();
+    if (job == null) {
+      readyForNextImage();
+      return;
     }
-    System.arraycopy(originalLuminance, 0, luminanceCopy, 0, originalLuminance.length);
-    readyForNextImage();
+    LOGGER.record("Preparing image %d for detection in bg thread.", currTimestamp);
 
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);  // 将rgbFrameBitmap画到view上
     // For examining the actual TF input.
     if (SAVE_PREVIEW_BITMAP) {
+      // 将rgbFrameBitmap位图中的像素替换(填充)为getRgbBytes()返回的数组中的颜色值。数组中的每个元素都是int型（ARGB_8888格式）
+      rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+      final Canvas canvas = new Canvas(croppedBitmap);
+      canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);  // 将rgbFrameBitmap画到view上
       ImageUtils.saveBitmap(croppedBitmap);
     }
 
-    // 在后台线程里运行run()里面的内容
-    runInBackground(
-        new Runnable() {
-          @Override
-          public void run() {
-              LOGGER.i("Running detection on image " + currTimestamp);
-              final long startTime = SystemClock.uptimeMillis();
+    // A slot taken back from a dropped frame may still hold that frame's snapshot.
+    if (job.luminance != null) {
+      job.luminance.release();
+    }
+    job.luminance = framePool.acquireBytes(frame.getLuminanceLength());
+    final byte[] luminance = job.luminance.get();
+    frame.copyLuminance(luminance);
+    // The model input is sampled from the luminance snapshot and a copy of the chroma planes, so
+    // the camera frame can be released right away.
+    job.sampler.setLuminance(luminance, frame.getYRowStride());
+    frame.copyChroma(job.sampler);
+    job.timestamp = currTimestamp;
+    readyForNextImage();
+
+    pipeline.submit(job);
+    scheduler.onDetectionStarted(now);
+  }
 
+  /** Asks the scheduler whether the tracker still needs help from the detector on this frame. */
+  private boolean isDetectionDue(final YuvFrame frame, final long now) {
+    final long motionStart = System.nanoTime();
+    motionGrid.update(frame);
+    final int motionCells = tracker.clearTrackedMotion(motionGrid);
+    motionLatency.recordSince(motionStart);
+
+    final DetectionScheduler.Decision decision =
+        scheduler.decide(
+            now, tracker.getTrackedCount(), tracker.getLowestCorrelation(), motionCells);
+    if (decision == DetectionScheduler.Decision.SKIP) {
+      return false;
+    }
+    // The reason is the ordinal of the decision, so the record needs no string building.
+    LOGGER.record("Detecting on image %d, reason %d", timestamp, decision.ordinal());
+    return true;
+  }
+
+  /** Everything one frame needs on its way through the detection pipeline. */
+  private static final class DetectionJob {
+    final YuvCropSampler sampler;
+    final Classifier.Tensors tensors;
+    // Luminance snapshot of the frame, released by the last stage that reads it.
+    BufferPool.Lease<byte[]> luminance;
+    long timestamp;
+    List<Classifier.Recognition> results;
+
+    DetectionJob(final YuvCropSampler sampler, final Classifier.Tensors tensors) {
+      this.sampler = sampler;
+      this.tensors = tensors;
+    }
+  }
+
+  private void startPipeline(final int cropSize) {
+    if (pipeline != null) {
+      pipeline.stop();
+    }
+
+    final float[] cropToFrameValues = new float[9];
+    cropToFrameTransform.getValues(cropToFrameValues);
+    final List<DetectionJob> slots = new ArrayList<>(PIPELINE_SLOTS);
+    for (int i = 0; i < PIPELINE_SLOTS; ++i) {
+      slots.add(
+          new DetectionJob(
+              new YuvCropSampler(
+                  previewWidth, previewHeight, cropSize, cropSize, cropToFrameValues, CROP_SAMPLING),
+              detector.createTensors()));
+    }
+
+    pipeline = new FramePipeline<>("detector", slots, BACKPRESSURE_POLICY, metrics);
+    pipeline.addStage("preprocess", job -> detector.preprocess(job.sampler, job.tensors));
+    inferenceStage =
+        pipeline.addStage(
+            "inference",
+            job -> {
+              LOGGER.record("Running detection on image %d", job.timestamp);
+              final long startTime = SystemClock.uptimeMillis();
               // 执行图像识别
-              final List<Classifier.Recognition> results = detector.recognizeImage(croppedBitmap);
+              detector.runInference(job.tensors);
               lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
+            });
+    pipeline.addStage("decode", job -> job.results = detector.decode(job.tensors));
+    pipeline.addStage("track", this::trackDetections);
+    pipeline.start();
+  }
+
+  /** Last pipeline stage: maps the detections back to the frame and hands them to the tracker. */
+  private void trackDetections(final DetectionJob job) {
+    // The frame the thumbnails are cut from, shared with the UI thread until the last one is drawn.
+    BufferPool.Lease<Bitmap> frame = null;
+
+    float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+    switch (MODE) {
+      case TF_OD_API:
+        minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+        break;
+    }
 
-              cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-              final Canvas canvas = new Canvas(cropCopyBitmap);
-              final Paint paint = new Paint();
-              paint.setColor(Color.RED);
-              paint.setStyle(Style.STROKE);
-              paint.setStrokeWidth(2.0f);
-
-              float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-              switch (MODE) {
-                case TF_OD_API:
-                  minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                  break;
-              }
-
-              final List<Classifier.Recognition> mappedRecognitions =
-                  new LinkedList<Classifier.Recognition>();         // 存放识别结果?
-
-              // 遍历每个结果
-              for (final Classifier.Recognition result : results) {
-                  final RectF location = result.getLocation();      // 获取坐标
-
-                  // 判断坐标不为空并且置信度大于阈值
-                  if (location != null && result.getConfidence() >= minimumConfidence) {
-                      // canvas.drawRect(location, paint);             // 画检测框(无效)
-                      // 将在(1024, 1024)的坐标值，转换（映射）成在(640, 480)上的坐标值，直接修改在location中
-                      LOGGER.i("[CYL] location old %s", location.toString());
-                      cropToFrameTransform.mapRect(location);
-                      LOGGER.i("[CYL] location new %s", location.toString());
-
-                      result.setLocation(location);
-                      mappedRecognitions.add(result);               // 存放识别到的检测框，用于绘制
-
-                      runOnUiThread(new Runnable() {
-                          @Override
-                          public void run() {
-                              addUserListItem(rgbFrameBitmap, location, result.getConfidence(), sensorOrientation);
-                          }
-                      });
-                  }
-              }
-
-              // 跟踪结果，过滤和画检测框
-              tracker.trackResults(mappedRecognitions, luminanceCopy, currTimestamp);
-              trackingOverlay.postInvalidate();     // 本质是调用View的onDraw()绘制。主线程之外，用postInvalidate()。
-
-              computingDetection = false;
-
-              // UI界面上对应的控件上显示一些信息:坐标,耗时等
-              runOnUiThread(
-                  new Runnable() {
-                      @Override
-                      public void run() {
-                          showFrameInfo(previewWidth + "x" + previewHeight);
-                          showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
-                          showInference(lastProcessingTimeMs + "ms");
-                      }
-                  });
+    final List<Classifier.Recognition> mappedRecognitions =
+        new LinkedList<Classifier.Recognition>();         // 存放识别结果?
+
+    // 遍历每个结果
+    for (final Classifier.Recognition result : job.results) {
+      final RectF location = result.getLocation();      // 获取坐标
+
+      // 判断坐标不为空并且置信度大于阈值
+      if (location != null && result.getConfidence() >= minimumConfidence) {
+        // 将在(1024, 1024)的坐标值，转换（映射）成在(640, 480)上的坐标值，直接修改在location中
+        LOGGER.record("[CYL] location old (%.1f, %.1f, %.1f, %.1f)",
+            location.left, location.top, location.right, location.bottom);
+        cropToFrameTransform.mapRect(location);
+        LOGGER.record("[CYL] location new (%.1f, %.1f, %.1f, %.1f)",
+            location.left, location.top, location.right, location.bottom);
+
+        result.setLocation(location);
+        mappedRecognitions.add(result);               // 存放识别到的检测框，用于绘制
+
+        // The thumbnails are cut from the full frame, convert it only when needed.
+        if (frame == null) {
+          frame = framePool.acquireBitmap(previewWidth, previewHeight, Config.ARGB_8888);
+          final long convertStart = System.nanoTime();
+          job.sampler.convertFrame(frameArgb);
+          frame.get().setPixels(frameArgb, 0, previewWidth, 0, 0, previewWidth, previewHeight);
+          thumbnailConvertLatency.recordSince(convertStart);
+        }
+        final BufferPool.Lease<Bitmap> thumbnailSource = frame.retain();
+        runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              addUserListItem(
+                  thumbnailSource.get(), location, result.getConfidence(), sensorOrientation);
+            } finally {
+              thumbnailSource.release();
+            }
           }
         });
+      }
+    }
+    job.results = null;
+    if (frame != null) {
+      frame.release();
+    }
+
+    // 跟踪结果，过滤和画检测框
+    final long trackStart = System.nanoTime();
+    tracker.trackResults(mappedRecognitions, job.luminance.get(), job.timestamp);
+    trackerResultsLatency.recordSince(trackStart);
+    job.luminance.release();
+    job.luminance = null;
+    trackingOverlay.postInvalidate();     // 本质是调用View的onDraw()绘制。主线程之外，用postInvalidate()。
+
+    if (isDebug()) {
+      final long now = SystemClock.uptimeMillis();
+      if (now - lastStatsDumpMs >= STATS_DUMP_INTERVAL_MS) {
+        lastStatsDumpMs = now;
+        LOGGER.i("Stats:\n%s", getStatsDump());
+        Logger.flushRing();
+      }
+    }
+
+    // UI界面上对应的控件上显示一些信息:坐标,耗时等
+    runOnUiThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            showFrameInfo(previewWidth + "x" + previewHeight);
+            showCropInfo(TF_OD_API_INPUT_SIZE + "x" + TF_OD_API_INPUT_SIZE);
+            showInference(lastProcessingTimeMs + "ms");
+          }
+        });
+  }
+
+  @Override
+  protected String getStatsDump() {
+    final String modelStats = detector != null ? detector.getStatString() : "";
+    return modelStats.isEmpty() ? super.getStatsDump() : super.getStatsDump() + "\n" + modelStats;
+  }
+
+  @Override
+  protected void onSetDebug(final boolean debug) {
+    // Per-frame log records are only kept, and written with the stats, in debug mode.
+    if (debug) {
+      Logger.startRing(LOG_RING_CAPACITY);
+    } else {
+      Logger.stopRing();
+    }
+    if (detector != null) {
+      detector.enableStatLogging(debug);
+    }
+    if (trackingOverlay != null) {
+      trackingOverlay.postInvalidate();
+    }
+  }
+
+  /** Draws the metrics in the bottom left corner of the overlay, in debug mode. */
+  private void drawStats(final Canvas canvas) {
+    final Vector<String> lines = new Vector<String>();
+    for (final String line : getStatsDump().split("\n")) {
+      lines.add(line);
+    }
+    borderedText.drawLines(canvas, 10, canvas.getHeight() - 10, lines);
+  }
+
+  @Override
+  public synchronized void onDestroy() {
+    if (pipeline != null) {
+      pipeline.stop();
+      pipeline = null;
+    }
+    // After the pipeline, whose stages use it, so the detector's preprocessing threads go too.
+    if (detector != null) {
+      detector.close();
+      detector = null;
+    }
+    super.onDestroy();
   }
 
   @Override
@@ -310,11 +511,16 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
   @Override
   protected void setUseNNAPI(final boolean isChecked) {
-    runInBackground(() -> detector.setUseNNAPI(isChecked));
+    // The interpreter must only be touched by the thread running it.
+    if (pipeline != null) {
+      pipeline.post(inferenceStage, () -> detector.setUseNNAPI(isChecked));
+    }
   }
 
   @Override
   protected void setNumThreads(final int numThreads) {
-    runInBackground(() -> detector.setNumThreads(numThreads));
+    if (pipeline != null) {
+      pipeline.post(inferenceStage, () -> detector.setNumThreads(numThreads));
+    }
   }
 }
@@ -0,0 +1,91 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pooled per-frame buffers for the camera pipeline: Bitmaps keyed by {@code (width, height,
+ * config)} and byte planes, such as luminance snapshots, keyed by length.
+ *
+ * <p>See {@link BufferPool} for the lease rules. Bitmaps that fall out of the pool are recycled.
+ */
+public class FramePool {
+  // Enough for the frames in flight plus what the UI still shows.
+  private static final int DEFAULT_MAX_IDLE = 8;
+
+  private final BufferPool<Bitmap> bitmaps;
+  private final BufferPool<byte[]> planes;
+
+  public FramePool() {
+    this(DEFAULT_MAX_IDLE);
+  }
+
+  public FramePool(final int maxIdlePerKey) {
+    bitmaps =
+        new BufferPool<>(
+            new BufferPool.Allocator<Bitmap>() {
+              @Override
+              public Bitmap allocate(final int width, final int height, final Object config) {
+                return Bitmap.createBitmap(width, height, (Bitmap.Config) config);
+              }
+
+              @Override
+              public void discard(final Bitmap buffer) {
+                buffer.recycle();
+              }
+            },
+            maxIdlePerKey);
+    planes =
+        new BufferPool<>(
+            new BufferPool.Allocator<byte[]>() {
+              @Override
+              public byte[] allocate(final int width, final int height, final Object config) {
+                return new byte[width * height];
+              }
+
+              @Override
+              public void discard(final byte[] buffer) {}
+            },
+            maxIdlePerKey);
+  }
+
+  /** Returns a Bitmap with undefined content, e.g. the previous user's pixels. */
+  public BufferPool.Lease<Bitmap> acquireBitmap(
+      final int width, final int height, final Bitmap.Config config) {
+    return bitmaps.acquire(width, height, config);
+  }
+
+  /** Returns a byte array of exactly {@code length} bytes with undefined content. */
+  public BufferPool.Lease<byte[]> acquireBytes(final int length) {
+    return planes.acquire(length, 1, null);
+  }
+
+  /** Frees the idle buffers, e.g. when the preview size changes. */
+  public void clear() {
+    bitmaps.clear();
+    planes.clear();
+  }
+
+  public String getStatString() {
+    return String.format(
+        "bitmaps: %d allocated, %d reused; planes: %d allocated, %d reused",
+        bitmaps.getAllocationCount(),
+        bitmaps.getReuseCount(),
+        planes.getAllocationCount(),
+        planes.getReuseCount());
+  }
+}
@@ -23,15 +23,17 @@ import java.io.FileOutputStream;
 
 /** Utility class for manipulating images. */
 public class ImageUtils {
-  // This value is 2 ^ 18 - 1, and is used to clamp the RGB values before their ranges
-  // are normalized to eight bits.
-  static final int kMaxChannelValue = 262143;
-
   @SuppressWarnings("unused")
   private static final Logger LOGGER = new Logger();
   // Always prefer the native implementation if available.
   private static boolean useNativeConversion = false;
 
+  // Workers splitting the Java YUV -> ARGB conversions into row stripes, null to convert on the
+  // calling thread. The stripe tasks are reused for every frame.
+  private static StripedWorkerPool conversionPool;
+  private static final Yuv420SpStripes yuv420SpStripes = new Yuv420SpStripes();
+  private static final Yuv420Stripes yuv420Stripes = new Yuv420Stripes();
+
   static {
     try {
       System.loadLibrary("tensorflow_demo");
@@ -40,6 +42,29 @@ public class ImageUtils {
     }
   }
 
+  /**
+   * Sets how many threads the Java YUV -> ARGB conversions are split across, counting the calling
+   * thread, which always converts the first stripe. The default of 1 converts on the calling
+   * thread only.
+   */
+  public static synchronized void setConversionThreads(final int numThreads) {
+    final int current = conversionPool != null ? conversionPool.getParallelism() : 1;
+    if (numThreads == current) {
+      return;
+    }
+    if (conversionPool != null) {
+      conversionPool.shutdown();
+      conversionPool = null;
+    }
+    if (numThreads > 1) {
+      conversionPool = new StripedWorkerPool(numThreads, "yuv-convert");
+    }
+  }
+
+  public static synchronized int getConversionThreads() {
+    return conversionPool != null ? conversionPool.getParallelism() : 1;
+  }
+
   /**
    * Utility method to compute the allocated size in bytes of a YUV420SP image of the given
    * dimensions.
@@ -108,46 +133,19 @@ public class ImageUtils {
     }
 
     // Java implementation of YUV420SP to ARGB8888 converting
-    final int frameSize = width * height;
-    for (int j = 0, yp = 0; j < height; j++) {
-      int uvp = frameSize + (j >> 1) * width;
-      int u = 0;
-      int v = 0;
-
-      for (int i = 0; i < width; i++, yp++) {
-        int y = 0xff & input[yp];
-        if ((i & 1) == 0) {
-          v = 0xff & input[uvp++];
-          u = 0xff & input[uvp++];
+    synchronized (ImageUtils.class) {
+      if (conversionPool != null) {
+        yuv420SpStripes.set(input, width, height, output);
+        try {
+          // Stripes start on even rows so no chroma row pair is split.
+          conversionPool.run(height, 2, yuv420SpStripes);
+        } finally {
+          yuv420SpStripes.clear();
         }
-
-        output[yp] = YUV2RGB(y, u, v);
+        return;
       }
     }
-  }
-
-  private static int YUV2RGB(int y, int u, int v) {
-    // Adjust and check YUV values
-    y = (y - 16) < 0 ? 0 : (y - 16);
-    u -= 128;
-    v -= 128;
-
-    // This is the floating point equivalent. We do the conversion in integer
-    // because some Android devices do not have floating point in hardware.
-    // nR = (int)(1.164 * nY + 2.018 * nU);
-    // nG = (int)(1.164 * nY - 0.813 * nV - 0.391 * nU);
-    // nB = (int)(1.164 * nY + 1.596 * nV);
-    int y1192 = 1192 * y;
-    int r = (y1192 + 1634 * v);
-    int g = (y1192 - 833 * v - 400 * u);
-    int b = (y1192 + 2066 * u);
-
-    // Clipping RGB values to be inside boundaries [ 0 , kMaxChannelValue ]
-    r = r > kMaxChannelValue ? kMaxChannelValue : (r < 0 ? 0 : r);
-    g = g > kMaxChannelValue ? kMaxChannelValue : (g < 0 ? 0 : g);
-    b = b > kMaxChannelValue ? kMaxChannelValue : (b < 0 ? 0 : b);
-
-    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+    YuvToArgbConverter.convertYuv420Sp(input, width, height, output);
   }
 
   public static void convertYUV420ToARGB8888(
@@ -172,16 +170,101 @@ public class ImageUtils {
       }
     }
 
-    int yp = 0;
-    for (int j = 0; j < height; j++) {
-      int pY = yRowStride * j;
-      int pUV = uvRowStride * (j >> 1);
+    synchronized (ImageUtils.class) {
+      if (conversionPool != null) {
+        yuv420Stripes.set(
+            yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+        try {
+          conversionPool.run(height, 2, yuv420Stripes);
+        } finally {
+          yuv420Stripes.clear();
+        }
+        return;
+      }
+    }
+    YuvToArgbConverter.convertYuv420(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+  }
 
-      for (int i = 0; i < width; i++) {
-        int uv_offset = pUV + (i >> 1) * uvPixelStride;
+  /** Reusable stripe task for {@link #convertYUV420SPToARGB8888(byte[], int, int, int[])}. */
+  private static final class Yuv420SpStripes implements StripedWorkerPool.StripeTask {
+    private byte[] input;
+    private int width;
+    private int height;
+    private int[] output;
+
+    void set(final byte[] input, final int width, final int height, final int[] output) {
+      this.input = input;
+      this.width = width;
+      this.height = height;
+      this.output = output;
+    }
 
-        out[yp++] = YUV2RGB(0xff & yData[pY + i], 0xff & uData[uv_offset], 0xff & vData[uv_offset]);
-      }
+    void clear() {
+      input = null;
+      output = null;
+    }
+
+    @Override
+    public void run(final int stripe, final int start, final int end) {
+      YuvToArgbConverter.convertYuv420Sp(input, width, height, output, start, end);
+    }
+  }
+
+  /** Reusable stripe task for the planar {@link #convertYUV420ToARGB8888}. */
+  private static final class Yuv420Stripes implements StripedWorkerPool.StripeTask {
+    private byte[] yData;
+    private byte[] uData;
+    private byte[] vData;
+    private int width;
+    private int height;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+    private int[] out;
+
+    void set(
+        final byte[] yData,
+        final byte[] uData,
+        final byte[] vData,
+        final int width,
+        final int height,
+        final int yRowStride,
+        final int uvRowStride,
+        final int uvPixelStride,
+        final int[] out) {
+      this.yData = yData;
+      this.uData = uData;
+      this.vData = vData;
+      this.width = width;
+      this.height = height;
+      this.yRowStride = yRowStride;
+      this.uvRowStride = uvRowStride;
+      this.uvPixelStride = uvPixelStride;
+      this.out = out;
+    }
+
+    void clear() {
+      yData = null;
+      uData = null;
+      vData = null;
+      out = null;
+    }
+
+    @Override
+    public void run(final int stripe, final int start, final int end) {
+      YuvToArgbConverter.convertYuv420(
+          yData,
+          uData,
+          vData,
+          width,
+          height,
+          yRowStride,
+          uvRowStride,
+          uvPixelStride,
+          out,
+          start,
+          end);
     }
   }
 
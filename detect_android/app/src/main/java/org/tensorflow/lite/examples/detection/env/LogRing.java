@@ -0,0 +1,141 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Arrays;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The last {@code capacity} records of {@link Logger#record}, kept unformatted in preallocated
+ * arrays. Adding a record stores a format string reference and a few primitives, so it neither
+ * formats nor allocates; the text is only built when the ring is {@link #drain}ed.
+ *
+ * <p>Any thread may add records. Records are not locked, so one that is overwritten while being
+ * drained may come out garbled; this is a debugging aid, not an audit log.
+ */
+final class LogRing {
+  private static final int KIND_NONE = 0;
+  private static final int KIND_LONGS = 1;
+  private static final int KIND_FLOATS = 2;
+
+  private final int mask;
+  private final Logger[] loggers;
+  private final String[] formats;
+  private final long[] times;
+  private final byte[] kinds;
+  private final byte[] argCounts;
+  // Two long or four float arguments per record.
+  private final long[] longArgs;
+  private final float[] floatArgs;
+
+  // Sequence number of the next record, and of the oldest one not drained yet.
+  private final AtomicLong next = new AtomicLong();
+  private long drained;
+
+  /** @param capacity Number of records kept, rounded up to a power of two. */
+  LogRing(final int capacity) {
+    final int size = Math.max(1, Integer.highestOneBit(Math.max(1, capacity) - 1) << 1);
+    mask = size - 1;
+    loggers = new Logger[size];
+    formats = new String[size];
+    times = new long[size];
+    kinds = new byte[size];
+    argCounts = new byte[size];
+    longArgs = new long[size * 2];
+    floatArgs = new float[size * 4];
+  }
+
+  void add(final Logger logger, final String format, final int argCount, final long a, final long b) {
+    final int i = claim(logger, format, KIND_LONGS, argCount);
+    longArgs[i * 2] = a;
+    longArgs[i * 2 + 1] = b;
+  }
+
+  void add(
+      final Logger logger,
+      final String format,
+      final float a,
+      final float b,
+      final float c,
+      final float d) {
+    final int i = claim(logger, format, KIND_FLOATS, 4);
+    floatArgs[i * 4] = a;
+    floatArgs[i * 4 + 1] = b;
+    floatArgs[i * 4 + 2] = c;
+    floatArgs[i * 4 + 3] = d;
+  }
+
+  void add(final Logger logger, final String format) {
+    claim(logger, format, KIND_NONE, 0);
+  }
+
+  private int claim(final Logger logger, final String format, final int kind, final int argCount) {
+    final int i = (int) next.getAndIncrement() & mask;
+    loggers[i] = logger;
+    formats[i] = format;
+    times[i] = System.nanoTime();
+    kinds[i] = (byte) kind;
+    argCounts[i] = (byte) argCount;
+    return i;
+  }
+
+  /**
+   * Formats the records added since the last drain, oldest first, and hands each to its logger.
+   * Records that were overwritten before being drained are skipped.
+   */
+  synchronized void drain() {
+    final long end = next.get();
+    final long start = Math.max(drained, end - (mask + 1));
+    final long now = System.nanoTime();
+    for (long seq = start; seq < end; ++seq) {
+      final int i = (int) seq & mask;
+      final Logger logger = loggers[i];
+      if (logger == null) {
+        continue;
+      }
+      final String message =
+          String.format(Locale.US, "[-%.1fms] %s", (now - times[i]) / 1e6, format(i));
+      logger.logRecord(message);
+    }
+    drained = end;
+  }
+
+  private String format(final int i) {
+    final Object[] args;
+    switch (kinds[i]) {
+      case KIND_LONGS:
+        args = argCounts[i] == 1
+            ? new Object[] {longArgs[i * 2]}
+            : new Object[] {longArgs[i * 2], longArgs[i * 2 + 1]};
+        break;
+      case KIND_FLOATS:
+        args =
+            new Object[] {
+              floatArgs[i * 4], floatArgs[i * 4 + 1], floatArgs[i * 4 + 2], floatArgs[i * 4 + 3]
+            };
+        break;
+      default:
+        return formats[i];
+    }
+    try {
+      return String.format(Locale.US, formats[i], args);
+    } catch (final IllegalFormatException e) {
+      return formats[i] + " " + Arrays.toString(args);
+    }
+  }
+}
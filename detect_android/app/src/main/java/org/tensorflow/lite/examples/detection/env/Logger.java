@@ -18,12 +18,34 @@ package org.tensorflow.lite.examples.detection.env;
 import android.util.Log;
 import java.util.HashSet;
 import java.util.Set;
+import org.tensorflow.lite.examples.detection.BuildConfig;
 
-/** Wrapper for the platform log function, allows convenient message prefixing and log disabling. */
+/**
+ * Wrapper for the platform log function, allows convenient message prefixing and log disabling.
+ *
+ * <p>Levels are gated twice. Levels below {@link #COMPILED_MIN_LEVEL} are dropped in every build
+ * of the given type; guard a hot call site with e.g. {@code if (Logger.VERBOSE)} and javac leaves
+ * it out of the build entirely. The remaining levels are checked against {@link #setMinLogLevel}
+ * and {@code Log.isLoggable}, cached per level, before any argument is formatted. Calls with up to
+ * two arguments do not even allocate a varargs array when the level is off.
+ *
+ * <p>For per-frame or per-box messages use {@link #record}: while a ring is started with {@link
+ * #startRing} the records are kept unformatted in memory and only formatted when {@link
+ * #flushRing} writes them out. Otherwise they are logged at VERBOSE.
+ */
 public final class Logger {
   private static final String DEFAULT_TAG = "tensorflow";
   private static final int DEFAULT_MIN_LOG_LEVEL = Log.DEBUG;
 
+  /** Lowest level compiled into this build type, see MIN_LOG_LEVEL in app/build.gradle. */
+  public static final int COMPILED_MIN_LEVEL = BuildConfig.MIN_LOG_LEVEL;
+  /** Compile-time constants for guarding call sites that build their arguments. */
+  public static final boolean VERBOSE = COMPILED_MIN_LEVEL <= Log.VERBOSE;
+  public static final boolean DEBUG = COMPILED_MIN_LEVEL <= Log.DEBUG;
+
+  // Records of all Loggers, or null when ring logging is off.
+  private static volatile LogRing ring;
+
   // Classes to be ignored when examining the stack trace
   private static final Set<String> IGNORED_CLASS_NAMES;
 
@@ -37,6 +59,8 @@ public final class Logger {
   private final String tag;
   private final String messagePrefix;
   private int minLogLevel = DEFAULT_MIN_LOG_LEVEL;
+  // Bit n is set when level n is loggable, see updateLoggableLevels().
+  private volatile int loggableLevels;
 
   /**
    * Creates a Logger using the class name as the message prefix.
@@ -71,6 +95,7 @@ public final class Logger {
     this.tag = tag;
     final String prefix = messagePrefix == null ? getCallerSimpleName() : messagePrefix;
     this.messagePrefix = (prefix.length() > 0) ? prefix + ": " : prefix;
+    updateLoggableLevels();
   }
 
   /** Creates a Logger using the caller's class name as the message prefix. */
@@ -81,7 +106,7 @@ public final class Logger {
   /** Creates a Logger using the caller's class name as the message prefix. */
   public Logger(final int minLogLevel) {
     this(DEFAULT_TAG, null);
-    this.minLogLevel = minLogLevel;
+    setMinLogLevel(minLogLevel);
   }
 
   /**
@@ -112,24 +137,142 @@ public final class Logger {
     return Logger.class.getSimpleName();
   }
 
+  /**
+   * Sets the lowest level logged regardless of {@code Log.isLoggable}. Also picks up changes to
+   * the {@code log.tag} system property, which is otherwise only read when the Logger is created.
+   */
   public void setMinLogLevel(final int minLogLevel) {
     this.minLogLevel = minLogLevel;
+    updateLoggableLevels();
+  }
+
+  private void updateLoggableLevels() {
+    int levels = 0;
+    for (int level = Log.VERBOSE; level <= Log.ASSERT; ++level) {
+      if (level >= COMPILED_MIN_LEVEL && (level >= minLogLevel || Log.isLoggable(tag, level))) {
+        levels |= 1 << level;
+      }
+    }
+    loggableLevels = levels;
   }
 
   public boolean isLoggable(final int logLevel) {
-    return logLevel >= minLogLevel || Log.isLoggable(tag, logLevel);
+    return (loggableLevels & (1 << logLevel)) != 0;
   }
 
   private String toMessage(final String format, final Object... args) {
     return messagePrefix + (args.length > 0 ? String.format(format, args) : format);
   }
 
+  /**
+   * Keeps the last {@code capacity} {@link #record} calls of every Logger in memory instead of
+   * logging them, replacing any ring started before. Has no effect in builds without VERBOSE.
+   */
+  public static void startRing(final int capacity) {
+    if (VERBOSE) {
+      ring = new LogRing(capacity);
+    }
+  }
+
+  /** Writes out the records kept since the last flush, at DEBUG, and keeps the ring running. */
+  public static void flushRing() {
+    final LogRing current = ring;
+    if (current != null) {
+      current.drain();
+    }
+  }
+
+  /** Flushes the ring and goes back to logging records directly. */
+  public static void stopRing() {
+    final LogRing current = ring;
+    ring = null;
+    if (current != null) {
+      current.drain();
+    }
+  }
+
+  /** Called by the ring with a formatted record. */
+  void logRecord(final String message) {
+    Log.d(tag, messagePrefix + message);
+  }
+
+  /** Records a hot-path message; see {@link Logger}. */
+  public void record(final String message) {
+    if (!VERBOSE) {
+      return;
+    }
+    final LogRing current = ring;
+    if (current != null) {
+      current.add(this, message);
+    } else if (isLoggable(Log.VERBOSE)) {
+      Log.v(tag, messagePrefix + message);
+    }
+  }
+
+  /** Records a hot-path message with one integer argument; see {@link Logger}. */
+  public void record(final String format, final long arg) {
+    if (!VERBOSE) {
+      return;
+    }
+    final LogRing current = ring;
+    if (current != null) {
+      current.add(this, format, 1, arg, 0);
+    } else if (isLoggable(Log.VERBOSE)) {
+      Log.v(tag, toMessage(format, arg));
+    }
+  }
+
+  /** Records a hot-path message with two integer arguments; see {@link Logger}. */
+  public void record(final String format, final long arg1, final long arg2) {
+    if (!VERBOSE) {
+      return;
+    }
+    final LogRing current = ring;
+    if (current != null) {
+      current.add(this, format, 2, arg1, arg2);
+    } else if (isLoggable(Log.VERBOSE)) {
+      Log.v(tag, toMessage(format, arg1, arg2));
+    }
+  }
+
+  /** Records a hot-path message with four float arguments, e.g. a box; see {@link Logger}. */
+  public void record(
+      final String format, final float a, final float b, final float c, final float d) {
+    if (!VERBOSE) {
+      return;
+    }
+    final LogRing current = ring;
+    if (current != null) {
+      current.add(this, format, a, b, c, d);
+    } else if (isLoggable(Log.VERBOSE)) {
+      Log.v(tag, toMessage(format, a, b, c, d));
+    }
+  }
+
   public void v(final String format, final Object... args) {
     if (isLoggable(Log.VERBOSE)) {
       Log.v(tag, toMessage(format, args));
     }
   }
 
+  public void v(final String message) {
+    if (isLoggable(Log.VERBOSE)) {
+      Log.v(tag, messagePrefix + message);
+    }
+  }
+
+  public void v(final String format, final Object arg) {
+    if (isLoggable(Log.VERBOSE)) {
+      Log.v(tag, toMessage(format, arg));
+    }
+  }
+
+  public void v(final String format, final Object arg1, final Object arg2) {
+    if (isLoggable(Log.VERBOSE)) {
+      Log.v(tag, toMessage(format, arg1, arg2));
+    }
+  }
+
   public void v(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.VERBOSE)) {
       Log.v(tag, toMessage(format, args), t);
@@ -142,6 +285,24 @@ public final class Logger {
     }
   }
 
+  public void d(final String message) {
+    if (isLoggable(Log.DEBUG)) {
+      Log.d(tag, messagePrefix + message);
+    }
+  }
+
+  public void d(final String format, final Object arg) {
+    if (isLoggable(Log.DEBUG)) {
+      Log.d(tag, toMessage(format, arg));
+    }
+  }
+
+  public void d(final String format, final Object arg1, final Object arg2) {
+    if (isLoggable(Log.DEBUG)) {
+      Log.d(tag, toMessage(format, arg1, arg2));
+    }
+  }
+
   public void d(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.DEBUG)) {
       Log.d(tag, toMessage(format, args), t);
@@ -154,6 +315,24 @@ public final class Logger {
     }
   }
 
+  public void i(final String message) {
+    if (isLoggable(Log.INFO)) {
+      Log.i(tag, messagePrefix + message);
+    }
+  }
+
+  public void i(final String format, final Object arg) {
+    if (isLoggable(Log.INFO)) {
+      Log.i(tag, toMessage(format, arg));
+    }
+  }
+
+  public void i(final String format, final Object arg1, final Object arg2) {
+    if (isLoggable(Log.INFO)) {
+      Log.i(tag, toMessage(format, arg1, arg2));
+    }
+  }
+
   public void i(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.INFO)) {
       Log.i(tag, toMessage(format, args), t);
@@ -0,0 +1,28 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+/** What {@link FramePipeline} does with a new frame when every slot is already in flight. */
+public enum BackpressurePolicy {
+  /**
+   * Reclaim the oldest frame still waiting for the first stage and process the new one instead,
+   * so the detector always works on the most recent camera image.
+   */
+  DROP_OLDEST,
+
+  /** Keep the frames already queued and skip the new one. */
+  DROP_NEWEST
+}
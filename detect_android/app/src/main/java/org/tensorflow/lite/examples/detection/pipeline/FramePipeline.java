@@ -0,0 +1,300 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.MetricsRegistry;
+
+/**
+ * Runs frames through a fixed sequence of stages, each on its own thread, so that e.g. frame N+1
+ * is preprocessed while frame N is in inference.
+ *
+ * <p>Frames travel in a fixed set of reusable job slots. The camera thread {@link #acquire}s a free
+ * slot, fills it and {@link #submit}s it; after the last stage the slot goes back to the free list.
+ * Stages are connected by {@link SpscRingBuffer}s large enough to hold every slot, so only the
+ * entry applies backpressure: when no slot is free the {@link BackpressurePolicy} decides whether
+ * the new frame or the oldest queued one is dropped.
+ *
+ * <p>Each stage records how long it spends per frame in a {@link LatencyHistogram} named {@code
+ * <name>.<stage>}, and dropped frames are counted in {@code <name>.dropped}, both in the {@link
+ * MetricsRegistry} given at construction; see also {@link #getStatString()}.
+ *
+ * @param <T> The job slot type, holding everything a frame needs on its way through the stages.
+ */
+public class FramePipeline<T> {
+  private static final Logger LOGGER = new Logger();
+
+  /** Work done on one frame by one stage, on that stage's thread. */
+  public interface Stage<T> {
+    void process(T job);
+  }
+
+  private final String name;
+  private final BackpressurePolicy policy;
+  private final int slotCount;
+  private final ArrayBlockingQueue<T> freeSlots;
+  private final List<StageRunner> stages = new ArrayList<>();
+  private final MetricsRegistry metrics;
+  private final StageStats captureStats;
+  private final AtomicLong droppedFrames;
+
+  // When the slot being filled was acquired. Camera thread only.
+  private long acquiredAtNanos;
+  private volatile boolean running;
+
+  /**
+   * @param name Prefix of the stage thread names.
+   * @param slots The reusable job slots; their number bounds how many frames are in flight.
+   * @param policy What to do with a new frame when no slot is free.
+   */
+  public FramePipeline(final String name, final List<T> slots, final BackpressurePolicy policy) {
+    this(name, slots, policy, new MetricsRegistry());
+  }
+
+  /**
+   * @param name Prefix of the stage thread and metric names.
+   * @param slots The reusable job slots; their number bounds how many frames are in flight.
+   * @param policy What to do with a new frame when no slot is free.
+   * @param metrics Where the stage latencies and the drop counter are registered.
+   */
+  public FramePipeline(
+      final String name,
+      final List<T> slots,
+      final BackpressurePolicy policy,
+      final MetricsRegistry metrics) {
+    if (slots.isEmpty()) {
+      throw new IllegalArgumentException("At least one slot is needed");
+    }
+    this.name = name;
+    this.policy = policy;
+    this.slotCount = slots.size();
+    this.freeSlots = new ArrayBlockingQueue<>(slotCount, false, slots);
+    this.metrics = metrics;
+    this.captureStats = new StageStats("capture", metrics.histogram(name + ".capture"));
+    this.droppedFrames = metrics.counter(name + ".dropped");
+  }
+
+  /**
+   * Appends a stage. Must be called before {@link #start()}.
+   *
+   * @return The index of the stage, for {@link #post}.
+   */
+  public int addStage(final String stageName, final Stage<T> stage) {
+    if (running) {
+      throw new IllegalStateException("Stages must be added before start()");
+    }
+    final StageRunner runner = new StageRunner(stageName, stage, slotCount);
+    if (!stages.isEmpty()) {
+      stages.get(stages.size() - 1).next = runner;
+    }
+    stages.add(runner);
+    return stages.size() - 1;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    if (stages.isEmpty()) {
+      throw new IllegalStateException("No stages");
+    }
+    running = true;
+    for (final StageRunner runner : stages) {
+      runner.thread = new Thread(runner, name + "-" + runner.stats.name);
+      runner.thread.start();
+    }
+  }
+
+  /**
+   * Stops all stage threads and waits for them to exit, so whatever the stages use can be released
+   * afterwards. Frames still in flight are abandoned. An interrupt does not cut the wait short; it
+   * is passed on once every thread has exited.
+   */
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    for (final StageRunner runner : stages) {
+      LockSupport.unpark(runner.thread);
+    }
+    boolean interrupted = false;
+    for (final StageRunner runner : stages) {
+      while (true) {
+        try {
+          runner.thread.join();
+          break;
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      runner.thread = null;
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns a free slot to fill with the next frame, or null if the frame should be dropped.
+   * Producer (camera) thread only.
+   */
+  public T acquire() {
+    T job = freeSlots.poll();
+    if (job == null && policy == BackpressurePolicy.DROP_OLDEST) {
+      // Take back the oldest frame that has not been picked up yet.
+      job = stages.get(0).input.dropOldest();
+      if (job != null) {
+        droppedFrames.incrementAndGet();
+      }
+    }
+    if (job == null) {
+      droppedFrames.incrementAndGet();
+      return null;
+    }
+    acquiredAtNanos = System.nanoTime();
+    return job;
+  }
+
+  /** Hands a filled slot to the first stage. Producer (camera) thread only. */
+  public void submit(final T job) {
+    captureStats.record(System.nanoTime() - acquiredAtNanos);
+    final StageRunner first = stages.get(0);
+    if (!first.input.offer(job)) {
+      // Cannot happen while every queue can hold all slots.
+      throw new IllegalStateException("Pipeline queue overflow");
+    }
+    LockSupport.unpark(first.thread);
+  }
+
+  /** Returns an acquired slot without processing it. */
+  public void release(final T job) {
+    freeSlots.offer(job);
+  }
+
+  /**
+   * Runs {@code command} on the thread of the given stage, between two frames. Use it for changes
+   * that must not race with the stage's work, like reconfiguring the interpreter.
+   */
+  public void post(final int stage, final Runnable command) {
+    final StageRunner runner = stages.get(stage);
+    runner.commands.add(command);
+    LockSupport.unpark(runner.thread);
+  }
+
+  public long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+
+  /** Returns one line per stage with its latency percentiles and last time per frame. */
+  public String getStatString() {
+    final StringBuilder sb = new StringBuilder();
+    captureStats.append(sb);
+    for (final StageRunner runner : stages) {
+      sb.append('\n');
+      runner.stats.append(sb);
+    }
+    sb.append("\ndropped: ").append(droppedFrames.get());
+    return sb.toString();
+  }
+
+  private final class StageRunner implements Runnable {
+    final Stage<T> stage;
+    final SpscRingBuffer<T> input;
+    final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    final StageStats stats;
+    StageRunner next;
+    volatile Thread thread;
+
+    StageRunner(final String stageName, final Stage<T> stage, final int capacity) {
+      this.stage = stage;
+      this.input = new SpscRingBuffer<>(capacity);
+      this.stats = new StageStats(stageName, metrics.histogram(name + "." + stageName));
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+          try {
+            command.run();
+          } catch (final Throwable t) {
+            LOGGER.e(t, "Command on stage %s failed", stats.name);
+          }
+        }
+
+        final T job = input.poll();
+        if (job == null) {
+          // Producers unpark this thread after every offer; the permit covers the race with poll().
+          LockSupport.park(this);
+          continue;
+        }
+
+        final long start = System.nanoTime();
+        try {
+          stage.process(job);
+        } catch (final Throwable t) {
+          // Errors too, e.g. running out of memory for a tensor: a dead stage thread would keep
+          // its slot and stall the pipeline for good.
+          LOGGER.e(t, "Stage %s failed, dropping frame", stats.name);
+          freeSlots.offer(job);
+          continue;
+        }
+        stats.record(System.nanoTime() - start);
+
+        if (next == null) {
+          freeSlots.offer(job);
+        } else {
+          next.input.offer(job);
+          LockSupport.unpark(next.thread);
+        }
+      }
+    }
+  }
+
+  /** Per-stage timings. Written by one thread, read by any. */
+  private static final class StageStats {
+    final String name;
+    final LatencyHistogram latency;
+    private volatile long lastNanos;
+
+    StageStats(final String name, final LatencyHistogram latency) {
+      this.name = name;
+      this.latency = latency;
+    }
+
+    void record(final long nanos) {
+      lastNanos = nanos;
+      latency.record(nanos);
+    }
+
+    void append(final StringBuilder sb) {
+      sb.append(name)
+          .append(": ")
+          .append(latency.getSummary())
+          .append(String.format(Locale.US, " last=%.2fms", lastNanos / 1e6));
+    }
+  }
+}
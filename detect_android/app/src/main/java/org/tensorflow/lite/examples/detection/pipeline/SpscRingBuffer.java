@@ -0,0 +1,98 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free ring buffer for exactly one producer thread and one consumer thread.
+ *
+ * <p>Besides {@link #offer}, the producer may call {@link #dropOldest} to take back the element
+ * the consumer would see next, which is how a full queue makes room for a newer frame. Because of
+ * that the head is advanced with a CAS, the tail with a plain ordered store.
+ */
+public final class SpscRingBuffer<T> {
+  private final AtomicReferenceArray<T> slots;
+  private final int mask;
+  // Next index to poll, advanced by the consumer and by dropOldest().
+  private final AtomicLong head = new AtomicLong();
+  // Next index to offer, advanced by the producer only.
+  private final AtomicLong tail = new AtomicLong();
+
+  /** @param capacity Maximum number of queued elements, rounded up to a power of two. */
+  public SpscRingBuffer(final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    final int size = Integer.highestOneBit(capacity - 1) << 1;
+    slots = new AtomicReferenceArray<>(Math.max(size, 1));
+    mask = slots.length() - 1;
+  }
+
+  public int capacity() {
+    return slots.length();
+  }
+
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  public boolean isEmpty() {
+    return size() <= 0;
+  }
+
+  /** Producer only. Returns false, leaving the queue untouched, if it is full. */
+  public boolean offer(final T element) {
+    if (element == null) {
+      throw new NullPointerException();
+    }
+    final long t = tail.get();
+    if (t - head.get() >= slots.length()) {
+      return false;
+    }
+    slots.lazySet((int) t & mask, element);
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /** Consumer only. Returns the oldest element, or null if the queue is empty. */
+  public T poll() {
+    return takeOldest();
+  }
+
+  /**
+   * Producer only. Removes and returns the oldest element, or null if the queue is empty. The
+   * consumer never sees a dropped element.
+   */
+  public T dropOldest() {
+    return takeOldest();
+  }
+
+  private T takeOldest() {
+    while (true) {
+      final long h = head.get();
+      if (h >= tail.get()) {
+        return null;
+      }
+      final T element = slots.get((int) h & mask);
+      // Whoever wins the CAS owns the element; the loser retries with the next one.
+      if (head.compareAndSet(h, h + 1)) {
+        return element;
+      }
+    }
+  }
+}
@@ -18,13 +18,49 @@ package org.tensorflow.lite.examples.detection.tflite;
 import android.graphics.Bitmap;
 import android.graphics.RectF;
 import java.util.List;
+import org.tensorflow.lite.examples.detection.env.ArgbRowSource;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Classifier {
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /** Same as {@link #recognizeImage(Bitmap)}, reading a model-sized image row by row. */
+  List<Recognition> recognizeImage(ArgbRowSource source);
+
+  /**
+   * Recognizes several model-sized images, e.g. an archive of photos, favouring throughput over
+   * the latency of any one image. Returns one list per bitmap, in order, each as {@link
+   * #recognizeImage(Bitmap)} would have returned it.
+   *
+   * <p>Must not overlap any other call on the same instance: it shares the single-image scratch
+   * buffers and decoder state with {@link #recognizeImage(Bitmap)}, and resizes the interpreter
+   * input for the batch, which {@link #runInference} would otherwise run against.
+   */
+  List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps);
+
+  /**
+   * Input and output buffers for one frame, so that several frames can be in different stages at
+   * the same time: {@link #preprocess}, then {@link #runInference}, then {@link #decode}. Each
+   * stage may run on its own thread, but a given stage must not run on two threads at once.
+   */
+  interface Tensors {}
+
+  /** Allocates the buffers for one in-flight frame. */
+  Tensors createTensors();
+
+  /** Fills the input tensor of {@code tensors} from a model-sized image. */
+  void preprocess(ArgbRowSource source, Tensors tensors);
+
+  /** Runs the model on the input of {@code tensors}, writing its outputs. */
+  void runInference(Tensors tensors);
+
+  /** Turns the outputs of {@code tensors} into recognitions. */
+  List<Recognition> decode(Tensors tensors);
+
+  /** Starts or stops recording per-stage latencies (preprocess, inference, decode, ...). */
   void enableStatLogging(final boolean debug);
 
+  /** Returns one line per recorded stage with its latency percentiles. */
   String getStatString();
 
   void close();
@@ -0,0 +1,63 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.env.MetricsRegistry;
+
+/**
+ * Per-stage timings behind {@link Classifier#enableStatLogging} and {@link
+ * Classifier#getStatString}. While logging is off, timing a stage costs one volatile read.
+ */
+final class ModelStats {
+  // Start time of a stage that is not being timed.
+  private static final long NOT_TIMED = Long.MIN_VALUE;
+
+  private final MetricsRegistry registry = new MetricsRegistry();
+  final LatencyHistogram preprocess = registry.histogram("model.preprocess");
+  final LatencyHistogram inference = registry.histogram("model.inference");
+  final LatencyHistogram decode = registry.histogram("model.decode");
+  private volatile boolean enabled;
+
+  void setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Returns the histogram called {@code name}, for stages only one model has. */
+  LatencyHistogram histogram(final String name) {
+    return registry.histogram(name);
+  }
+
+  /** Returns the start time to pass to {@link #stop}. */
+  long start() {
+    return enabled ? System.nanoTime() : NOT_TIMED;
+  }
+
+  /** Records the time since {@code start} into {@code histogram}, if the stage was timed. */
+  static void stop(final LatencyHistogram histogram, final long start) {
+    if (start != NOT_TIMED) {
+      histogram.recordSince(start);
+    }
+  }
+
+  String getStatString() {
+    return registry.dump();
+  }
+}
@@ -20,14 +20,15 @@ import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.RectF;
 import android.os.Trace;
-import android.util.Log;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
@@ -36,7 +37,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.detection.env.ArgbRowSource;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.StripedWorkerPool;
 
 /**
  * Wrapper for frozen detection models trained using the Tensorflow Object Detection API:
@@ -53,36 +56,101 @@ public class TFLiteFaceBoxesAPIModel implements Classifier {
   private static final float IMAGE_STD = 128.0f;
   // Number of threads in the java app
   private static final int NUM_THREADS = 4;           // 线程个数
+  // Number of threads converting the camera bitmap into the input tensor.
+  private static final int PREPROCESS_THREADS = 2;
+  // Images per invoke in recognizeImages(). A 1024x1024 float input is 12 MB per image, and the
+  // interpreter's activations grow with the batch as well.
+  private static final int MAX_BATCH_SIZE = 4;
+  // Index of the "face" entry in faceboxes_label.txt.
+  private static final int FACE_LABEL_INDEX = 0;
   private boolean isModelQuantized;                   // 模型是否量化
   // Config values.
   private int inputSize;
   // Pre-allocated buffers.
   private Vector<String> labels = new Vector<String>();
   private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
-  // contains the location of detected boxes
-  private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the classes of detected boxes
-  private float[][][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the scores of detected boxes
-  private float[][] outputScores;
-  // numDetections: array of shape [Batchsize]
-  // contains the number of detected boxes
-  private float[] numDetections;
-
-  private ByteBuffer imgData;
+  // Buffers used by recognizeImage(); pipelined callers bring their own from createTensors().
+  private FaceBoxesTensors tensors;
+  // Buffers used by recognizeImages(), allocated on first use.
+  private FaceBoxesTensors batchTensors;
+  // Batch size the interpreter input is currently resized to.
+  private int interpreterBatchSize = 1;
+  // Decoded detections, written in place by DataEncoder on every frame.
+  // detectionBoxes: NUM_DETECTIONS (x1, y1, x2, y2) quads, normalized to [0, 1]
+  private float[] detectionBoxes;
+  private float[] detectionScores;
+
+  private StripedWorkerPool preprocessPool;
 
   private Interpreter tfLite;
-  private DataEncoder dataEncoder = new DataEncoder(1024);
+  // Stage timings, recorded while stat logging is enabled.
+  private final ModelStats stats = new ModelStats();
+  private DataEncoder dataEncoder;
+
+  /** Input and output buffers of one in-flight frame, allocated once and reused. */
+  private static final class FaceBoxesTensors implements Tensors {
+    final ImagePreprocessor preprocessor;
+    final int numBoxes;
+    // Raw model outputs, decoded in place.
+    // outputLocations: float32 [batchSize, numBoxes, 4] (dx, dy, dw, dh) relative to the prior boxes
+    final ByteBuffer outputLocationsBuffer;
+    final FloatBuffer outputLocations;
+    // outputClasses: float32 [batchSize, numBoxes, 2] (background, face) scores
+    final ByteBuffer outputClassesBuffer;
+    final FloatBuffer outputClasses;
+    final Object[] inputArray;
+    final Map<Integer, Object> outputMap = new HashMap<>();
+
+    FaceBoxesTensors(final ImagePreprocessor preprocessor, final int numBoxes) {
+      this.preprocessor = preprocessor;
+      this.numBoxes = numBoxes;
+      final int batchSize = preprocessor.getBatchSize();
+      outputLocationsBuffer = ByteBuffer.allocateDirect(batchSize * numBoxes * 4 * 4);
+      outputLocationsBuffer.order(ByteOrder.nativeOrder());
+      outputLocations = outputLocationsBuffer.asFloatBuffer();
+      outputClassesBuffer = ByteBuffer.allocateDirect(batchSize * numBoxes * 2 * 4);
+      outputClassesBuffer.order(ByteOrder.nativeOrder());
+      outputClasses = outputClassesBuffer.asFloatBuffer();
+
+      inputArray = new Object[] {preprocessor.getInput()};
+      outputMap.put(0, outputClassesBuffer);
+      outputMap.put(1, outputLocationsBuffer);
+    }
+
+    /**
+     * Points the input and outputs at the first {@code count} batch elements, so that their sizes
+     * match an interpreter resized to batch {@code count}.
+     */
+    void bind(final int count) {
+      inputArray[0] = preprocessor.getInput(count);
+      outputMap.put(0, elements(outputClassesBuffer, count));
+      outputMap.put(1, elements(outputLocationsBuffer, count));
+    }
+
+    private ByteBuffer elements(final ByteBuffer buffer, final int count) {
+      if (count == preprocessor.getBatchSize()) {
+        return buffer;
+      }
+      final ByteBuffer view = buffer.duplicate();
+      view.limit(buffer.capacity() / preprocessor.getBatchSize() * count);
+      return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /** Returns the {@code length} floats of batch element {@code index}. */
+    static FloatBuffer element(final FloatBuffer buffer, final int index, final int length) {
+      final FloatBuffer view = buffer.duplicate();
+      view.position(index * length);
+      view.limit((index + 1) * length);
+      return view.slice();
+    }
+  }
 
   private TFLiteFaceBoxesAPIModel() {}
 
   /** Memory-map the model file in Assets. */
   private static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
       throws IOException {
-    LOGGER.i("[loadModelFile] modelFilename " + modelFilename);
+    LOGGER.i("[loadModelFile] modelFilename %s", modelFilename);
     AssetFileDescriptor fileDescriptor = assets.openFd(modelFilename);
     FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
     FileChannel fileChannel = inputStream.getChannel();
@@ -107,6 +175,27 @@ public class TFLiteFaceBoxesAPIModel implements Classifier {
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
+    return create(assetManager, modelFilename, labelFilename, inputSize, isQuantized, null);
+  }
+
+  /**
+   * Initializes a native TensorFlow session for classifying images.
+   *
+   * @param assetManager The asset manager to be used to load assets.
+   * @param modelFilename The filepath of the model GraphDef protocol buffer.
+   * @param labelFilename The filepath of label file for classes.
+   * @param inputSize The size of image input
+   * @param isQuantized Boolean representing model is quantized or not
+   * @param cacheDir Directory where the prior box table is cached between runs, may be null
+   */
+  public static Classifier create(
+      final AssetManager assetManager,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final File cacheDir)
+      throws IOException {
     final TFLiteFaceBoxesAPIModel d = new TFLiteFaceBoxesAPIModel();
 
     InputStream labelsInput = null;
@@ -116,12 +205,13 @@ public class TFLiteFaceBoxesAPIModel implements Classifier {
     br = new BufferedReader(new InputStreamReader(labelsInput));
     String line;
     while ((line = br.readLine()) != null) {
-      LOGGER.w(line);
       d.labels.add(line);
     }
     br.close();
+    LOGGER.i("Loaded %d labels from %s", d.labels.size(), actualFilename);
 
     d.inputSize = inputSize;
+    d.dataEncoder = new DataEncoder(inputSize, cacheDir);
 
     try {
       d.tfLite = new Interpreter(loadModelFile(assetManager, modelFilename));
@@ -131,21 +221,13 @@ public class TFLiteFaceBoxesAPIModel implements Classifier {
 
     d.isModelQuantized = isQuantized;
     // Pre-allocate buffers.
-    int numBytesPerChannel;
-    if (isQuantized) {
-      numBytesPerChannel = 1; // Quantized
-    } else {
-      numBytesPerChannel = 4; // Floating point
-    }
-    d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
-    d.imgData.order(ByteOrder.nativeOrder());
+    d.preprocessPool = new StripedWorkerPool(PREPROCESS_THREADS, "faceboxes-preprocess");
     d.intValues = new int[d.inputSize * d.inputSize];
 
     d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS][2];
-    d.outputScores = new float[1][NUM_DETECTIONS];
-    d.numDetections = new float[1];
+    d.tensors = (FaceBoxesTensors) d.createTensors();
+    d.detectionBoxes = new float[NUM_DETECTIONS * 4];
+    d.detectionScores = new float[NUM_DETECTIONS];
     return d;
   }
 
@@ -155,92 +237,163 @@ public class TFLiteFaceBoxesAPIModel implements Classifier {
         Trace.beginSection("recognizeImage");
 
         Trace.beginSection("preprocessBitmap");
+        final long preprocessStart = stats.start();
         // Preprocess the image data from 0-255 int to normalized float based
         // on the provided parameters.
         // 图片预处理
         bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
 
-        imgData.rewind();
-        for (int i = 0; i < inputSize; ++i) {
-            for (int j = 0; j < inputSize; ++j) {
-                int pixelValue = intValues[i * inputSize + j];
-
-                if (isModelQuantized) {
-                    // Quantized model  量化模型
-                    imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-                    imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-                    imgData.put((byte) (pixelValue & 0xFF));
-                } else {
-                    // Float model      浮点模型
-                    //imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                    //imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                    //imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                    //imgData.putFloat(((pixelValue >> 16) & 0xFF) * 1.0f / 255.0f);
-                    //imgData.putFloat(((pixelValue >> 8) & 0xFF) * 1.0f / 255.0f);
-                    //imgData.putFloat((pixelValue & 0xFF) * 1.0f / 255.0f);
-                    imgData.putFloat(((pixelValue >> 16) & 0xFF) * 1.0f);
-                    imgData.putFloat(((pixelValue >> 8) & 0xFF) * 1.0f);
-                    imgData.putFloat((pixelValue & 0xFF) * 1.0f);
+        tensors.preprocessor.process(intValues);
+        ModelStats.stop(stats.preprocess, preprocessStart);
+        Trace.endSection(); // preprocessBitmap
+
+        runInference(tensors);
+        final List<Recognition> recognitions = decode(tensors);
+        Trace.endSection(); // "recognizeImage"
+        return recognitions;
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(final ArgbRowSource source) {
+        Trace.beginSection("recognizeImage");
+        preprocess(source, tensors);
+        runInference(tensors);
+        final List<Recognition> recognitions = decode(tensors);
+        Trace.endSection(); // "recognizeImage"
+        return recognitions;
+    }
+
+    @Override
+    public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+        Trace.beginSection("recognizeImages");
+        if (batchTensors == null) {
+            batchTensors = createTensors(MAX_BATCH_SIZE);
+        }
+        final FaceBoxesTensors t = batchTensors;
+        final List<List<Recognition>> results = new ArrayList<>(bitmaps.size());
+        try {
+            for (int start = 0; start < bitmaps.size(); start += MAX_BATCH_SIZE) {
+                final int count = Math.min(MAX_BATCH_SIZE, bitmaps.size() - start);
+
+                Trace.beginSection("preprocessBatch");
+                final long preprocessStart = stats.start();
+                for (int i = 0; i < count; ++i) {
+                    final Bitmap bitmap = bitmaps.get(start + i);
+                    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0,
+                            bitmap.getWidth(), bitmap.getHeight());
+                    t.preprocessor.process(i, intValues);
+                }
+                ModelStats.stop(stats.preprocess, preprocessStart);
+                Trace.endSection(); // preprocessBatch
+
+                // 整批输入只推理一次
+                resizeInterpreter(count);
+                t.bind(count);
+                runInference(t);
+
+                // Every element goes through the same post-processing as a single frame.
+                for (int i = 0; i < count; ++i) {
+                    results.add(decode(
+                            FaceBoxesTensors.element(t.outputLocations, i, t.numBoxes * 4),
+                            FaceBoxesTensors.element(t.outputClasses, i, t.numBoxes * 2)));
                 }
             }
+        } finally {
+            // Leave the interpreter as the single-frame paths expect it.
+            resizeInterpreter(1);
+            Trace.endSection(); // "recognizeImages"
         }
-        Trace.endSection(); // preprocessBitmap
+        return results;
+    }
 
-        // Copy the input data into TensorFlow.   拷贝输入数据到TensorFlow
-        Trace.beginSection("feed");
-        // TODO
-        outputLocations = new float[1][dataEncoder.getBoxesNum()][4];       // 输出坐标
-        outputClasses = new float[1][dataEncoder.getBoxesNum()][2];         // 输出类别
+    /** Resizes the interpreter input to {@code batchSize} images, if it is not already. */
+    private void resizeInterpreter(final int batchSize) {
+        if (interpreterBatchSize != batchSize) {
+            tfLite.resizeInput(0, new int[] {batchSize, inputSize, inputSize, 3});
+            interpreterBatchSize = batchSize;
+        }
+    }
 
-        Object[] inputArray = {imgData};                      // 输入图片
+    @Override
+    public Tensors createTensors() {
+        return createTensors(1);
+    }
 
-        // TODO
-        Map<Integer, Object> outputMap = new HashMap<>();     // 输出信息存放到outputMap，作为参数传给TF
-        outputMap.put(0, outputClasses);
-        outputMap.put(1, outputLocations);
+    private FaceBoxesTensors createTensors(final int batchSize) {
+        final ImagePreprocessor preprocessor;
+        if (isModelQuantized) {
+            preprocessor = ImagePreprocessor.quantized(inputSize, batchSize, preprocessPool);
+        } else {
+            // FaceBoxes is trained on raw 0-255 channel values, no mean/std normalization.
+            preprocessor =
+                    ImagePreprocessor.normalized(inputSize, batchSize, 0.0f, 1.0f, preprocessPool);
+        }
+        return new FaceBoxesTensors(preprocessor, dataEncoder.getBoxesNum());
+    }
 
+    @Override
+    public void preprocess(final ArgbRowSource source, final Tensors tensors) {
+        Trace.beginSection("preprocessSource");
+        final long start = stats.start();
+        ((FaceBoxesTensors) tensors).preprocessor.process(source);
+        ModelStats.stop(stats.preprocess, start);
+        Trace.endSection(); // preprocessSource
+    }
+
+    @Override
+    public void runInference(final Tensors tensors) {
+        final FaceBoxesTensors t = (FaceBoxesTensors) tensors;
+        // Copy the input data into TensorFlow.   拷贝输入数据到TensorFlow
+        Trace.beginSection("feed");
+        // The interpreter writes outputs from the current position onwards.
+        t.outputClassesBuffer.rewind();
+        t.outputLocationsBuffer.rewind();
         Trace.endSection();
 
         // Run the inference call.      模型推理
         Trace.beginSection("run");
-        tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
-
-        float[][][] locPredict = (float[][][])outputMap.get(1);
-        float[][][] classPredict = (float[][][])outputMap.get(0);
-        Map<Integer, Object> output = dataEncoder.decode(locPredict[0], classPredict[0]);
+        final long start = stats.start();
+        tfLite.runForMultipleInputsOutputs(t.inputArray, t.outputMap);
+        ModelStats.stop(stats.inference, start);
         Trace.endSection();
+    }
 
-        float[][] outputBoxes = (float[][]) output.get(0);
-        float[] outputScores = (float[]) output.get(1);
+    @Override
+    public List<Recognition> decode(final Tensors tensors) {
+        final FaceBoxesTensors t = (FaceBoxesTensors) tensors;
+        return decode(t.outputLocations, t.outputClasses);
+    }
 
-        final ArrayList<Recognition> recognitions = new ArrayList<>(NUM_DETECTIONS);
+    /** Decodes the raw outputs of one image into recognitions in input coordinates. */
+    private List<Recognition> decode(final FloatBuffer outputLocations, final FloatBuffer outputClasses) {
+        Trace.beginSection("decode");
+        final long start = stats.start();
+        int total =
+                dataEncoder.decode(outputLocations, outputClasses, detectionBoxes, detectionScores);
+        ModelStats.stop(stats.decode, start);
+        Trace.endSection();
+
+        final ArrayList<Recognition> recognitions = new ArrayList<>(total);
 
-        int total = outputBoxes.length < NUM_DETECTIONS ? outputBoxes.length: NUM_DETECTIONS;
         for (int i = 0; i < total; ++i) {
             // (x1, y1, x2, y2) (left, top, right, bottom)
             final RectF detection =
                     new RectF(
-                            outputBoxes[i][0] * inputSize,
-                            outputBoxes[i][1] * inputSize,
-                            outputBoxes[i][2] * inputSize,
-                            outputBoxes[i][3] * inputSize);
-
-            Log.i(TAG, String.format("filter box: l %f, t %f, r %f, b %f",
-                    outputBoxes[i][0] * inputSize, outputBoxes[i][1] * inputSize,
-                    outputBoxes[i][2] * inputSize, outputBoxes[i][3] * inputSize));
-
-            // SSD Mobilenet V1 Model assumes class 0 is background class
-            // in label file and class labels start from 1 to number_of_classes+1,
-            // while outputClasses correspond to class index from 0 to number_of_classes
-            int labelOffset = 1;
+                            detectionBoxes[i * 4] * inputSize,
+                            detectionBoxes[i * 4 + 1] * inputSize,
+                            detectionBoxes[i * 4 + 2] * inputSize,
+                            detectionBoxes[i * 4 + 3] * inputSize);
+
+            LOGGER.record("filter box: l %f, t %f, r %f, b %f",
+                    detection.left, detection.top, detection.right, detection.bottom);
+
             recognitions.add(
                     new Recognition(
                             "" + i,
-                            labels.get((int) outputClasses[0][i][0] + labelOffset),
-                            outputScores[i],
+                            labels.get(FACE_LABEL_INDEX),
+                            detectionScores[i],
                             detection));
         }
-        Trace.endSection(); // "recognizeImage"
 
         return recognitions;
     //    // TODO
@@ -281,15 +434,27 @@ public class TFLiteFaceBoxesAPIModel implements Classifier {
     }
 
   @Override
-  public void enableStatLogging(final boolean logStats) {}
+  public void enableStatLogging(final boolean logStats) {
+    stats.setEnabled(logStats);
+    // NMS runs inside decode; timed separately since it is the part that grows with the faces.
+    dataEncoder.setNmsLatency(logStats ? stats.histogram("model.nms") : null);
+  }
 
   @Override
   public String getStatString() {
-    return "";
+    return stats.getStatString();
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    if (preprocessPool != null) {
+      preprocessPool.shutdown();
+    }
+    if (tfLite != null) {
+      tfLite.close();
+      tfLite = null;
+    }
+  }
 
   public void setNumThreads(int num_threads) {
     if (tfLite != null) tfLite.setNumThreads(num_threads);
@@ -22,7 +22,9 @@ import android.graphics.RectF;
 import android.os.Trace;
 
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.detection.env.ArgbRowSource;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.StripedWorkerPool;
 
 import java.io.BufferedReader;
 import java.io.FileInputStream;
@@ -31,6 +33,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
@@ -54,35 +57,69 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   private static final float IMAGE_STD = 128.0f;
   // Number of threads in the java app
   private static final int NUM_THREADS = 4;           // 线程个数
+  // Number of threads converting the camera bitmap into the input tensor.
+  private static final int PREPROCESS_THREADS = 2;
   private boolean isModelQuantized;                   // 模型是否量化
   // Config values.
   private int inputSize;
   // Pre-allocated buffers.
   private Vector<String> labels = new Vector<String>();
   private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
-  // contains the location of detected boxes
-  private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the classes of detected boxes
-  private float[][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the scores of detected boxes
-  private float[][] outputScores;
-  // numDetections: array of shape [Batchsize]
-  // contains the number of detected boxes
-  private float[] numDetections;
-
-  private ByteBuffer imgData;
+  // Buffers used by recognizeImage(); pipelined callers bring their own from createTensors().
+  private SsdTensors tensors;
+
+  private StripedWorkerPool preprocessPool;
 
   private Interpreter tfLite;
+  // Stage timings, recorded while stat logging is enabled.
+  private final ModelStats stats = new ModelStats();
+
+  /** Input and output buffers of one in-flight frame, allocated once and reused. */
+  private static final class SsdTensors implements Tensors {
+    final ImagePreprocessor preprocessor;
+    // outputLocations: float32 [Batchsize, NUM_DETECTIONS, 4]
+    // contains the location of detected boxes (top, left, bottom, right)
+    final FloatBuffer outputLocations;
+    // outputClasses: float32 [Batchsize, NUM_DETECTIONS]
+    // contains the classes of detected boxes
+    final FloatBuffer outputClasses;
+    // outputScores: float32 [Batchsize, NUM_DETECTIONS]
+    // contains the scores of detected boxes
+    final FloatBuffer outputScores;
+    // numDetections: float32 [Batchsize]
+    // contains the number of detected boxes
+    final FloatBuffer numDetections;
+    final ByteBuffer[] outputBuffers;
+    final Object[] inputArray;
+    final Map<Integer, Object> outputMap = new HashMap<>();
+
+    SsdTensors(final ImagePreprocessor preprocessor) {
+      this.preprocessor = preprocessor;
+      outputBuffers =
+          new ByteBuffer[] {
+            allocateOutput(NUM_DETECTIONS * 4),
+            allocateOutput(NUM_DETECTIONS),
+            allocateOutput(NUM_DETECTIONS),
+            allocateOutput(1)
+          };
+      outputLocations = outputBuffers[0].asFloatBuffer();
+      outputClasses = outputBuffers[1].asFloatBuffer();
+      outputScores = outputBuffers[2].asFloatBuffer();
+      numDetections = outputBuffers[3].asFloatBuffer();
+
+      inputArray = new Object[] {preprocessor.getInput()};
+      for (int i = 0; i < outputBuffers.length; ++i) {
+        outputMap.put(i, outputBuffers[i]);
+      }
+    }
+  }
 
   private TFLiteObjectDetectionAPIModel() {}
 
   /** Memory-map the model file in Assets. */
   private static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
       throws IOException {
-    LOGGER.i("[loadModelFile] modelFilename " + modelFilename);
+    LOGGER.i("[loadModelFile] modelFilename %s", modelFilename);
     AssetFileDescriptor fileDescriptor = assets.openFd(modelFilename);
     FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
     FileChannel fileChannel = inputStream.getChannel();
@@ -116,10 +153,10 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     br = new BufferedReader(new InputStreamReader(labelsInput));
     String line;
     while ((line = br.readLine()) != null) {
-      LOGGER.w(line);
       d.labels.add(line);
     }
     br.close();
+    LOGGER.i("Loaded %d labels from %s", d.labels.size(), actualFilename);
 
     d.inputSize = inputSize;
 
@@ -131,84 +168,121 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
 
     d.isModelQuantized = isQuantized;
     // Pre-allocate buffers.
-    int numBytesPerChannel;
-    if (isQuantized) {
-      numBytesPerChannel = 1; // Quantized
-    } else {
-      numBytesPerChannel = 4; // Floating point
-    }
-    d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
-    d.imgData.order(ByteOrder.nativeOrder());
+    d.preprocessPool = new StripedWorkerPool(PREPROCESS_THREADS, "ssd-preprocess");
     d.intValues = new int[d.inputSize * d.inputSize];
 
     d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS];
-    d.outputScores = new float[1][NUM_DETECTIONS];
-    d.numDetections = new float[1];
+    d.tensors = (SsdTensors) d.createTensors();
     return d;
   }
 
+  /** Allocates a direct, native-ordered buffer for a float32 output tensor. */
+  private static ByteBuffer allocateOutput(final int numFloats) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(numFloats * 4);
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
   @Override
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
 
     Trace.beginSection("preprocessBitmap");
+    final long preprocessStart = stats.start();
     // Preprocess the image data from 0-255 int to normalized float based
     // on the provided parameters.
     // 图片预处理
     bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
 
-    imgData.rewind();
-    for (int i = 0; i < inputSize; ++i) {
-      for (int j = 0; j < inputSize; ++j) {
-        int pixelValue = intValues[i * inputSize + j];
-        if (isModelQuantized) {
-          // Quantized model  量化模型
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else {
-          // Float model      浮点模型
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-        }
-      }
-    }
+    tensors.preprocessor.process(intValues);
+    ModelStats.stop(stats.preprocess, preprocessStart);
     Trace.endSection(); // preprocessBitmap
 
+    runInference(tensors);
+    final List<Recognition> recognitions = decode(tensors);
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final ArgbRowSource source) {
+    Trace.beginSection("recognizeImage");
+    preprocess(source, tensors);
+    runInference(tensors);
+    final List<Recognition> recognitions = decode(tensors);
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
+
+  /**
+   * The TFLite_Detection_PostProcess op at the end of the SSD graph only supports batch 1, so the
+   * images run one invoke each, sharing the single-frame buffers.
+   */
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    Trace.beginSection("recognizeImages");
+    final List<List<Recognition>> results = new ArrayList<>(bitmaps.size());
+    for (final Bitmap bitmap : bitmaps) {
+      results.add(recognizeImage(bitmap));
+    }
+    Trace.endSection(); // "recognizeImages"
+    return results;
+  }
+
+  @Override
+  public Tensors createTensors() {
+    final ImagePreprocessor preprocessor;
+    if (isModelQuantized) {
+      preprocessor = ImagePreprocessor.quantized(inputSize, preprocessPool);
+    } else {
+      preprocessor = ImagePreprocessor.normalized(inputSize, IMAGE_MEAN, IMAGE_STD, preprocessPool);
+    }
+    return new SsdTensors(preprocessor);
+  }
+
+  @Override
+  public void preprocess(final ArgbRowSource source, final Tensors tensors) {
+    Trace.beginSection("preprocessSource");
+    final long start = stats.start();
+    ((SsdTensors) tensors).preprocessor.process(source);
+    ModelStats.stop(stats.preprocess, start);
+    Trace.endSection(); // preprocessSource
+  }
+
+  @Override
+  public void runInference(final Tensors tensors) {
+    final SsdTensors t = (SsdTensors) tensors;
     // Copy the input data into TensorFlow.   拷贝输入数据到TensorFlow
     Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];    // 输出坐标
-    outputClasses = new float[1][NUM_DETECTIONS];         // 输出类别
-    outputScores = new float[1][NUM_DETECTIONS];          // 输出评分
-    numDetections = new float[1];                         // 检测框个数
-
-    Object[] inputArray = {imgData};                      // 输入图片
-    Map<Integer, Object> outputMap = new HashMap<>();     // 输出信息存放到outputMap，作为参数传给TF
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
+    // The interpreter writes outputs from the current position onwards.
+    for (final ByteBuffer outputBuffer : t.outputBuffers) {
+      outputBuffer.rewind();
+    }
     Trace.endSection();
 
     // Run the inference call.      模型推理
     Trace.beginSection("run");
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    final long start = stats.start();
+    tfLite.runForMultipleInputsOutputs(t.inputArray, t.outputMap);
+    ModelStats.stop(stats.inference, start);
     Trace.endSection();
+  }
 
+  @Override
+  public List<Recognition> decode(final Tensors tensors) {
+    final SsdTensors t = (SsdTensors) tensors;
+    final long start = stats.start();
     // Show the best detections.
     // after scaling them back to the input size.
     final ArrayList<Recognition> recognitions = new ArrayList<>(NUM_DETECTIONS);
     for (int i = 0; i < NUM_DETECTIONS; ++i) {
       final RectF detection =
           new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);
+              t.outputLocations.get(i * 4 + 1) * inputSize,
+              t.outputLocations.get(i * 4) * inputSize,
+              t.outputLocations.get(i * 4 + 3) * inputSize,
+              t.outputLocations.get(i * 4 + 2) * inputSize);
       // SSD Mobilenet V1 Model assumes class 0 is background class
       // in label file and class labels start from 1 to number_of_classes+1,
       // while outputClasses correspond to class index from 0 to number_of_classes
@@ -216,24 +290,34 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
       recognitions.add(
           new Recognition(
               "" + i,
-              labels.get((int) outputClasses[0][i] + labelOffset),
-              outputScores[0][i],
+              labels.get((int) t.outputClasses.get(i) + labelOffset),
+              t.outputScores.get(i),
               detection));
     }
-    Trace.endSection(); // "recognizeImage"
+    ModelStats.stop(stats.decode, start);
     return recognitions;
   }
 
   @Override
-  public void enableStatLogging(final boolean logStats) {}
+  public void enableStatLogging(final boolean logStats) {
+    stats.setEnabled(logStats);
+  }
 
   @Override
   public String getStatString() {
-    return "";
+    return stats.getStatString();
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    if (preprocessPool != null) {
+      preprocessPool.shutdown();
+    }
+    if (tfLite != null) {
+      tfLite.close();
+      tfLite = null;
+    }
+  }
 
   public void setNumThreads(int num_threads) {
     if (tfLite != null) tfLite.setNumThreads(num_threads);
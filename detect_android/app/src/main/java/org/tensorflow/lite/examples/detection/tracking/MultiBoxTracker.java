@@ -28,17 +28,33 @@ import android.text.TextUtils;
 import android.util.Pair;
 import android.util.TypedValue;
 import android.widget.Toast;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
 import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
 
 /**
  * A tracker wrapping ObjectTracker that also handles non-max suppression and matching existing
  * objects to new detections.
+ *
+ * <p>When the native tracking library is missing, a {@link BoxTracker} takes over: by default a
+ * {@link KalmanIouTracker}, which matches detections to boxes by IoU and moves the boxes on their
+ * own between detections.
+ *
+ * <p>{@link #onFrame} and {@link #trackResults} update the tracking state under the tracker's
+ * lock and then publish an immutable {@link Snapshot} of the boxes to draw. {@link #draw} only
+ * reads the latest snapshot, so the UI thread never waits for a detection to be matched and never
+ * calls into the native tracker. {@link #drawDebug} is the exception: its keypoint and history
+ * overlay is drawn by {@link ObjectTracker#drawDebug}, which takes the ObjectTracker's lock and
+ * calls into the native library, so with debug drawing on the UI thread can wait on a frame.
  */
 public class MultiBoxTracker {
   private static final float TEXT_SIZE_DIP = 18;
@@ -51,6 +67,16 @@ public class MultiBoxTracker {
   private static final float MARGINAL_CORRELATION = 0.75f;      // 如果相关度低于此级别，则允许用新结果替换跟踪框。
   // Consider object to be lost if correlation falls below this threshold.
   private static final float MIN_CORRELATION = 0.3f;            // 如果相关性低于此阈值，则考虑对象丢失。
+  // Most objects tracked at once. Past the palette below, colors are generated.
+  private static final int MAX_TRACKED_OBJECTS = 64;
+  // Cells of the index over the tracked boxes, across and down the frame.
+  private static final int INDEX_COLUMNS = 8;
+  private static final int INDEX_ROWS = 6;
+  // Settings of the Java tracker used without the native library. Ages are in frames.
+  private static final int MAX_TRACKER_DETECTIONS = MAX_TRACKED_OBJECTS;
+  private static final float TRACKER_MIN_IOU = 0.3f;
+  private static final long TRACKER_MAX_AGE = 30;
+  private static final float TRACKER_CONFIDENCE_DECAY = 0.97f;
   private static final int[] COLORS = {
     Color.BLUE,
     Color.RED,
@@ -72,11 +98,38 @@ public class MultiBoxTracker {
   private final Logger logger = new Logger();
   private final Queue<Integer> availableColors = new LinkedList<Integer>();
   private final List<TrackedRecognition> trackedObjects = new LinkedList<TrackedRecognition>();
+  // Colors generated so far once the palette ran out.
+  private int generatedColors;
+  // Tracked boxes as of the last frame, for the overlap checks of new detections. Entry i of
+  // trackedIndex is indexedObjects.get(i).
+  private SpatialGrid trackedIndex;
+  private final List<TrackedRecognition> indexedObjects = new ArrayList<TrackedRecognition>();
   private final Paint boxPaint = new Paint();
   private final float textSizePx;
   private final BorderedText borderedText;
   public ObjectTracker objectTracker;
-  private Matrix frameToCanvasMatrix;
+  // Stands in for objectTracker when the native library is missing.
+  private final BoxTracker boxTracker;
+  // Detections handed to boxTracker, guarded by this.
+  private final float[] trackerBoxes = new float[4 * MAX_TRACKER_DETECTIONS];
+  private final float[] trackerScores = new float[MAX_TRACKER_DETECTIONS];
+  private final Recognition[] trackerDetections = new Recognition[MAX_TRACKER_DETECTIONS];
+  private final float[] trackBox = new float[4];
+  // Positions and correlations of the native tracker's objects, see getTrackedObjectStates().
+  private float[] trackedStates;
+  // Latest state for the renderer, swapped in whole by the tracking side.
+  private final AtomicReference<Snapshot> published = new AtomicReference<Snapshot>();
+  // Computed by draw() for the current canvas size and never modified once assigned.
+  private volatile Matrix frameToCanvasMatrix;
+  // Used by the UI thread only.
+  private final RectF drawRect = new RectF();
+  private final Paint debugTextPaint = new Paint();
+  private final Paint debugBoxPaint = new Paint();
+  private int canvasWidth;
+  private int canvasHeight;
+  private Snapshot matrixSnapshot;
+  // Copy of screenRects for the snapshots, guarded by this.
+  private DebugRect[] debugRects = new DebugRect[0];
   private int frameWidth;
   private int frameHeight;
   private int sensorOrientation;
@@ -84,7 +137,20 @@ public class MultiBoxTracker {
   private boolean initialized = false;
 
   public MultiBoxTracker(final Context context) {
+    this(
+        context,
+        new KalmanIouTracker(
+            MAX_TRACKED_OBJECTS,
+            MAX_TRACKER_DETECTIONS,
+            TRACKER_MIN_IOU,
+            TRACKER_MAX_AGE,
+            TRACKER_CONFIDENCE_DECAY));
+  }
+
+  /** @param boxTracker Used instead of the native tracker when its library is missing. */
+  public MultiBoxTracker(final Context context, final BoxTracker boxTracker) {
     this.context = context;
+    this.boxTracker = boxTracker;
     for (final int color : COLORS) {
       availableColors.add(color);
     }
@@ -100,109 +166,196 @@ public class MultiBoxTracker {
         TypedValue.applyDimension(
             TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, context.getResources().getDisplayMetrics());
     borderedText = new BorderedText(textSizePx);
+
+    debugTextPaint.setColor(Color.WHITE);
+    debugTextPaint.setTextSize(60.0f);
+    debugBoxPaint.setColor(Color.RED);
+    debugBoxPaint.setAlpha(200);
+    debugBoxPaint.setStyle(Style.STROKE);
   }
 
   private Matrix getFrameToCanvasMatrix() {
     return frameToCanvasMatrix;
   }
 
-  public synchronized void drawDebug(final Canvas canvas) {
-    final Paint textPaint = new Paint();
-    textPaint.setColor(Color.WHITE);
-    textPaint.setTextSize(60.0f);
-
-    final Paint boxPaint = new Paint();
-    boxPaint.setColor(Color.RED);
-    boxPaint.setAlpha(200);
-    boxPaint.setStyle(Style.STROKE);
+  public void drawDebug(final Canvas canvas) {
+    final Snapshot snapshot = published.get();
+    if (snapshot == null) {
+      return;
+    }
 
-    for (final Pair<Float, RectF> detection : screenRects) {
-      final RectF rect = detection.second;
-      canvas.drawRect(rect, boxPaint);
-      canvas.drawText("" + detection.first, rect.left, rect.top, textPaint);
-      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), "" + detection.first);
+    for (final DebugRect detection : snapshot.screenRects) {
+      final RectF rect = detection.rect;
+      canvas.drawRect(rect, debugBoxPaint);
+      canvas.drawText(detection.label, rect.left, rect.top, debugTextPaint);
+      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), detection.label);
     }
 
-    if (objectTracker == null) {
+    if (snapshot.objectTracker == null) {
       return;
     }
 
     // Draw correlations.
-    for (final TrackedRecognition recognition : trackedObjects) {
-      final ObjectTracker.TrackedObject trackedObject = recognition.trackedObject;
-
-      final RectF trackedPos = trackedObject.getTrackedPositionInPreviewFrame();
-
-      if (getFrameToCanvasMatrix().mapRect(trackedPos)) {
-        final String labelString = String.format("%.2f", trackedObject.getCurrentCorrelation());
-        borderedText.drawText(canvas, trackedPos.right, trackedPos.bottom, labelString);
+    final Matrix matrix = getFrameToCanvasMatrix();
+    if (matrix == null) {
+      return;
+    }
+    for (final TrackedBox box : snapshot.boxes) {
+      drawRect.set(box.location);
+      if (matrix.mapRect(drawRect)) {
+        final String labelString = String.format("%.2f", box.correlation);
+        borderedText.drawText(canvas, drawRect.right, drawRect.bottom, labelString);
       }
     }
 
-    final Matrix matrix = getFrameToCanvasMatrix();
-    objectTracker.drawDebug(canvas, matrix);
+    // Locks the ObjectTracker and calls into the native library, unlike the rest of drawing.
+    snapshot.objectTracker.drawDebug(canvas, matrix);
   }
 
   public synchronized void trackResults(final List<Recognition> results, final byte[] frame, final long timestamp) {
     logger.i("Processing %d results from %d", results.size(), timestamp);
     processResults(timestamp, results, frame);
+    updateDebugRects();
+    publish();
+  }
+
+  /** Returns the number of objects tracked as of the last frame. */
+  public int getTrackedCount() {
+    final Snapshot snapshot = published.get();
+    return snapshot != null ? snapshot.boxes.length : 0;
+  }
+
+  /**
+   * Returns the lowest correlation among the tracked objects as of the last frame, 1 if nothing is
+   * tracked. Without the native tracker this is the lowest {@link BoxTracker#getTrackConfidence}.
+   */
+  public float getLowestCorrelation() {
+    final Snapshot snapshot = published.get();
+    float lowest = 1.0f;
+    if (snapshot != null) {
+      for (final TrackedBox box : snapshot.boxes) {
+        lowest = Math.min(lowest, box.correlation);
+      }
+    }
+    return lowest;
+  }
+
+  /**
+   * Unflags the cells of {@code grid} covered by a tracked object, so only motion the tracker does
+   * not account for is left.
+   *
+   * @return The number of cells still flagged.
+   */
+  public int clearTrackedMotion(final MotionGrid grid) {
+    final Snapshot snapshot = published.get();
+    if (snapshot != null) {
+      for (final TrackedBox box : snapshot.boxes) {
+        final RectF location = box.location;
+        grid.clear(location.left, location.top, location.right, location.bottom);
+      }
+    }
+    return grid.getChangedCount();
+  }
+
+  public void draw(final Canvas canvas) {
+    final Snapshot snapshot = published.get();
+    if (snapshot == null) {
+      return;
+    }
+    final Matrix matrix = updateFrameToCanvasMatrix(canvas, snapshot);
+    for (final TrackedBox box : snapshot.boxes) {
+      drawRect.set(box.location);
+      matrix.mapRect(drawRect);
+      boxPaint.setColor(box.color);
+
+      final float cornerSize = 1.0f;
+      canvas.drawRoundRect(drawRect, cornerSize, cornerSize, boxPaint);
+      borderedText.drawText(canvas, drawRect.left + cornerSize, drawRect.top, box.label, boxPaint);
+    }
   }
 
-  public synchronized void draw(final Canvas canvas) {
-    final boolean rotated = sensorOrientation % 180 == 90;
+  // Only rebuilds the matrix when the canvas or the frame geometry changes.
+  private Matrix updateFrameToCanvasMatrix(final Canvas canvas, final Snapshot snapshot) {
+    final Matrix current = frameToCanvasMatrix;
+    if (current != null
+        && canvas.getWidth() == canvasWidth
+        && canvas.getHeight() == canvasHeight
+        && snapshot.sameGeometry(matrixSnapshot)) {
+      return current;
+    }
+    canvasWidth = canvas.getWidth();
+    canvasHeight = canvas.getHeight();
+    matrixSnapshot = snapshot;
+
+    final int frameWidth = snapshot.frameWidth;
+    final int frameHeight = snapshot.frameHeight;
+    final boolean rotated = snapshot.sensorOrientation % 180 == 90;
     final float multiplier =
         Math.min(
-            canvas.getHeight() / (float) (rotated ? frameWidth : frameHeight),
-            canvas.getWidth() / (float) (rotated ? frameHeight : frameWidth));
-    frameToCanvasMatrix =
+            canvasHeight / (float) (rotated ? frameWidth : frameHeight),
+            canvasWidth / (float) (rotated ? frameHeight : frameWidth));
+    final Matrix matrix =
         ImageUtils.getTransformationMatrix(
             frameWidth,
             frameHeight,
             (int) (multiplier * (rotated ? frameHeight : frameWidth)),
             (int) (multiplier * (rotated ? frameWidth : frameHeight)),
-            sensorOrientation,
+            snapshot.sensorOrientation,
             false);
+    frameToCanvasMatrix = matrix;
+    return matrix;
+  }
+
+  // Copies what the renderer needs out of the live tracking state. Called with the lock held.
+  private void publish() {
+    final TrackedBox[] boxes = new TrackedBox[trackedObjects.size()];
+    int i = 0;
     for (final TrackedRecognition recognition : trackedObjects) {
-      final RectF trackedPos =
-          (objectTracker != null)
-              ? recognition.trackedObject.getTrackedPositionInPreviewFrame()
-              : new RectF(recognition.location);
-
-      getFrameToCanvasMatrix().mapRect(trackedPos);
-      boxPaint.setColor(recognition.color);
-
-      float cornerSize = Math.min(trackedPos.width(), trackedPos.height()) / 8.0f;
-      cornerSize = 1.0f;
-      canvas.drawRoundRect(trackedPos, cornerSize, cornerSize, boxPaint);
-
-      final String labelString =
-          !TextUtils.isEmpty(recognition.title)
-              ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence))
-              : String.format("%.2f", (100 * recognition.detectionConfidence));
-      //            borderedText.drawText(canvas, trackedPos.left + cornerSize, trackedPos.top,
-      // labelString);
-      borderedText.drawText(
-          canvas, trackedPos.left + cornerSize, trackedPos.top, labelString + "%", boxPaint);
+      final RectF location;
+      final float correlation;
+      if (objectTracker != null) {
+        location = recognition.position;
+        correlation = recognition.correlation;
+      } else {
+        location = new RectF(recognition.location);
+        correlation = recognition.trackConfidence;
+      }
+      boxes[i++] = new TrackedBox(location, recognition.color, recognition.label, correlation);
     }
+
+    published.set(
+        new Snapshot(
+            frameWidth, frameHeight, sensorOrientation, objectTracker, boxes, debugRects));
   }
 
+  // The raw detections only change with new results, not with every frame.
+  private void updateDebugRects() {
+    debugRects = new DebugRect[screenRects.size()];
+    int i = 0;
+    for (final Pair<Float, RectF> detection : screenRects) {
+      debugRects[i++] = new DebugRect(new RectF(detection.second), "" + detection.first);
+    }
+  }
+
+  /**
+   * Moves the tracked boxes to {@code frame}. The luminance is only copied out of the camera's
+   * buffer when the native tracker needs it as an array.
+   */
   public synchronized void onFrame(
-      final int w,
-      final int h,
-      final int rowStride,
-      final int sensorOrientation,
-      final byte[] frame,
-      final long timestamp) {
+      final YuvFrame frame, final int sensorOrientation, final long timestamp) {
+    final int w = frame.getWidth();
+    final int h = frame.getHeight();
 
     // 第一次会进行objectTracker初始化
     if (objectTracker == null && !initialized) {
       ObjectTracker.clearInstance();
 
       logger.i("[CYL][onFrame] Initializing ObjectTracker: %d x %d", w, h);
-      objectTracker = ObjectTracker.getInstance(w, h, rowStride, true);
+      objectTracker = ObjectTracker.getInstance(w, h, frame.getYRowStride(), true);
       frameWidth = w;
       frameHeight = h;
       this.sensorOrientation = sensorOrientation;
+      trackedIndex = new SpatialGrid(w, h, INDEX_COLUMNS, INDEX_ROWS);
       initialized = true;
 
       if (objectTracker == null) {
@@ -214,25 +367,74 @@ public class MultiBoxTracker {
     }
 
     if (objectTracker == null) {
+      // The Java tracker moves the boxes on their own between detections.
+      boxTracker.predict(timestamp);
+      syncBoxTracks(0);
+      publish();
       return;
     }
 
-    objectTracker.nextFrame(frame, null, timestamp, null, true);
+    objectTracker.nextFrame(frame.getLuminance(), null, timestamp, null, true);
 
     // 清除任何不值得再追踪的物体。
-    // Clean up any objects not worth tracking any more.
-    final LinkedList<TrackedRecognition> copyList = new LinkedList<TrackedRecognition>(trackedObjects);
-    for (final TrackedRecognition recognition : copyList) {
+    // Clean up any objects not worth tracking any more. The positions and correlations are fetched
+    // for all objects at once and are all that is used of the native tracker until the next frame.
+    trackedStates = objectTracker.getTrackedObjectStates(trackedStates);
+    final Iterator<TrackedRecognition> iterator = trackedObjects.iterator();
+    while (iterator.hasNext()) {
+      final TrackedRecognition recognition = iterator.next();
       final ObjectTracker.TrackedObject trackedObject = recognition.trackedObject;
-      final float correlation = trackedObject.getCurrentCorrelation();
+      final int state = ObjectTracker.STATE_SIZE * trackedObject.getHandle();
+      final float correlation = trackedStates[state + 4];
       if (correlation < MIN_CORRELATION) {
         logger.v("[CYL] Removing tracked object %s because NCC is %.2f", trackedObject, correlation);
         trackedObject.stopTracking();
-        trackedObjects.remove(recognition);
+        iterator.remove();
 
         availableColors.add(recognition.color);
+        continue;
       }
+      recognition.correlation = correlation;
+      recognition.position =
+          new RectF(
+              trackedStates[state],
+              trackedStates[state + 1],
+              trackedStates[state + 2],
+              trackedStates[state + 3]);
     }
+    rebuildIndex();
+
+    // The tracked positions move with every frame.
+    publish();
+  }
+
+  private void rebuildIndex() {
+    trackedIndex.clear();
+    indexedObjects.clear();
+    for (final TrackedRecognition recognition : trackedObjects) {
+      addToIndex(recognition);
+    }
+  }
+
+  private void addToIndex(final TrackedRecognition recognition) {
+    final RectF position = recognition.position;
+    if (position == null) {
+      recognition.indexEntry = -1;
+      return;
+    }
+    recognition.indexEntry =
+        trackedIndex.add(position.left, position.top, position.right, position.bottom);
+    indexedObjects.add(recognition);
+  }
+
+  // Uses the palette first, then colors spread around the hue circle by the golden angle.
+  private int nextColor() {
+    final Integer color = availableColors.poll();
+    if (color != null) {
+      return color;
+    }
+    final float hue = (generatedColors++ * 137.508f) % 360.0f;
+    return Color.HSVToColor(new float[] {hue, 0.6f, 1.0f});
   }
 
   private void processResults(final long timestamp, final List<Recognition> results, final byte[] originalFrame) {
@@ -263,26 +465,30 @@ public class MultiBoxTracker {
       rectsToTrack.add(new Pair<Float, Recognition>(result.getConfidence(), result));
     }
 
-    if (rectsToTrack.isEmpty()) {
-      logger.i("Nothing to track, aborting.");
-      return;
-    }
-
     if (objectTracker == null) {
-      trackedObjects.clear();
+      // Even an empty result counts: the tracks it does not confirm age out.
+      int count = 0;
       for (final Pair<Float, Recognition> potential : rectsToTrack) {
-        final TrackedRecognition trackedRecognition = new TrackedRecognition();
-        trackedRecognition.detectionConfidence = potential.first;
-        trackedRecognition.location = new RectF(potential.second.getLocation());
-        trackedRecognition.trackedObject = null;
-        trackedRecognition.title = potential.second.getTitle();
-        trackedRecognition.color = COLORS[trackedObjects.size()];
-        trackedObjects.add(trackedRecognition);
-
-        if (trackedObjects.size() >= COLORS.length) {
+        if (count == MAX_TRACKER_DETECTIONS) {
           break;
         }
+        final RectF location = potential.second.getLocation();
+        trackerBoxes[4 * count] = location.left;
+        trackerBoxes[4 * count + 1] = location.top;
+        trackerBoxes[4 * count + 2] = location.right;
+        trackerBoxes[4 * count + 3] = location.bottom;
+        trackerScores[count] = potential.first;
+        trackerDetections[count] = potential.second;
+        ++count;
       }
+      boxTracker.update(trackerBoxes, trackerScores, count, timestamp);
+      syncBoxTracks(count);
+      Arrays.fill(trackerDetections, 0, count, null);
+      return;
+    }
+
+    if (rectsToTrack.isEmpty()) {
+      logger.i("Nothing to track, aborting.");
       return;
     }
 
@@ -299,8 +505,9 @@ public class MultiBoxTracker {
 
     // 获取相关度
     final float potentialCorrelation = potentialObject.getCurrentCorrelation();
+    final RectF b = potentialObject.getTrackedPositionInPreviewFrame();
     logger.v("Tracked object went from %s to %s with correlation %.2f",
-        potential.second, potentialObject.getTrackedPositionInPreviewFrame(), potentialCorrelation);
+        potential.second, b, potentialCorrelation);
 
     // 相关度是否过低
     if (potentialCorrelation < MARGINAL_CORRELATION) {
@@ -321,13 +528,14 @@ public class MultiBoxTracker {
     // 查找将被此对象覆盖的交集或将阻止放置此交集的交集。
     // Look for intersections that will be overridden by this object or an intersection that would
     // prevent this one from being placed.
-    for (final TrackedRecognition trackedRecognition : trackedObjects) {
-      final RectF a = trackedRecognition.trackedObject.getTrackedPositionInPreviewFrame();
-      final RectF b = potentialObject.getTrackedPositionInPreviewFrame();
-      final RectF intersection = new RectF();
-      final boolean intersects = intersection.setIntersect(a, b);
-
-      final float intersectArea = intersection.width() * intersection.height();
+    // Only the tracked boxes that overlap this one at all are looked at.
+    final int overlapping = trackedIndex.query(b.left, b.top, b.right, b.bottom);
+    for (int i = 0; i < overlapping; ++i) {
+      final TrackedRecognition trackedRecognition = indexedObjects.get(trackedIndex.getResult(i));
+      final RectF a = trackedRecognition.position;
+      final float intersectArea =
+          (Math.min(a.right, b.right) - Math.max(a.left, b.left))
+              * (Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top));
       final float totalArea = a.width() * a.height() + b.width() * b.height() - intersectArea;
       final float intersectOverUnion = intersectArea / totalArea;
 
@@ -335,9 +543,9 @@ public class MultiBoxTracker {
       // If there is an intersection with this currently tracked box above the maximum overlap
       // percentage allowed, either the new recognition needs to be dismissed or the old
       // recognition needs to be removed and possibly replaced with the new one.
-      if (intersects && intersectOverUnion > MAX_OVERLAP) {
+      if (intersectOverUnion > MAX_OVERLAP) {
         if (potential.first < trackedRecognition.detectionConfidence
-            && trackedRecognition.trackedObject.getCurrentCorrelation() > MARGINAL_CORRELATION) {
+            && trackedRecognition.correlation > MARGINAL_CORRELATION) {
           // If track for the existing object is still going strong and the detection score was
           // good, reject this new object.
           potentialObject.stopTracking();
@@ -360,7 +568,7 @@ public class MultiBoxTracker {
     // If we're already tracking the max object and no intersections were found to bump off,
     // pick the worst current tracked object to remove, if it's also worse than this candidate
     // object.
-    if (availableColors.isEmpty() && removeList.isEmpty()) {
+    if (trackedObjects.size() >= MAX_TRACKED_OBJECTS && removeList.isEmpty()) {
       for (final TrackedRecognition candidate : trackedObjects) {
         if (candidate.detectionConfidence < potential.first) {
           if (recogToReplace == null
@@ -384,15 +592,18 @@ public class MultiBoxTracker {
       logger.v("Removing tracked object %s with detection confidence %.2f, correlation %.2f",
           trackedRecognition.trackedObject,
           trackedRecognition.detectionConfidence,
-          trackedRecognition.trackedObject.getCurrentCorrelation());
+          trackedRecognition.correlation);
       trackedRecognition.trackedObject.stopTracking();
       trackedObjects.remove(trackedRecognition);
+      if (trackedRecognition.indexEntry >= 0) {
+        trackedIndex.remove(trackedRecognition.indexEntry);
+      }
       if (trackedRecognition != recogToReplace) {
         availableColors.add(trackedRecognition.color);
       }
     }
 
-    if (recogToReplace == null && availableColors.isEmpty()) {
+    if (recogToReplace == null && trackedObjects.size() >= MAX_TRACKED_OBJECTS) {
       logger.e("No room to track this object, aborting.");
       potentialObject.stopTracking();
       return;
@@ -409,18 +620,154 @@ public class MultiBoxTracker {
     trackedRecognition.detectionConfidence = potential.first;
     trackedRecognition.trackedObject = potentialObject;
     trackedRecognition.title = potential.second.getTitle();
+    trackedRecognition.label = createLabel(trackedRecognition);
 
     // 在从颜色队列中提取颜色之前，请使用替换对象中的颜色。
     // Use the color from a replaced object before taking one from the color queue.
-    trackedRecognition.color = recogToReplace != null ? recogToReplace.color : availableColors.poll();
+    trackedRecognition.color = recogToReplace != null ? recogToReplace.color : nextColor();
+    trackedRecognition.position = b;
+    trackedRecognition.correlation = potentialCorrelation;
     trackedObjects.add(trackedRecognition);
+    addToIndex(trackedRecognition);
+  }
+
+  // Brings trackedObjects in line with the tracks of boxTracker. detectionCount is the number of
+  // detections of the update just made, 0 after a plain frame.
+  private void syncBoxTracks(final int detectionCount) {
+    final Iterator<TrackedRecognition> iterator = trackedObjects.iterator();
+    while (iterator.hasNext()) {
+      final TrackedRecognition recognition = iterator.next();
+      if (indexOfTrack(recognition.trackId) < 0) {
+        iterator.remove();
+        availableColors.add(recognition.color);
+      }
+    }
+
+    final int trackCount = boxTracker.getTrackCount();
+    for (int track = 0; track < trackCount; ++track) {
+      final int trackId = boxTracker.getTrackId(track);
+      final int detection = detectionCount > 0 ? boxTracker.getMatchedDetection(track) : -1;
+      TrackedRecognition recognition = findTrack(trackId);
+      if (recognition == null) {
+        if (detection < 0) {
+          continue;
+        }
+        recognition = new TrackedRecognition();
+        recognition.trackId = trackId;
+        recognition.location = new RectF();
+        recognition.color = nextColor();
+        trackedObjects.add(recognition);
+      }
+      if (detection >= 0) {
+        recognition.detectionConfidence = trackerScores[detection];
+        recognition.title = trackerDetections[detection].getTitle();
+        recognition.label = createLabel(recognition);
+      }
+      boxTracker.getTrackBox(track, trackBox, 0);
+      recognition.location.set(trackBox[0], trackBox[1], trackBox[2], trackBox[3]);
+      recognition.trackConfidence = boxTracker.getTrackConfidence(track);
+    }
+  }
+
+  private int indexOfTrack(final int trackId) {
+    final int trackCount = boxTracker.getTrackCount();
+    for (int track = 0; track < trackCount; ++track) {
+      if (boxTracker.getTrackId(track) == trackId) {
+        return track;
+      }
+    }
+    return -1;
+  }
+
+  private TrackedRecognition findTrack(final int trackId) {
+    for (final TrackedRecognition recognition : trackedObjects) {
+      if (recognition.trackId == trackId) {
+        return recognition;
+      }
+    }
+    return null;
+  }
+
+  private static String createLabel(final TrackedRecognition recognition) {
+    final String labelString =
+        !TextUtils.isEmpty(recognition.title)
+            ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence))
+            : String.format("%.2f", (100 * recognition.detectionConfidence));
+    return labelString + "%";
   }
 
   private static class TrackedRecognition {
     ObjectTracker.TrackedObject trackedObject;
+    // Read from trackedObject once per frame, never modified.
+    RectF position;
+    float correlation;
+    // Entry in trackedIndex, -1 if not indexed.
+    int indexEntry = -1;
+    // Set instead of trackedObject when boxTracker does the tracking.
+    int trackId;
+    float trackConfidence;
     RectF location;
     float detectionConfidence;
     int color;
     String title;
+    String label;
+  }
+
+  /** One box to draw, in frame coordinates. */
+  private static final class TrackedBox {
+    final RectF location;
+    final int color;
+    final String label;
+    final float correlation;
+
+    TrackedBox(final RectF location, final int color, final String label, final float correlation) {
+      this.location = location;
+      this.color = color;
+      this.label = label;
+      this.correlation = correlation;
+    }
+  }
+
+  /** A raw detection in screen coordinates, for the debug overlay. */
+  private static final class DebugRect {
+    final RectF rect;
+    final String label;
+
+    DebugRect(final RectF rect, final String label) {
+      this.rect = rect;
+      this.label = label;
+    }
+  }
+
+  /** Everything the renderer reads. Never modified after it is published. */
+  private static final class Snapshot {
+    final int frameWidth;
+    final int frameHeight;
+    final int sensorOrientation;
+    final ObjectTracker objectTracker;
+    final TrackedBox[] boxes;
+    final DebugRect[] screenRects;
+
+    Snapshot(
+        final int frameWidth,
+        final int frameHeight,
+        final int sensorOrientation,
+        final ObjectTracker objectTracker,
+        final TrackedBox[] boxes,
+        final DebugRect[] screenRects) {
+      this.frameWidth = frameWidth;
+      this.frameHeight = frameHeight;
+      this.sensorOrientation = sensorOrientation;
+      this.objectTracker = objectTracker;
+      this.boxes = boxes;
+      this.screenRects = screenRects;
+    }
+
+    boolean sameGeometry(final Snapshot other) {
+      return other != null
+          && frameWidth == other.frameWidth
+          && frameHeight == other.frameHeight
+          && sensorOrientation == other.sensorOrientation;
+    }
   }
 }
@@ -19,14 +19,10 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.PointF;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Vector;
 import javax.microedition.khronos.opengles.GL10;
 import org.tensorflow.lite.examples.detection.env.Logger;
@@ -46,8 +42,21 @@ import org.tensorflow.lite.examples.detection.env.Size;
  * <p>After allocation, new TrackedObjects may be instantiated via trackObject(). TrackedObjects are
  * associated with the ObjectTracker that created them, and are only valid while that ObjectTracker
  * still exists.
+ *
+ * <p>The position and correlation of every object are read from the native tracker when a frame is
+ * added or an object is placed, and then served from Java. Callers that need all objects at once use
+ * getTrackedObjectStates(), indexed by the integer handle of each object. The prebuilt
+ * tensorflow_demo library has no bulk entry point and its sources are not in this tree, so that
+ * read is still two string-keyed JNI calls per object and frame; only the calls made after it, by
+ * drawing and matching, are gone.
  */
 public class ObjectTracker {
+  /**
+   * Floats per object in getTrackedObjectStates(): left, top, right and bottom in preview frame
+   * coordinates, then the correlation.
+   */
+  public static final int STATE_SIZE = 5;
+
   private static final Logger LOGGER = new Logger();
   private static final boolean DRAW_TEXT = false;
   /** How many history points to keep track of and draw in the red history line. */
@@ -76,12 +85,21 @@ public class ObjectTracker {
   protected final int frameHeight;
   protected final boolean alwaysTrack;
   private final byte[] downsampledFrame;
-  private final Map<String, TrackedObject> trackedObjects;
-  private final Vector<PointF> debugHistory;
-  private final LinkedList<TimestampedDeltas> timestampedDeltas;
+  // Live objects by handle, null where a handle is free.
+  private final List<TrackedObject> trackedObjects;
+  // Ring of the last frame-to-frame center deltas, newest at debugHistoryEnd - 1.
+  private final float[] debugHistoryX = new float[MAX_DEBUG_HISTORY_SIZE];
+  private final float[] debugHistoryY = new float[MAX_DEBUG_HISTORY_SIZE];
+  private int debugHistoryEnd;
+  private int debugHistorySize;
+  private final FlowHistory flowHistory = new FlowHistory(MAX_FRAME_HISTORY_SIZE);
+  // Scratch for getCurrentPositionNative().
+  private final float[] currentPosition = new float[4];
   private final int rowStride;
   private final float[] matrixValues = new float[9];
   private long lastTimestamp;
+  // Keypoints of the last frame as returned by the native tracker, parsed on first use.
+  private float[] lastKeypointData;
   private FrameChange lastKeypoints;
   private long downsampledTimestamp;
   /** This will contain an opaque pointer to the native ObjectTracker */
@@ -93,11 +111,8 @@ public class ObjectTracker {
     this.frameHeight = frameHeight;
     this.rowStride = rowStride;
     this.alwaysTrack = alwaysTrack;
-    this.timestampedDeltas = new LinkedList<TimestampedDeltas>();
-
-    trackedObjects = new HashMap<String, TrackedObject>();
 
-    debugHistory = new Vector<PointF>(MAX_DEBUG_HISTORY_SIZE);
+    trackedObjects = new ArrayList<TrackedObject>();
 
     downsampledFrame =
         new byte
@@ -169,13 +184,15 @@ public class ObjectTracker {
     // Do Lucas Kanade using the fullframe initializer.
     nextFrameNative(downsampledFrame, uvData, timestamp, transformationMatrix);
 
-    timestampedDeltas.add(new TimestampedDeltas(timestamp, getKeypointsPacked(DOWNSAMPLE_FACTOR)));
-    while (timestampedDeltas.size() > MAX_FRAME_HISTORY_SIZE) {
-      timestampedDeltas.removeFirst();
-    }
+    // A fresh array from the native side each frame; the history keeps it without copying.
+    final byte[] deltas = getKeypointsPacked(DOWNSAMPLE_FACTOR);
+    flowHistory.add(timestamp, deltas, deltas.length);
 
-    for (final TrackedObject trackedObject : trackedObjects.values()) {
-      trackedObject.updateTrackedPosition();
+    for (int handle = 0; handle < trackedObjects.size(); ++handle) {
+      final TrackedObject trackedObject = trackedObjects.get(handle);
+      if (trackedObject != null) {
+        trackedObject.updateTrackedPosition();
+      }
     }
 
     if (updateDebugInfo) {
@@ -212,23 +229,29 @@ public class ObjectTracker {
     p.setColor(Color.RED);
 
     // Iterate through in backwards order.
-    synchronized (debugHistory) {
-      final int numPoints = debugHistory.size();
-      float lastX = startX;
-      float lastY = startY;
-      for (int keypointNum = 0; keypointNum < numPoints; ++keypointNum) {
-        final PointF delta = debugHistory.get(numPoints - keypointNum - 1);
-        final float newX = lastX + delta.x;
-        final float newY = lastY + delta.y;
-        canvas.drawLine(lastX, lastY, newX, newY, p);
-        lastX = newX;
-        lastY = newY;
-      }
+    float lastX = startX;
+    float lastY = startY;
+    for (int keypointNum = 0; keypointNum < debugHistorySize; ++keypointNum) {
+      final int i =
+          (debugHistoryEnd - keypointNum - 1 + MAX_DEBUG_HISTORY_SIZE) % MAX_DEBUG_HISTORY_SIZE;
+      final float newX = lastX + debugHistoryX[i];
+      final float newY = lastY + debugHistoryY[i];
+      canvas.drawLine(lastX, lastY, newX, newY, p);
+      lastX = newX;
+      lastY = newY;
+    }
+  }
+
+  private synchronized FrameChange getLastKeypoints() {
+    if (lastKeypoints == null && lastKeypointData != null) {
+      lastKeypoints = new FrameChange(lastKeypointData);
     }
+    return lastKeypoints;
   }
 
   private void drawKeypointsDebug(final Canvas canvas) {
     final Paint p = new Paint();
+    final FrameChange lastKeypoints = getLastKeypoints();
     if (lastKeypoints == null) {
       return;
     }
@@ -274,51 +297,36 @@ public class ObjectTracker {
     }
   }
 
-  private synchronized PointF getAccumulatedDelta(
+  // Adds to the debug history how far a box of the given radius around (positionX, positionY)
+  // moved between timestamp and the current frame.
+  private void addAccumulatedDelta(
       final long timestamp, final float positionX, final float positionY, final float radius) {
-    final RectF currPosition =
-        getCurrentPosition(
-            timestamp,
-            new RectF(
-                positionX - radius, positionY - radius, positionX + radius, positionY + radius));
-    return new PointF(currPosition.centerX() - positionX, currPosition.centerY() - positionY);
-  }
-
-  private synchronized RectF getCurrentPosition(final long timestamp, final RectF oldPosition) {
-    final RectF downscaledFrameRect = downscaleRect(oldPosition);
-
-    final float[] delta = new float[4];
     getCurrentPositionNative(
         timestamp,
-        downscaledFrameRect.left,
-        downscaledFrameRect.top,
-        downscaledFrameRect.right,
-        downscaledFrameRect.bottom,
-        delta);
-
-    final RectF newPosition = new RectF(delta[0], delta[1], delta[2], delta[3]);
-
-    return upscaleRect(newPosition);
+        (positionX - radius) / DOWNSAMPLE_FACTOR,
+        (positionY - radius) / DOWNSAMPLE_FACTOR,
+        (positionX + radius) / DOWNSAMPLE_FACTOR,
+        (positionY + radius) / DOWNSAMPLE_FACTOR,
+        currentPosition);
+    final float centerX = (currentPosition[0] + currentPosition[2]) / 2 * DOWNSAMPLE_FACTOR;
+    final float centerY = (currentPosition[1] + currentPosition[3]) / 2 * DOWNSAMPLE_FACTOR;
+
+    debugHistoryX[debugHistoryEnd] = centerX - positionX;
+    debugHistoryY[debugHistoryEnd] = centerY - positionY;
+    debugHistoryEnd = (debugHistoryEnd + 1) % MAX_DEBUG_HISTORY_SIZE;
+    debugHistorySize = Math.min(debugHistorySize + 1, MAX_DEBUG_HISTORY_SIZE);
   }
 
   private void updateDebugHistory() {
-    lastKeypoints = new FrameChange(getKeypointsNative(false));
+    lastKeypointData = getKeypointsNative(false);
+    lastKeypoints = null;
 
     if (lastTimestamp == 0) {
       return;
     }
 
-    final PointF delta =
-        getAccumulatedDelta(
-            lastTimestamp, frameWidth / DOWNSAMPLE_FACTOR, frameHeight / DOWNSAMPLE_FACTOR, 100);
-
-    synchronized (debugHistory) {
-      debugHistory.add(delta);
-
-      while (debugHistory.size() > MAX_DEBUG_HISTORY_SIZE) {
-        debugHistory.remove(0);
-      }
-    }
+    addAccumulatedDelta(
+        lastTimestamp, frameWidth / DOWNSAMPLE_FACTOR, frameHeight / DOWNSAMPLE_FACTOR, 100);
   }
 
   public synchronized void drawDebug(final Canvas canvas, final Matrix frameToCanvas) {
@@ -334,6 +342,7 @@ public class ObjectTracker {
   public Vector<String> getDebugText() {
     final Vector<String> lines = new Vector<String>();
 
+    final FrameChange lastKeypoints = getLastKeypoints();
     if (lastKeypoints != null) {
       lines.add("Num keypoints " + lastKeypoints.pointDeltas.size());
       lines.add("Min score: " + lastKeypoints.minScore);
@@ -343,19 +352,58 @@ public class ObjectTracker {
     return lines;
   }
 
-  public synchronized List<byte[]> pollAccumulatedFlowData(final long endFrameTime) {
-    final List<byte[]> frameDeltas = new ArrayList<byte[]>();
-    while (timestampedDeltas.size() > 0) {
-      final TimestampedDeltas currentDeltas = timestampedDeltas.peek();
-      if (currentDeltas.timestamp <= endFrameTime) {
-        frameDeltas.add(currentDeltas.deltas);
-        timestampedDeltas.removeFirst();
-      } else {
-        break;
+  /** Returns one more than the highest handle in use. */
+  public synchronized int getHandleCount() {
+    return trackedObjects.size();
+  }
+
+  /**
+   * Copies the position and correlation of every live object into {@code states}, the object with
+   * handle h at {@code STATE_SIZE * h}. Slots of free handles are left as they are. This does not
+   * call into native code.
+   *
+   * @param states Array to fill. A larger one is allocated if it is too small.
+   * @return The array filled, at least {@code STATE_SIZE * getHandleCount()} long.
+   */
+  public synchronized float[] getTrackedObjectStates(float[] states) {
+    final int handleCount = trackedObjects.size();
+    if (states == null || states.length < STATE_SIZE * handleCount) {
+      states = new float[STATE_SIZE * handleCount];
+    }
+    for (int handle = 0; handle < handleCount; ++handle) {
+      final TrackedObject trackedObject = trackedObjects.get(handle);
+      if (trackedObject == null || !trackedObject.hasPosition) {
+        continue;
       }
+      final float[] position = trackedObject.trackedPosition;
+      final int offset = STATE_SIZE * handle;
+      states[offset] = position[0] * DOWNSAMPLE_FACTOR;
+      states[offset + 1] = position[1] * DOWNSAMPLE_FACTOR;
+      states[offset + 2] = position[2] * DOWNSAMPLE_FACTOR;
+      states[offset + 3] = position[3] * DOWNSAMPLE_FACTOR;
+      states[offset + 4] = trackedObject.correlation;
+    }
+    return states;
+  }
+
+  // Takes the lowest free handle.
+  private int addTrackedObject(final TrackedObject trackedObject) {
+    final int free = trackedObjects.indexOf(null);
+    if (free >= 0) {
+      trackedObjects.set(free, trackedObject);
+      return free;
     }
+    trackedObjects.add(trackedObject);
+    return trackedObjects.size() - 1;
+  }
 
-    return frameDeltas;
+  /**
+   * Removes the flow deltas of the frames up to and including {@code endFrameTime} from the
+   * history and returns them, oldest first. The range reads the history in place and is only valid
+   * until the next nextFrame().
+   */
+  public synchronized FlowHistory.Range pollAccumulatedFlowData(final long endFrameTime) {
+    return flowHistory.poll(endFrameTime);
   }
 
   private RectF downscaleRect(final RectF fullFrameRect) {
@@ -366,14 +414,6 @@ public class ObjectTracker {
         fullFrameRect.bottom / DOWNSAMPLE_FACTOR);
   }
 
-  private RectF upscaleRect(final RectF downsampledFrameRect) {
-    return new RectF(
-        downsampledFrameRect.left * DOWNSAMPLE_FACTOR,
-        downsampledFrameRect.top * DOWNSAMPLE_FACTOR,
-        downsampledFrameRect.right * DOWNSAMPLE_FACTOR,
-        downsampledFrameRect.bottom * DOWNSAMPLE_FACTOR);
-  }
-
   public synchronized TrackedObject trackObject(final RectF position, final long timestamp, final byte[] frameData) {
     if (downsampledTimestamp != timestamp) {
       ObjectTracker.downsampleImageNative(frameWidth, frameHeight, rowStride, frameData, DOWNSAMPLE_FACTOR, downsampledFrame);
@@ -431,16 +471,6 @@ public class ObjectTracker {
 
   protected native void drawNative(int viewWidth, int viewHeight, float[] frameToCanvas);
 
-  private static class TimestampedDeltas {
-    final long timestamp;
-    final byte[] deltas;
-
-    public TimestampedDeltas(final long timestamp, final byte[] deltas) {
-      this.timestamp = timestamp;
-      this.deltas = deltas;
-    }
-  }
-
   /**
    * A simple class that records keypoint information, which includes local location, score and
    * type. This will be used in calculating FrameChange.
@@ -549,11 +579,14 @@ public class ObjectTracker {
    */
   public class TrackedObject {
     private final String id;
+    private final int handle;
 
     private long lastExternalPositionTime;
 
-    private RectF lastTrackedPosition;
-    private boolean visibleInLastFrame;
+    // Downsampled frame coordinates, valid once hasPosition is set. Written with the tracker lock.
+    private final float[] trackedPosition = new float[4];
+    private boolean hasPosition;
+    private float correlation;
 
     private boolean isDead;
 
@@ -565,9 +598,9 @@ public class ObjectTracker {
       lastExternalPositionTime = timestamp;
 
       synchronized (ObjectTracker.this) {
+        handle = addTrackedObject(this);
         registerInitialAppearance(position, data);
         setPreviousPosition(position, timestamp);
-        trackedObjects.put(id, this);
       }
     }
 
@@ -577,13 +610,19 @@ public class ObjectTracker {
       synchronized (ObjectTracker.this) {
         isDead = true;
         forgetNative(id);
-        trackedObjects.remove(id);
+        trackedObjects.set(handle, null);
       }
     }
 
-    public float getCurrentCorrelation() {
+    /** Returns the correlation as of the last frame. */
+    public synchronized float getCurrentCorrelation() {
       checkValidObject();
-      return ObjectTracker.this.getCurrentCorrelation(id);
+      return correlation;
+    }
+
+    /** Returns where this object is found in getTrackedObjectStates(). */
+    public int getHandle() {
+      return handle;
     }
 
     void registerInitialAppearance(final RectF position, final byte[] data) {
@@ -635,28 +674,34 @@ public class ObjectTracker {
     private synchronized void updateTrackedPosition() {
       checkValidObject();
 
-      final float[] delta = new float[4];
-      getTrackedPositionNative(id, delta);
-      lastTrackedPosition = new RectF(delta[0], delta[1], delta[2], delta[3]);
-
-      visibleInLastFrame = isObjectVisible(id);
+      getTrackedPositionNative(id, trackedPosition);
+      hasPosition = true;
+      correlation = ObjectTracker.this.getCurrentCorrelation(id);
     }
 
     public synchronized RectF getTrackedPositionInPreviewFrame() {
       checkValidObject();
 
-      if (lastTrackedPosition == null) {
+      if (!hasPosition) {
         return null;
       }
-      return upscaleRect(lastTrackedPosition);
+      return new RectF(
+          trackedPosition[0] * DOWNSAMPLE_FACTOR,
+          trackedPosition[1] * DOWNSAMPLE_FACTOR,
+          trackedPosition[2] * DOWNSAMPLE_FACTOR,
+          trackedPosition[3] * DOWNSAMPLE_FACTOR);
     }
 
     synchronized long getLastExternalPositionTime() {
       return lastExternalPositionTime;
     }
 
-    public synchronized boolean visibleInLastPreviewFrame() {
-      return visibleInLastFrame;
+    /** Asks the native tracker, which nothing else needs to do per frame. */
+    public boolean visibleInLastPreviewFrame() {
+      checkValidObject();
+      synchronized (ObjectTracker.this) {
+        return isObjectVisible(id);
+      }
     }
 
     private void checkValidObject() {
@@ -0,0 +1,173 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.tensorflow.lite.examples.detection.tflite.PriorBoxes;
+
+/** Deterministic inputs shared by the benchmarks. */
+final class Fixtures {
+  static final int FACEBOXES_INPUT_SIZE = 1024;
+  static final int SSD_INPUT_SIZE = 300;
+  static final int PREVIEW_WIDTH = 640;
+  static final int PREVIEW_HEIGHT = 480;
+
+  private static final String PRIORS_PROPERTY = "benchmark.priors";
+  private static final long SEED = 20190601L;
+
+  private Fixtures() {}
+
+  /**
+   * Returns the (cx, cy, w, h) prior boxes recorded in the reference dump named by the {@code
+   * benchmark.priors} system property, one "index cx cy w h" line per prior. The table generated by
+   * {@link PriorBoxes} is checked against it, so a benchmark never measures a broken decoder.
+   */
+  static float[][] recordedPriors() throws IOException {
+    final String path = System.getProperty(PRIORS_PROPERTY);
+    if (path == null) {
+      throw new IllegalStateException("Set -D" + PRIORS_PROPERTY + " to the prior box dump");
+    }
+    final PriorBoxes generated = PriorBoxes.generate(FACEBOXES_INPUT_SIZE);
+    final float[][] priors = new float[generated.getCount()][];
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(new FileInputStream(new File(path)), StandardCharsets.UTF_8))) {
+      String line;
+      int count = 0;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        final String[] fields = line.split("\\s+");
+        final int index = Integer.parseInt(fields[0]);
+        if (fields.length != 5 || index != count || index >= priors.length) {
+          throw new IOException("Unexpected prior line " + (count + 1) + ": " + line);
+        }
+        priors[index] =
+            new float[] {
+              Float.parseFloat(fields[1]),
+              Float.parseFloat(fields[2]),
+              Float.parseFloat(fields[3]),
+              Float.parseFloat(fields[4])
+            };
+        ++count;
+      }
+      if (count != priors.length) {
+        throw new IOException("Expected " + priors.length + " priors, found " + count);
+      }
+    }
+    checkPriors(generated, priors);
+    return priors;
+  }
+
+  private static void checkPriors(final PriorBoxes generated, final float[][] recorded) {
+    final FloatBuffer[] columns = {
+      generated.getCenterX(), generated.getCenterY(), generated.getWidth(), generated.getHeight()
+    };
+    for (int i = 0; i < recorded.length; ++i) {
+      for (int c = 0; c < 4; ++c) {
+        if (Math.abs(columns[c].get(i) - recorded[i][c]) > 1e-6f) {
+          throw new IllegalStateException(
+              "Generated prior " + i + " differs from the recorded one in column " + c);
+        }
+      }
+    }
+  }
+
+  /**
+   * Synthetic FaceBoxes location output, [anchors, 4], small offsets around each prior like a
+   * trained model produces.
+   */
+  static float[] locations(final int anchors) {
+    final Random random = new Random(SEED);
+    final float[] loc = new float[anchors * 4];
+    for (int i = 0; i < loc.length; ++i) {
+      loc[i] = (float) (random.nextGaussian() * 0.5);
+    }
+    return loc;
+  }
+
+  /**
+   * Synthetic FaceBoxes class output, [anchors, 2] (background, face). DataEncoder only keeps an
+   * anchor whose background output is negative and whose face output is positive. A few clusters
+   * of neighboring anchors pass with high scores, like a handful of faces, and a small fraction of
+   * the rest passes with lower ones, so both the pre-NMS selection and NMS itself have work to do.
+   *
+   * @param faces Number of face clusters
+   * @param noise Fraction of the other anchors that pass
+   */
+  static float[] scores(final int anchors, final int faces, final float noise) {
+    final Random random = new Random(SEED + 1);
+    final float[] conf = new float[anchors * 2];
+    for (int i = 0; i < anchors; ++i) {
+      final float face =
+          random.nextFloat() < noise
+              ? 0.5f + random.nextFloat() * 0.2f
+              : -0.5f - random.nextFloat() * 0.5f;
+      conf[i * 2] = -face;
+      conf[i * 2 + 1] = face;
+    }
+    for (int f = 0; f < faces; ++f) {
+      final int center = random.nextInt(anchors - 32);
+      for (int i = center; i < center + 32; ++i) {
+        final float face = 0.85f + random.nextFloat() * 0.15f;
+        conf[i * 2] = -face;
+        conf[i * 2 + 1] = face;
+      }
+    }
+    return conf;
+  }
+
+  static float[][] rows(final float[] flat, final int columns) {
+    final float[][] rows = new float[flat.length / columns][columns];
+    for (int i = 0; i < rows.length; ++i) {
+      System.arraycopy(flat, i * columns, rows[i], 0, columns);
+    }
+    return rows;
+  }
+
+  /** A smooth NV21 frame with some noise, so table lookups do not all hit the same entries. */
+  static byte[] nv21Frame(final int width, final int height) {
+    final Random random = new Random(SEED + 2);
+    final int frameSize = width * height;
+    final byte[] frame = new byte[frameSize + 2 * ((width + 1) / 2) * ((height + 1) / 2)];
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        frame[y * width + x] = (byte) ((x + y) / 4 + random.nextInt(16));
+      }
+    }
+    for (int i = frameSize; i < frame.length; ++i) {
+      frame[i] = (byte) (96 + random.nextInt(64));
+    }
+    return frame;
+  }
+
+  /** The 9 values of a crop-to-frame matrix that rotates by 90 degrees and scales to fill. */
+  static float[] cropToFrame(final int cropSize) {
+    // Crop (x, y) -> frame (y * sx, (cropSize - x) * sy), like the portrait preview.
+    final float sx = (float) PREVIEW_WIDTH / cropSize;
+    final float sy = (float) PREVIEW_HEIGHT / cropSize;
+    return new float[] {0.0f, sx, 0.0f, -sy, 0.0f, cropSize * sy, 0.0f, 0.0f, 1.0f};
+  }
+}
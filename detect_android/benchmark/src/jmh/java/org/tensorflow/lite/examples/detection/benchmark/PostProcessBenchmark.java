@@ -0,0 +1,158 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tensorflow.lite.examples.detection.tflite.DataEncoder;
+import org.tensorflow.lite.examples.detection.tflite.NMS;
+import org.tensorflow.lite.examples.detection.tflite.PriorBoxes;
+
+/** FaceBoxes post-processing: prior generation, decoding and non-maximum suppression. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PostProcessBenchmark {
+  private static final int TOP_K = 50;
+  private static final float NMS_THRESHOLD = 0.5f;
+
+  /** Fraction of the anchors that pass the background filter besides the faces. */
+  @Param({"0.01", "0.05"})
+  public float noise;
+
+  private DataEncoder encoder;
+  private FloatBuffer loc;
+  private FloatBuffer conf;
+  private float[][] locRows;
+  private float[][] confRows;
+  private final float[] outBoxes = new float[TOP_K * 4];
+  private final float[] outScores = new float[TOP_K];
+
+  // The pre-NMS candidates of the synthetic frame.
+  private float[] candidateBoxes;
+  private float[] candidateScores;
+  private float[][] candidateRows;
+  private int[] keep;
+  private NMS nms;
+
+  @Setup
+  public void setUp() throws IOException {
+    final float[][] priors = Fixtures.recordedPriors();
+    final int anchors = priors.length;
+    encoder = new DataEncoder(Fixtures.FACEBOXES_INPUT_SIZE);
+
+    final float[] flatLoc = Fixtures.locations(anchors);
+    final float[] flatConf = Fixtures.scores(anchors, 3, noise);
+    // Direct native-order buffers, like the interpreter's outputs.
+    loc = direct(flatLoc);
+    conf = direct(flatConf);
+    locRows = Fixtures.rows(flatLoc, 4);
+    confRows = Fixtures.rows(flatConf, 2);
+
+    // Candidates: the anchors DataEncoder keeps, as pixel boxes, capped like its pre-NMS
+    // selection.
+    int count = 0;
+    for (int i = 0; i < anchors; ++i) {
+      if (flatConf[i * 2] < 0 && flatConf[i * 2 + 1] > 0) {
+        ++count;
+      }
+    }
+    count = Math.min(count, encoder.getPreNmsTopN());
+    candidateBoxes = new float[count * 4];
+    candidateScores = new float[count];
+    candidateRows = new float[count][];
+    for (int i = 0, k = 0; i < anchors && k < count; ++i) {
+      if (flatConf[i * 2] >= 0 || flatConf[i * 2 + 1] <= 0) {
+        continue;
+      }
+      final float[] p = priors[i];
+      final float size = Fixtures.FACEBOXES_INPUT_SIZE;
+      candidateBoxes[k * 4] = (p[0] - p[2] / 2) * size;
+      candidateBoxes[k * 4 + 1] = (p[1] - p[3] / 2) * size;
+      candidateBoxes[k * 4 + 2] = (p[0] + p[2] / 2) * size;
+      candidateBoxes[k * 4 + 3] = (p[1] + p[3] / 2) * size;
+      candidateScores[k] = flatConf[i * 2 + 1];
+      candidateRows[k] = new float[4];
+      System.arraycopy(candidateBoxes, k * 4, candidateRows[k], 0, 4);
+      ++k;
+    }
+    keep = new int[count];
+    nms = new NMS(count);
+  }
+
+  private static FloatBuffer direct(final float[] values) {
+    final FloatBuffer buffer =
+        ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    buffer.put(values).rewind();
+    return buffer;
+  }
+
+  /** Building the 21824 priors, what every DataEncoder without a prior cache pays. */
+  @Benchmark
+  public PriorBoxes generatePriors() {
+    return PriorBoxes.generate(Fixtures.FACEBOXES_INPUT_SIZE);
+  }
+
+  @Benchmark
+  public DataEncoder createEncoder() {
+    return new DataEncoder(Fixtures.FACEBOXES_INPUT_SIZE);
+  }
+
+  /** The per-frame decode the detector runs on the interpreter's output buffers. */
+  @Benchmark
+  public int decodeBuffers() {
+    return encoder.decode(loc, conf, outBoxes, outScores);
+  }
+
+  /** The original float[][] API, including its result map. */
+  @Benchmark
+  public Map<Integer, Object> decodeArrays() {
+    return encoder.decode(locRows, confRows);
+  }
+
+  @Benchmark
+  public int nmsFilter() {
+    return nms.filter(candidateBoxes, candidateScores, candidateScores.length, TOP_K, NMS_THRESHOLD, keep);
+  }
+
+  /**
+   * The deprecated sort-then-filter pair. Both work in place, so the measurement includes copying
+   * the inputs back first.
+   */
+  @Benchmark
+  public void legacySortAndFilter(final Blackhole blackhole) {
+    final float[][] anchors = new float[candidateRows.length][];
+    for (int i = 0; i < anchors.length; ++i) {
+      anchors[i] = candidateRows[i].clone();
+    }
+    final float[] scores = candidateScores.clone();
+    NMS.sortScores(anchors, scores);
+    blackhole.consume(NMS.nmsScoreFilter(anchors, scores, TOP_K, NMS_THRESHOLD));
+  }
+}
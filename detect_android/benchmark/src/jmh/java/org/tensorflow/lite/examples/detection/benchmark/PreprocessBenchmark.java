@@ -0,0 +1,108 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.tensorflow.lite.examples.detection.env.StripedWorkerPool;
+import org.tensorflow.lite.examples.detection.env.YuvCropSampler;
+import org.tensorflow.lite.examples.detection.tflite.ImagePreprocessor;
+
+/**
+ * Filling the model input tensor, from a pixel array (the Bitmap path) and straight from the camera
+ * frame (the detector pipeline path).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PreprocessBenchmark {
+  /** FaceBoxes: 1024x1024 float input; SSD: 300x300 quantized input. */
+  @Param({"faceboxes", "ssd"})
+  public String model;
+
+  @Param({"1", "2"})
+  public int threads;
+
+  private StripedWorkerPool pool;
+  private ImagePreprocessor preprocessor;
+  private int[] pixels;
+  private YuvCropSampler sampler;
+
+  @Setup
+  public void setUp() {
+    pool = threads > 1 ? new StripedWorkerPool(threads, "preprocess-benchmark") : null;
+    final int inputSize;
+    if ("ssd".equals(model)) {
+      inputSize = Fixtures.SSD_INPUT_SIZE;
+      preprocessor = ImagePreprocessor.quantized(inputSize, pool);
+    } else {
+      inputSize = Fixtures.FACEBOXES_INPUT_SIZE;
+      // FaceBoxes takes the raw 0-255 channel values.
+      preprocessor = ImagePreprocessor.normalized(inputSize, 0.0f, 1.0f, pool);
+    }
+
+    final Random random = new Random(7);
+    pixels = new int[inputSize * inputSize];
+    for (int i = 0; i < pixels.length; ++i) {
+      pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+    }
+
+    final int width = Fixtures.PREVIEW_WIDTH;
+    final int height = Fixtures.PREVIEW_HEIGHT;
+    final byte[] nv21 = Fixtures.nv21Frame(width, height);
+    sampler =
+        new YuvCropSampler(
+            width,
+            height,
+            inputSize,
+            inputSize,
+            Fixtures.cropToFrame(inputSize),
+            YuvCropSampler.Sampling.BILINEAR);
+    sampler.setLuminance(nv21, width);
+    sampler.copyChroma(nv21, width * height + 1, nv21, width * height, width, 2);
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  /** recognizeImage(Bitmap): the tensor fill from getPixels() output. */
+  @Benchmark
+  public ByteBuffer fromPixels() {
+    preprocessor.process(pixels);
+    return preprocessor.getInput();
+  }
+
+  /** The pipeline's preprocess stage: crop sampling and tensor fill in one pass. */
+  @Benchmark
+  public ByteBuffer fromCameraFrame() {
+    preprocessor.process(sampler);
+    return preprocessor.getInput();
+  }
+}
@@ -0,0 +1,148 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.tensorflow.lite.examples.detection.env.StripedWorkerPool;
+import org.tensorflow.lite.examples.detection.env.YuvCropSampler;
+import org.tensorflow.lite.examples.detection.env.YuvToArgbConverter;
+
+/**
+ * Camera frame conversions: the full-frame YUV to ARGB conversions behind ImageUtils, split into
+ * row stripes the way ImageUtils does, and the fused crop sampler that feeds the model.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class YuvConversionBenchmark {
+  private static final int WIDTH = Fixtures.PREVIEW_WIDTH;
+  private static final int HEIGHT = Fixtures.PREVIEW_HEIGHT;
+
+  @Param({"1", "2", "4"})
+  public int threads;
+
+  private byte[] nv21;
+  // The same frame as three planes with the Camera2 semi-planar layout.
+  private byte[] yPlane;
+  private byte[] uPlane;
+  private byte[] vPlane;
+  private final int[] argb = new int[WIDTH * HEIGHT];
+  private StripedWorkerPool pool;
+  private StripedWorkerPool.StripeTask nv21Stripes;
+  private StripedWorkerPool.StripeTask planarStripes;
+
+  private YuvCropSampler nearest;
+  private YuvCropSampler bilinear;
+  private YuvCropSampler cropSampler;
+  private int[][] cropRows;
+  private StripedWorkerPool.StripeTask cropStripes;
+
+  @Setup
+  public void setUp() {
+    nv21 = Fixtures.nv21Frame(WIDTH, HEIGHT);
+    yPlane = new byte[WIDTH * HEIGHT];
+    System.arraycopy(nv21, 0, yPlane, 0, yPlane.length);
+    // In NV21 the V/U pairs are interleaved, so V starts at the first chroma byte, U one later.
+    vPlane = new byte[nv21.length - yPlane.length];
+    System.arraycopy(nv21, yPlane.length, vPlane, 0, vPlane.length);
+    uPlane = new byte[vPlane.length];
+    System.arraycopy(nv21, yPlane.length + 1, uPlane, 0, uPlane.length - 1);
+
+    pool = new StripedWorkerPool(threads, "yuv-benchmark");
+    nv21Stripes =
+        (stripe, start, end) ->
+            YuvToArgbConverter.convertYuv420Sp(nv21, WIDTH, HEIGHT, argb, start, end);
+    planarStripes =
+        (stripe, start, end) ->
+            YuvToArgbConverter.convertYuv420(
+                yPlane, uPlane, vPlane, WIDTH, HEIGHT, WIDTH, WIDTH, 2, argb, start, end);
+
+    final int cropSize = Fixtures.FACEBOXES_INPUT_SIZE;
+    nearest = sampler(cropSize, YuvCropSampler.Sampling.NEAREST);
+    bilinear = sampler(cropSize, YuvCropSampler.Sampling.BILINEAR);
+    cropRows = new int[threads][cropSize];
+    cropStripes =
+        (stripe, start, end) -> {
+          for (int y = start; y < end; ++y) {
+            cropSampler.readRow(y, cropRows[stripe], 0);
+          }
+        };
+  }
+
+  private YuvCropSampler sampler(final int cropSize, final YuvCropSampler.Sampling sampling) {
+    final YuvCropSampler sampler =
+        new YuvCropSampler(
+            WIDTH, HEIGHT, cropSize, cropSize, Fixtures.cropToFrame(cropSize), sampling);
+    sampler.setLuminance(nv21, WIDTH);
+    sampler.copyChroma(nv21, WIDTH * HEIGHT + 1, nv21, WIDTH * HEIGHT, WIDTH, 2);
+    return sampler;
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  /** The legacy camera path, ImageUtils.convertYUV420SPToARGB8888. */
+  @Benchmark
+  public int[] convertNv21() {
+    pool.run(HEIGHT, 2, nv21Stripes);
+    return argb;
+  }
+
+  /** The Camera2 path, ImageUtils.convertYUV420ToARGB8888. */
+  @Benchmark
+  public int[] convertPlanes() {
+    pool.run(HEIGHT, 2, planarStripes);
+    return argb;
+  }
+
+  /** Copying the chroma planes of a frame into a sampler, done once per detected frame. */
+  @Benchmark
+  public YuvCropSampler copyChroma() {
+    bilinear.copyChroma(nv21, WIDTH * HEIGHT + 1, nv21, WIDTH * HEIGHT, WIDTH, 2);
+    return bilinear;
+  }
+
+  /**
+   * Sampling a whole 1024x1024 model crop, split into stripes like the preprocessor does, without
+   * the tensor fill.
+   */
+  @Benchmark
+  public int[][] sampleCropNearest() {
+    return sampleCrop(nearest);
+  }
+
+  @Benchmark
+  public int[][] sampleCropBilinear() {
+    return sampleCrop(bilinear);
+  }
+
+  private int[][] sampleCrop(final YuvCropSampler sampler) {
+    cropSampler = sampler;
+    pool.run(sampler.getHeight(), 1, cropStripes);
+    return cropRows;
+  }
+}
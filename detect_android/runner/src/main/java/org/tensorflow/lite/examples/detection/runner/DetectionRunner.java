@@ -0,0 +1,303 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.runner;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.env.Size;
+import org.tensorflow.lite.examples.detection.tflite.Detection;
+
+/**
+ * Runs a detection model over a directory of images on the host, without a device:
+ *
+ * <pre>
+ * DetectionRunner --model faceboxes_float.tflite --input photos/ --output detections.jsonl
+ * </pre>
+ *
+ * <p>Every image goes through the same input tensor fill, interpreter call and decoding as in the
+ * app, on a fixed number of workers that each own an interpreter. Files are handed to them through
+ * a bounded queue, so only a few decoded images are in memory at a time. Detections are written as
+ * JSON Lines, in completion order; a throughput and latency summary goes to stderr.
+ */
+public final class DetectionRunner {
+  private static final String USAGE =
+      "Usage: DetectionRunner --model <file.tflite> --input <dir|file> [options]\n"
+          + "  --type faceboxes|ssd   model wrapper to use (default faceboxes)\n"
+          + "  --labels <file>        label file, one label per line\n"
+          + "  --output <file>        JSON Lines output (default stdout)\n"
+          + "  --workers <n>          parallel interpreters (default 1)\n"
+          + "  --threads <n>          threads per interpreter (default 1)\n"
+          + "  --queue <n>            files queued ahead of the workers (default 2 * workers)\n"
+          + "  --min-score <f>        drop detections below this score (default per model)\n"
+          + "  --yuv-size <w>x<h>     frame size of .yuv/.nv21 NV21 dumps\n";
+
+  // Handed to each worker once the input is exhausted.
+  private static final File END_OF_INPUT = new File("");
+
+  private final HostDetector.Model model;
+  private final File modelFile;
+  private final List<String> labels;
+  private final File input;
+  private final File output;
+  private final int workers;
+  private final int threads;
+  private final int queueCapacity;
+  private final float minScore;
+  private final Size yuvSize;
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final AtomicInteger failures = new AtomicInteger();
+  private JsonLinesWriter writer;
+
+  private DetectionRunner(final String[] args) throws IOException {
+    HostDetector.Model model = HostDetector.Model.FACEBOXES;
+    File modelFile = null;
+    File labelFile = null;
+    File input = null;
+    File output = null;
+    int workers = 1;
+    int threads = 1;
+    int queueCapacity = 0;
+    Float minScore = null;
+    Size yuvSize = null;
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + args[i]);
+      }
+      final String value = args[i + 1];
+      switch (args[i]) {
+        case "--type":
+          model = HostDetector.Model.valueOf(value.toUpperCase(Locale.US));
+          break;
+        case "--model":
+          modelFile = new File(value);
+          break;
+        case "--labels":
+          labelFile = new File(value);
+          break;
+        case "--input":
+          input = new File(value);
+          break;
+        case "--output":
+          output = new File(value);
+          break;
+        case "--workers":
+          workers = Integer.parseInt(value);
+          break;
+        case "--threads":
+          threads = Integer.parseInt(value);
+          break;
+        case "--queue":
+          queueCapacity = Integer.parseInt(value);
+          break;
+        case "--min-score":
+          minScore = Float.parseFloat(value);
+          break;
+        case "--yuv-size":
+          yuvSize = Size.parseFromString(value);
+          if (yuvSize == null) {
+            throw new IllegalArgumentException("Expected <width>x<height>, got " + value);
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+    if (modelFile == null || input == null) {
+      throw new IllegalArgumentException("--model and --input are required");
+    }
+    if (workers < 1 || threads < 1) {
+      throw new IllegalArgumentException("--workers and --threads must be positive");
+    }
+
+    this.model = model;
+    this.modelFile = modelFile;
+    this.labels =
+        labelFile != null
+            ? Files.readAllLines(labelFile.toPath(), StandardCharsets.UTF_8)
+            : Collections.<String>emptyList();
+    this.input = input;
+    this.output = output;
+    this.workers = workers;
+    this.threads = threads;
+    this.queueCapacity = queueCapacity > 0 ? queueCapacity : 2 * workers;
+    this.minScore = minScore != null ? minScore : model.minScore;
+    this.yuvSize = yuvSize;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final DetectionRunner runner;
+    try {
+      runner = new DetectionRunner(args);
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.print(USAGE);
+      System.exit(2);
+      return;
+    }
+    System.exit(runner.run() ? 0 : 1);
+  }
+
+  /** Processes every input file. Returns false if any of them failed. */
+  private boolean run() throws IOException, InterruptedException {
+    final List<File> files = listInputs();
+    if (files.isEmpty()) {
+      System.err.println("No images found in " + input);
+      return false;
+    }
+
+    // Load the models up front, so that a bad model fails before any file is queued.
+    final List<HostDetector> detectors = new ArrayList<>(workers);
+    for (int i = 0; i < workers; ++i) {
+      detectors.add(HostDetector.create(model, modelFile, labels, threads));
+    }
+
+    final OutputStream stream = output != null ? new FileOutputStream(output) : System.out;
+    writer =
+        new JsonLinesWriter(
+            new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)));
+    final BlockingQueue<File> queue = new ArrayBlockingQueue<>(queueCapacity);
+    final List<Thread> threadList = new ArrayList<>(workers);
+    final long startNanos = System.nanoTime();
+    try {
+      for (int i = 0; i < workers; ++i) {
+        final HostDetector detector = detectors.get(i);
+        final Thread thread = new Thread(() -> work(detector, queue), "detect-worker-" + i);
+        thread.start();
+        threadList.add(thread);
+      }
+      for (final File file : files) {
+        queue.put(file);
+      }
+      for (int i = 0; i < workers; ++i) {
+        queue.put(END_OF_INPUT);
+      }
+      for (final Thread thread : threadList) {
+        thread.join();
+      }
+    } finally {
+      writer.close();
+      for (final HostDetector detector : detectors) {
+        detector.close();
+      }
+    }
+    final double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+    System.err.println(
+        String.format(
+            Locale.US,
+            "%d images (%d failed) in %.2f s on %d workers x %d threads: %.2f images/s",
+            files.size(),
+            failures.get(),
+            seconds,
+            workers,
+            threads,
+            files.size() / seconds));
+    System.err.println("Preprocess + inference + decode: " + latency.getSummary());
+    return failures.get() == 0;
+  }
+
+  /** Returns the supported files under the input, recursively, in path order. */
+  private List<File> listInputs() throws IOException {
+    if (input.isFile()) {
+      return Collections.singletonList(input);
+    }
+    try (Stream<Path> paths = Files.walk(input.toPath())) {
+      return paths
+          .map(Path::toFile)
+          .filter(f -> f.isFile() && InputImage.isSupported(f))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private void work(final HostDetector detector, final BlockingQueue<File> queue) {
+    try {
+      while (true) {
+        final File file = queue.take();
+        if (file == END_OF_INPUT) {
+          return;
+        }
+        process(detector, file);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void process(final HostDetector detector, final File file) {
+    final String name = displayName(file);
+    try {
+      final InputImage image = InputImage.load(file, detector.getInputSize(), yuvSize);
+
+      final long startNanos = System.nanoTime();
+      final List<Detection> detections = image.detect(detector);
+      final long elapsedNanos = System.nanoTime() - startNanos;
+      latency.record(elapsedNanos);
+
+      // Back from the stretched model input to image coordinates.
+      final float scaleX = (float) image.width / detector.getInputSize();
+      final float scaleY = (float) image.height / detector.getInputSize();
+      final List<Detection> kept = new ArrayList<>(detections.size());
+      for (final Detection d : detections) {
+        if (d.getConfidence() >= minScore) {
+          kept.add(
+              new Detection(
+                  d.getTitle(),
+                  d.getConfidence(),
+                  d.getLeft() * scaleX,
+                  d.getTop() * scaleY,
+                  d.getRight() * scaleX,
+                  d.getBottom() * scaleY));
+        }
+      }
+      writer.writeResult(name, image.width, image.height, elapsedNanos / 1e6, kept);
+    } catch (final IOException | RuntimeException e) {
+      failures.incrementAndGet();
+      System.err.println("Failed on " + name + ": " + e);
+      try {
+        writer.writeError(name, e.toString());
+      } catch (final IOException writeFailure) {
+        System.err.println("Could not record the failure: " + writeFailure);
+      }
+    }
+  }
+
+  /** Path of {@code file} relative to the input directory. */
+  private String displayName(final File file) {
+    if (input.isFile()) {
+      return file.getName();
+    }
+    return input.toPath().relativize(file.toPath()).toString();
+  }
+}
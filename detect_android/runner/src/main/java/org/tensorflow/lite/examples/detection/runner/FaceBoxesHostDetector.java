@@ -0,0 +1,68 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.runner;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.tensorflow.lite.examples.detection.tflite.DataEncoder;
+import org.tensorflow.lite.examples.detection.tflite.Detection;
+import org.tensorflow.lite.examples.detection.tflite.ImagePreprocessor;
+
+/** FaceBoxes on the host, decoded through the same {@link DataEncoder} as the app. */
+final class FaceBoxesHostDetector extends HostDetector {
+  // Index of the "face" entry in faceboxes_label.txt.
+  private static final int FACE_LABEL_INDEX = 0;
+
+  private final DataEncoder dataEncoder;
+  private final String title;
+  // outputClasses: float32 [1, numBoxes, 2] (background, face) scores
+  private final ByteBuffer outputClassesBuffer;
+  private final FloatBuffer outputClasses;
+  // outputLocations: float32 [1, numBoxes, 4] (dx, dy, dw, dh) relative to the prior boxes
+  private final ByteBuffer outputLocationsBuffer;
+  private final FloatBuffer outputLocations;
+  private final Object[] inputArray;
+  private final Map<Integer, Object> outputMap = new HashMap<>();
+
+  FaceBoxesHostDetector(
+      final File modelFile, final int inputSize, final List<String> labels, final int numThreads) {
+    // FaceBoxes is trained on raw 0-255 channel values, no mean/std normalization.
+    super(modelFile, inputSize, ImagePreprocessor.normalized(inputSize, 0.0f, 1.0f, null), numThreads);
+    dataEncoder = new DataEncoder(inputSize);
+    title = labels.isEmpty() ? "face" : labels.get(FACE_LABEL_INDEX);
+
+    final int numBoxes = dataEncoder.getBoxesNum();
+    outputClassesBuffer = allocateOutput(numBoxes * 2);
+    outputClasses = outputClassesBuffer.asFloatBuffer();
+    outputLocationsBuffer = allocateOutput(numBoxes * 4);
+    outputLocations = outputLocationsBuffer.asFloatBuffer();
+    inputArray = new Object[] {preprocessor.getInput()};
+    outputMap.put(0, outputClassesBuffer);
+    outputMap.put(1, outputLocationsBuffer);
+  }
+
+  @Override
+  protected List<Detection> runAndDecode() {
+    outputClassesBuffer.rewind();
+    outputLocationsBuffer.rewind();
+    interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+    return dataEncoder.decodeDetections(outputLocations, outputClasses, inputSize, title);
+  }
+}
@@ -0,0 +1,110 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.runner;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.detection.env.ArgbRowSource;
+import org.tensorflow.lite.examples.detection.tflite.Detection;
+import org.tensorflow.lite.examples.detection.tflite.ImagePreprocessor;
+
+/**
+ * Host-side counterpart of the app's {@code Classifier} implementations: the same input tensor
+ * fill, interpreter call and decoding, without any Android classes. Not thread-safe; every worker
+ * owns its own detector.
+ */
+abstract class HostDetector implements AutoCloseable {
+  /** The models the app ships, with the input geometry their wrappers use. */
+  enum Model {
+    FACEBOXES(1024, false, 0.8f),
+    SSD(300, true, 0.5f);
+
+    final int inputSize;
+    final boolean quantized;
+    // Same default as MINIMUM_CONFIDENCE_TF_OD_API in DetectorActivity.
+    final float minScore;
+
+    Model(final int inputSize, final boolean quantized, final float minScore) {
+      this.inputSize = inputSize;
+      this.quantized = quantized;
+      this.minScore = minScore;
+    }
+  }
+
+  protected final int inputSize;
+  protected final ImagePreprocessor preprocessor;
+  protected final Interpreter interpreter;
+
+  protected HostDetector(
+      final File modelFile,
+      final int inputSize,
+      final ImagePreprocessor preprocessor,
+      final int numThreads) {
+    this.inputSize = inputSize;
+    this.preprocessor = preprocessor;
+    interpreter = new Interpreter(modelFile);
+    interpreter.setNumThreads(numThreads);
+  }
+
+  static HostDetector create(
+      final Model model, final File modelFile, final List<String> labels, final int numThreads) {
+    switch (model) {
+      case FACEBOXES:
+        return new FaceBoxesHostDetector(modelFile, model.inputSize, labels, numThreads);
+      case SSD:
+        return new SsdHostDetector(
+            modelFile, model.inputSize, model.quantized, labels, numThreads);
+      default:
+        throw new IllegalArgumentException("Unknown model " + model);
+    }
+  }
+
+  int getInputSize() {
+    return inputSize;
+  }
+
+  /**
+   * Detects objects in {@code inputSize * inputSize} ARGB pixels. Boxes are in input coordinates.
+   */
+  List<Detection> detect(final int[] pixels) {
+    preprocessor.process(pixels);
+    return runAndDecode();
+  }
+
+  /** Same as {@link #detect(int[])}, reading a model-sized image row by row. */
+  List<Detection> detect(final ArgbRowSource source) {
+    preprocessor.process(source);
+    return runAndDecode();
+  }
+
+  /** Runs the interpreter on the filled input tensor and decodes its outputs. */
+  protected abstract List<Detection> runAndDecode();
+
+  @Override
+  public void close() {
+    interpreter.close();
+  }
+
+  /** Allocates a direct, native-ordered buffer for a float32 output tensor. */
+  protected static ByteBuffer allocateOutput(final int numFloats) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(numFloats * 4);
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+}
@@ -0,0 +1,132 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.runner;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+import org.tensorflow.lite.examples.detection.env.Size;
+import org.tensorflow.lite.examples.detection.env.YuvCropSampler;
+import org.tensorflow.lite.examples.detection.tflite.Detection;
+
+/**
+ * One input file, scaled to the model input the way the app scales its camera crop: the whole
+ * image is stretched to the square input, without keeping the aspect ratio.
+ *
+ * <p>JPEG and PNG files are decoded with ImageIO. {@code .yuv} and {@code .nv21} files are raw
+ * NV21 dumps, e.g. camera preview frames, of a size given on the command line; they go through
+ * the same {@link YuvCropSampler} as live frames.
+ */
+final class InputImage {
+  final File file;
+  final int width;
+  final int height;
+  // Exactly one of these is set.
+  private final int[] pixels;
+  private final YuvCropSampler sampler;
+
+  private InputImage(
+      final File file,
+      final int width,
+      final int height,
+      final int[] pixels,
+      final YuvCropSampler sampler) {
+    this.file = file;
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
+    this.sampler = sampler;
+  }
+
+  static boolean isSupported(final File file) {
+    return isImage(file) || isYuv(file);
+  }
+
+  private static boolean isImage(final File file) {
+    final String name = file.getName().toLowerCase(Locale.US);
+    return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png");
+  }
+
+  private static boolean isYuv(final File file) {
+    final String name = file.getName().toLowerCase(Locale.US);
+    return name.endsWith(".yuv") || name.endsWith(".nv21");
+  }
+
+  /**
+   * Reads {@code file} and scales it to {@code inputSize x inputSize}.
+   *
+   * @param yuvSize Frame size of raw YUV dumps, may be null if there are none.
+   */
+  static InputImage load(final File file, final int inputSize, final Size yuvSize)
+      throws IOException {
+    if (isYuv(file)) {
+      return loadNv21(file, inputSize, yuvSize);
+    }
+    final BufferedImage image = ImageIO.read(file);
+    if (image == null) {
+      throw new IOException("Unsupported image format: " + file);
+    }
+    final BufferedImage scaled = new BufferedImage(inputSize, inputSize, BufferedImage.TYPE_INT_ARGB);
+    final Graphics2D g = scaled.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(image, 0, 0, inputSize, inputSize, null);
+    } finally {
+      g.dispose();
+    }
+    // Same ARGB_8888 row-major layout as Bitmap.getPixels.
+    final int[] pixels = scaled.getRGB(0, 0, inputSize, inputSize, null, 0, inputSize);
+    return new InputImage(file, image.getWidth(), image.getHeight(), pixels, null);
+  }
+
+  private static InputImage loadNv21(final File file, final int inputSize, final Size yuvSize)
+      throws IOException {
+    if (yuvSize == null) {
+      throw new IOException("Raw YUV input needs --yuv-size: " + file);
+    }
+    final int w = yuvSize.width;
+    final int h = yuvSize.height;
+    final byte[] data = Files.readAllBytes(file.toPath());
+    final int expected = w * h + 2 * ((w + 1) / 2) * ((h + 1) / 2);
+    if (data.length < expected) {
+      throw new IOException(
+          "Expected at least " + expected + " bytes for a " + yuvSize + " NV21 frame: " + file);
+    }
+    final float[] cropToFrame = {
+      (float) w / inputSize, 0, 0,
+      0, (float) h / inputSize, 0,
+      0, 0, 1
+    };
+    final YuvCropSampler sampler =
+        new YuvCropSampler(
+            w, h, inputSize, inputSize, cropToFrame, YuvCropSampler.Sampling.BILINEAR);
+    sampler.setLuminance(data, w);
+    // NV21: a full-size Y plane followed by interleaved V/U at half resolution.
+    sampler.copyChroma(data, w * h + 1, data, w * h, 2 * ((w + 1) / 2), 2);
+    return new InputImage(file, w, h, null, sampler);
+  }
+
+  /** Runs {@code detector} on this image. Boxes are in input coordinates. */
+  List<Detection> detect(final HostDetector detector) {
+    return pixels != null ? detector.detect(pixels) : detector.detect(sampler);
+  }
+}
@@ -0,0 +1,129 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.runner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import org.tensorflow.lite.examples.detection.tflite.Detection;
+
+/**
+ * Writes one JSON object per image and line. Safe to call from several workers; each line is
+ * written in one piece.
+ */
+final class JsonLinesWriter implements Closeable {
+  private final Writer out;
+  private final StringBuilder line = new StringBuilder(1024);
+
+  JsonLinesWriter(final Writer out) {
+    this.out = out;
+  }
+
+  /**
+   * Writes the detections of one image, e.g.
+   *
+   * <pre>
+   * {"file":"a.jpg","width":640,"height":480,"latency_ms":12.3,
+   *  "detections":[{"label":"face","score":0.97,"left":1.0,"top":2.0,"right":3.0,"bottom":4.0}]}
+   * </pre>
+   *
+   * @param detections Boxes in image coordinates.
+   */
+  synchronized void writeResult(
+      final String file,
+      final int width,
+      final int height,
+      final double latencyMs,
+      final List<Detection> detections)
+      throws IOException {
+    line.setLength(0);
+    line.append("{\"file\":");
+    appendString(file);
+    line.append(",\"width\":").append(width);
+    line.append(",\"height\":").append(height);
+    line.append(",\"latency_ms\":").append(format(latencyMs));
+    line.append(",\"detections\":[");
+    for (int i = 0; i < detections.size(); ++i) {
+      final Detection d = detections.get(i);
+      if (i > 0) {
+        line.append(',');
+      }
+      line.append("{\"label\":");
+      appendString(d.getTitle());
+      line.append(",\"score\":").append(format(d.getConfidence()));
+      line.append(",\"left\":").append(format(d.getLeft()));
+      line.append(",\"top\":").append(format(d.getTop()));
+      line.append(",\"right\":").append(format(d.getRight()));
+      line.append(",\"bottom\":").append(format(d.getBottom()));
+      line.append('}');
+    }
+    line.append("]}\n");
+    out.write(line.toString());
+  }
+
+  /** Writes a line for an image that could not be processed. */
+  synchronized void writeError(final String file, final String message) throws IOException {
+    line.setLength(0);
+    line.append("{\"file\":");
+    appendString(file);
+    line.append(",\"error\":");
+    appendString(message != null ? message : "");
+    line.append("}\n");
+    out.write(line.toString());
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  private static String format(final double value) {
+    return String.format(Locale.US, "%.4f", value);
+  }
+
+  private void appendString(final String value) {
+    line.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          line.append("\\\"");
+          break;
+        case '\\':
+          line.append("\\\\");
+          break;
+        case '\n':
+          line.append("\\n");
+          break;
+        case '\r':
+          line.append("\\r");
+          break;
+        case '\t':
+          line.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            line.append(String.format(Locale.US, "\\u%04x", (int) c));
+          } else {
+            line.append(c);
+          }
+      }
+    }
+    line.append('"');
+  }
+}
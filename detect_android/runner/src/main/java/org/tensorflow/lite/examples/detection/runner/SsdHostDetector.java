@@ -0,0 +1,101 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.runner;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.tensorflow.lite.examples.detection.tflite.Detection;
+import org.tensorflow.lite.examples.detection.tflite.ImagePreprocessor;
+
+/** SSD MobileNet on the host, read the same way as {@code TFLiteObjectDetectionAPIModel}. */
+final class SsdHostDetector extends HostDetector {
+  // Only return this many results.
+  private static final int NUM_DETECTIONS = 10;
+  // Float model
+  private static final float IMAGE_MEAN = 128.0f;
+  private static final float IMAGE_STD = 128.0f;
+
+  private final List<String> labels;
+  private final ByteBuffer[] outputBuffers;
+  // outputLocations: float32 [1, NUM_DETECTIONS, 4] (top, left, bottom, right)
+  private final FloatBuffer outputLocations;
+  // outputClasses: float32 [1, NUM_DETECTIONS]
+  private final FloatBuffer outputClasses;
+  // outputScores: float32 [1, NUM_DETECTIONS]
+  private final FloatBuffer outputScores;
+  private final Object[] inputArray;
+  private final Map<Integer, Object> outputMap = new HashMap<>();
+
+  SsdHostDetector(
+      final File modelFile,
+      final int inputSize,
+      final boolean quantized,
+      final List<String> labels,
+      final int numThreads) {
+    super(
+        modelFile,
+        inputSize,
+        quantized
+            ? ImagePreprocessor.quantized(inputSize, null)
+            : ImagePreprocessor.normalized(inputSize, IMAGE_MEAN, IMAGE_STD, null),
+        numThreads);
+    this.labels = labels;
+    outputBuffers =
+        new ByteBuffer[] {
+          allocateOutput(NUM_DETECTIONS * 4),
+          allocateOutput(NUM_DETECTIONS),
+          allocateOutput(NUM_DETECTIONS),
+          allocateOutput(1)
+        };
+    outputLocations = outputBuffers[0].asFloatBuffer();
+    outputClasses = outputBuffers[1].asFloatBuffer();
+    outputScores = outputBuffers[2].asFloatBuffer();
+    inputArray = new Object[] {preprocessor.getInput()};
+    for (int i = 0; i < outputBuffers.length; ++i) {
+      outputMap.put(i, outputBuffers[i]);
+    }
+  }
+
+  @Override
+  protected List<Detection> runAndDecode() {
+    for (final ByteBuffer outputBuffer : outputBuffers) {
+      outputBuffer.rewind();
+    }
+    interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+
+    final List<Detection> detections = new ArrayList<>(NUM_DETECTIONS);
+    for (int i = 0; i < NUM_DETECTIONS; ++i) {
+      // SSD Mobilenet V1 Model assumes class 0 is background class
+      // in label file and class labels start from 1 to number_of_classes+1,
+      // while outputClasses correspond to class index from 0 to number_of_classes
+      final int labelIndex = (int) outputClasses.get(i) + 1;
+      detections.add(
+          new Detection(
+              labelIndex < labels.size() ? labels.get(labelIndex) : String.valueOf(labelIndex),
+              outputScores.get(i),
+              outputLocations.get(i * 4 + 1) * inputSize,
+              outputLocations.get(i * 4) * inputSize,
+              outputLocations.get(i * 4 + 3) * inputSize,
+              outputLocations.get(i * 4 + 2) * inputSize));
+    }
+    return detections;
+  }
+}